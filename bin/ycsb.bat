@@ -70,13 +70,28 @@ SET YCSB_COMMAND=-t
 SET YCSB_CLASS=site.ycsb.Client
 GOTO gotCommand
 :noRun
+IF NOT "loadrun" == "%1" GOTO noLoadRun
+SET YCSB_COMMAND=-loadrun
+SET YCSB_CLASS=site.ycsb.Client
+GOTO gotCommand
+:noLoadRun
+IF NOT "coordinator" == "%1" GOTO noCoordinator
+SET YCSB_COMMAND=-coordinator
+SET YCSB_CLASS=site.ycsb.Client
+GOTO gotCommand
+:noCoordinator
+IF NOT "worker" == "%1" GOTO noWorker
+SET YCSB_COMMAND=-worker
+SET YCSB_CLASS=site.ycsb.Client
+GOTO gotCommand
+:noWorker
 IF NOT "shell" == "%1" GOTO noShell
 SET YCSB_COMMAND=
 SET YCSB_CLASS=site.ycsb.CommandLine
 GOTO gotCommand
 :noShell
 ECHO [ERROR] Found unknown command '%1'
-ECHO [ERROR] Expected one of 'load', 'run', or 'shell'. Exiting.
+ECHO [ERROR] Expected one of 'load', 'run', 'loadrun', 'coordinator', 'worker', or 'shell'. Exiting.
 GOTO exit
 :gotCommand
 
@@ -83,12 +83,21 @@ if [ "load" = "$1" ] ; then
 elif [ "run" = "$1" ] ; then
   YCSB_COMMAND=-t
   YCSB_CLASS=site.ycsb.Client
+elif [ "loadrun" = "$1" ] ; then
+  YCSB_COMMAND=-loadrun
+  YCSB_CLASS=site.ycsb.Client
+elif [ "coordinator" = "$1" ] ; then
+  YCSB_COMMAND=-coordinator
+  YCSB_CLASS=site.ycsb.Client
+elif [ "worker" = "$1" ] ; then
+  YCSB_COMMAND=-worker
+  YCSB_CLASS=site.ycsb.Client
 elif [ "shell" = "$1" ] ; then
   YCSB_COMMAND=
   YCSB_CLASS=site.ycsb.CommandLine
 else
   echo "[ERROR] Found unknown command '$1'"
-  echo "[ERROR] Expected one of 'load', 'run', or 'shell'. Exiting."
+  echo "[ERROR] Expected one of 'load', 'run', 'loadrun', 'coordinator', 'worker', or 'shell'. Exiting."
   exit 1;
 fi
 
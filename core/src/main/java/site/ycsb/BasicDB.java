@@ -23,6 +23,8 @@ import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoPage;
 import site.ycsb.geodata.GeoPoint;
 
 /**
@@ -371,23 +373,53 @@ public class BasicDB extends DB {
   }
 
   @Override
-  public Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> result) {
+  public Status readPoint(String table, String key, GeoPoint result) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     // TODO Auto-generated method stub
     throw new UnsupportedOperationException("Unimplemented method 'scanKNN'");
   }
 
   @Override
-  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, ArrayList<GeoPoint> result) {
+  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     // TODO Auto-generated method stub
     throw new UnsupportedOperationException("Unimplemented method 'scanByDistance'");
   }
 
   @Override
-  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, ArrayList<GeoPoint> result) {
+  public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+      String continuation, Set<String> fields, GeoPage page) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     // TODO Auto-generated method stub
     throw new UnsupportedOperationException("Unimplemented method 'scanByPolygon'");
   }
 
+  @Override
+  public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount result) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
   @Override
   public Status reset(String table) {
     // TODO Auto-generated method stub
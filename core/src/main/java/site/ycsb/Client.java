@@ -18,6 +18,7 @@
 package site.ycsb;
 
 import site.ycsb.measurements.Measurements;
+import site.ycsb.measurements.SlowOpLog;
 import site.ycsb.measurements.exporter.MeasurementsExporter;
 import site.ycsb.measurements.exporter.TextMeasurementsExporter;
 import org.apache.htrace.core.HTraceConfiguration;
@@ -31,7 +32,9 @@ import java.io.OutputStream;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Turn seconds remaining into more useful units.
@@ -129,6 +132,67 @@ public final class Client {
    */
   public static final String TARGET_PROPERTY = "target";
 
+  /**
+   * How the target is enforced in the closed loop: "thread", each client thread doing
+   * an equal share of it, or "global", all client threads taking their operations from
+   * one shared {@link RateLimiter}.
+   */
+  public static final String RATE_LIMITER_PROPERTY = "ratelimiter";
+  public static final String RATE_LIMITER_PROPERTY_DEFAULT = "thread";
+
+  /**
+   * The number of operations the global rate limiter lets start at once.
+   */
+  public static final String RATE_LIMITER_BURST_PROPERTY = "ratelimiter.burst";
+  public static final String RATE_LIMITER_BURST_PROPERTY_DEFAULT = "1";
+
+  /**
+   * The number of transactions each client thread keeps in flight through the
+   * asynchronous DB API. The default of 1 runs them one after the other.
+   */
+  public static final String IN_FLIGHT_PROPERTY = "inflight";
+
+  /**
+   * The kind of thread the client threads run on, "platform" or "virtual". Virtual
+   * threads (Java 21 or later) let threadcount go to tens of thousands of sessions
+   * with the blocking drivers.
+   */
+  public static final String CLIENT_MODE_PROPERTY = "clientmode";
+  public static final String CLIENT_MODE_PROPERTY_DEFAULT = "platform";
+
+  /**
+   * How the transactions are scheduled: "closed", each client thread issuing its share
+   * of the target one after the other, or "open", the client threads serving the
+   * arrivals of an {@link OpenLoopScheduler}.
+   */
+  public static final String SCHEDULER_PROPERTY = "scheduler";
+  public static final String SCHEDULER_PROPERTY_DEFAULT = "closed";
+
+  /**
+   * Whether to step the target through a {@link ThroughputSweep} during the transaction
+   * phase. The sweep uses the global rate limiter; operationcount=0 runs until it is over.
+   */
+  public static final String SWEEP_PROPERTY = "sweep";
+
+  /**
+   * Whether to run the load phase and then one or more run phases in one invocation,
+   * set by -loadrun.
+   */
+  public static final String LOAD_RUN_PROPERTY = "loadrun";
+
+  /**
+   * The comma separated names of the run phases of a loadrun. The properties prefixed
+   * with loadrun.&lt;name&gt;. override the others in that phase, e.g.
+   * loadrun.reads.readproportion=1; loadrun.load. applies to the load phase.
+   */
+  public static final String LOAD_RUN_PHASES_PROPERTY = "loadrun.phases";
+  public static final String LOAD_RUN_PHASES_PROPERTY_DEFAULT = "run";
+
+  /**
+   * The seconds to wait between the load phase and the first run phase of a loadrun.
+   */
+  public static final String LOAD_RUN_PAUSE_PROPERTY = "loadrun.pause";
+
   /**
    * The maximum amount of time (in seconds) for which the benchmark will be run.
    */
@@ -162,7 +226,9 @@ public final class Client {
   private static final String HTRACE_KEY_PREFIX = "htrace.";
   private static final String CLIENT_WORKLOAD_INIT_SPAN = "Client#workload_init";
   private static final String CLIENT_INIT_SPAN = "Client#init";
+  private static final String CLIENT_PREPARE_PHASE_SPAN = "Client#prepare_phase";
   private static final String CLIENT_WORKLOAD_SPAN = "Client#workload";
+  private static final String CLIENT_FINISH_PHASE_SPAN = "Client#finish_phase";
   private static final String CLIENT_CLEANUP_SPAN = "Client#cleanup";
   private static final String CLIENT_EXPORT_MEASUREMENTS_SPAN = "Client#export_measurements";
 
@@ -175,6 +241,9 @@ public final class Client {
         "       be specified as the \"target\" property using -p");
     System.out.println("  -load:  run the loading phase of the workload");
     System.out.println("  -t:  run the transactions phase of the workload (default)");
+    System.out.println("  -loadrun:  run the loading phase, then the transactions phases of loadrun.phases");
+    System.out.println("  -coordinator:  split the phase over coordinator.workers workers and merge their results");
+    System.out.println("  -worker:  run the share of the phase of the coordinator at coordinator.host");
     System.out.println("  -db dbname: specify the name of the DB to use (default: site.ycsb.BasicDB) - \n" +
         "        can also be specified as the \"db\" property using -p");
     System.out.println("  -P propertyfile: load properties from the given file. Multiple files can");
@@ -215,27 +284,7 @@ public final class Client {
       throws IOException {
     MeasurementsExporter exporter = null;
     try {
-      // if no destination file is provided the results will be written to stdout
-      OutputStream out;
-      String exportFile = props.getProperty(EXPORT_FILE_PROPERTY);
-      if (exportFile == null) {
-        out = System.out;
-      } else {
-        out = new FileOutputStream(exportFile);
-      }
-
-      // if no exporter is provided the default text one will be used
-      String exporterStr = props.getProperty(EXPORTER_PROPERTY,
-          "site.ycsb.measurements.exporter.TextMeasurementsExporter");
-      try {
-        exporter = (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class)
-            .newInstance(out);
-      } catch (Exception e) {
-        System.err.println("Could not find exporter " + exporterStr
-            + ", will use default text reporter.");
-        e.printStackTrace();
-        exporter = new TextMeasurementsExporter(out);
-      }
+      exporter = createExporter(props);
 
       exporter.write("OVERALL", "RunTime(ms)", runtime);
       double throughput = 1000.0 * (opcount) / (runtime);
@@ -273,10 +322,98 @@ public final class Client {
     }
   }
 
+  /**
+   * Creates the exporter of the exporter property, writing to the exportfile or stdout.
+   */
+  static MeasurementsExporter createExporter(Properties props) throws IOException {
+    // if no destination file is provided the results will be written to stdout
+    OutputStream out;
+    String exportFile = props.getProperty(EXPORT_FILE_PROPERTY);
+    if (exportFile == null) {
+      out = System.out;
+    } else {
+      out = new FileOutputStream(exportFile);
+    }
+
+    // if no exporter is provided the default text one will be used
+    String exporterStr = props.getProperty(EXPORTER_PROPERTY,
+        "site.ycsb.measurements.exporter.TextMeasurementsExporter");
+    try {
+      return (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class)
+          .newInstance(out);
+    } catch (Exception e) {
+      System.err.println("Could not find exporter " + exporterStr
+          + ", will use default text reporter.");
+      e.printStackTrace();
+      return new TextMeasurementsExporter(out);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   public static void main(String[] args) {
     Properties props = parseArguments(args);
 
+    if (Boolean.valueOf(props.getProperty(Coordinator.COORDINATOR_PROPERTY, String.valueOf(false)))) {
+      try {
+        new Coordinator(props).run();
+      } catch (IOException e) {
+        System.err.println("The coordinator failed: " + e.getMessage());
+        e.printStackTrace();
+        System.exit(-1);
+      }
+      System.exit(0);
+    }
+
+    WorkerThread worker = null;
+    if (Boolean.valueOf(props.getProperty(Coordinator.WORKER_PROPERTY, String.valueOf(false)))) {
+      worker = connectWorker(props);
+      props = worker.getProperties();
+      if (!checkRequiredProperties(props)) {
+        System.out.println("Failed check required properties.");
+        System.exit(0);
+      }
+    }
+
+    Measurements.setProperties(props);
+    SlowOpLog.setProperties(props);
+
+    Workload workload = getWorkload(props);
+
+    final Tracer tracer = getTracer(props, workload);
+
+    if (worker == null && Boolean.valueOf(props.getProperty(LOAD_RUN_PROPERTY, String.valueOf(false)))) {
+      loadRun(props, workload, tracer);
+    } else {
+      runPhase(props, workload, tracer, null, worker);
+    }
+
+    System.exit(0);
+  }
+
+  /**
+   * Connects a worker to its coordinator, or exits if it cannot.
+   */
+  private static WorkerThread connectWorker(Properties props) {
+    try {
+      return new WorkerThread(props);
+    } catch (IOException e) {
+      System.err.println("Could not connect to the coordinator at "
+          + props.getProperty(Coordinator.HOST_PROPERTY, Coordinator.HOST_PROPERTY_DEFAULT) + ":"
+          + props.getProperty(Coordinator.PORT_PROPERTY, Coordinator.PORT_PROPERTY_DEFAULT) + ": " + e.getMessage());
+      System.exit(0);
+      return null;
+    }
+  }
+
+  /**
+   * Runs one phase, load or transactions, and exports its measurements.
+   *
+   * @param shared the DB instances kept across the phases of a loadrun, null to open and close
+   *               the DB instances of the phase
+   * @param worker the connection to the coordinator of this worker, null if this client runs alone
+   */
+  private static void runPhase(Properties props, Workload workload, Tracer tracer, SharedDbs shared,
+                               WorkerThread worker) {
     boolean status = Boolean.valueOf(props.getProperty(STATUS_PROPERTY, String.valueOf(false)));
     String label = props.getProperty(LABEL_PROPERTY, "");
 
@@ -287,9 +424,44 @@ public final class Client {
     String dbname = props.getProperty(DB_PROPERTY, "site.ycsb.BasicDB");
     int target = Integer.parseInt(props.getProperty(TARGET_PROPERTY, "0"));
 
-    //compute the target throughput
+    boolean openloop = Boolean.valueOf(props.getProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(true)))
+        && "open".equals(props.getProperty(SCHEDULER_PROPERTY, SCHEDULER_PROPERTY_DEFAULT));
+    boolean sweep = Boolean.valueOf(props.getProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(true)))
+        && Boolean.valueOf(props.getProperty(SWEEP_PROPERTY, String.valueOf(false)));
+    if (sweep) {
+      if (openloop) {
+        System.err.println("The throughput sweep steps the closed loop, it does not run with the open-loop scheduler.");
+        System.exit(0);
+      }
+      // The sweep starts the global rate limiter at its first step and judges the steps on the intended latencies.
+      target = Integer.parseInt(props.getProperty(ThroughputSweep.START_PROPERTY,
+          ThroughputSweep.START_PROPERTY_DEFAULT));
+      if (target <= 0) {
+        System.err.println(ThroughputSweep.START_PROPERTY + " must be positive.");
+        System.exit(0);
+      }
+      props.setProperty(RATE_LIMITER_PROPERTY, "global");
+      if ("op".equals(props.getProperty(Measurements.MEASUREMENT_INTERVAL, "op"))) {
+        props.setProperty(Measurements.MEASUREMENT_INTERVAL, "both");
+      }
+    }
+    if (openloop && "op".equals(props.getProperty(Measurements.MEASUREMENT_INTERVAL, "op"))) {
+      // The operations must be measured from their arrival.
+      System.err.println("The open-loop scheduler reports the latencies from the arrivals, using "
+          + Measurements.MEASUREMENT_INTERVAL + "=both.");
+      props.setProperty(Measurements.MEASUREMENT_INTERVAL, "both");
+    }
+
+    String ratelimiter = props.getProperty(RATE_LIMITER_PROPERTY, RATE_LIMITER_PROPERTY_DEFAULT);
+    if (!"thread".equals(ratelimiter) && !"global".equals(ratelimiter)) {
+      System.err.println("Unknown " + RATE_LIMITER_PROPERTY + " \"" + ratelimiter + "\", use thread or global.");
+      System.exit(0);
+    }
+    boolean globallimit = target > 0 && !openloop && "global".equals(ratelimiter);
+
+    //compute the target throughput; the open-loop scheduler and the global rate limiter pace the operations instead
     double targetperthreadperms = -1;
-    if (target > 0) {
+    if (target > 0 && !openloop && !globallimit) {
       double targetperthread = ((double) target) / ((double) threadcount);
       targetperthreadperms = targetperthread / 1000.0;
     }
@@ -297,11 +469,9 @@ public final class Client {
     Thread warningthread = setupWarningThread();
     warningthread.start();
 
-    Measurements.setProperties(props);
-
-    Workload workload = getWorkload(props);
-
-    final Tracer tracer = getTracer(props, workload);
+    // The workload may have created the measurements with the properties before the changes above.
+    Measurements.getMeasurements().reset(props);
+    SlowOpLog.getSlowOpLog().reset(props);
 
     initWorkload(props, warningthread, workload, tracer);
 
@@ -309,7 +479,22 @@ public final class Client {
     final CountDownLatch completeLatch = new CountDownLatch(threadcount);
 
     final List<ClientThread> clients = initDb(dbname, props, threadcount, targetperthreadperms,
-        workload, tracer, completeLatch);
+        workload, tracer, completeLatch, shared);
+
+    OpenLoopScheduler scheduler = null;
+    if (openloop) {
+      scheduler = openLoopScheduler(props, target, clients, workload);
+    }
+    boolean dotransactions = Boolean.valueOf(props.getProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(true)));
+    ThroughputSweep sweeper = null;
+    if (globallimit) {
+      RateLimiter limiter = setupRateLimiter(props, target, clients, dotransactions);
+      if (sweep) {
+        sweeper = throughputSweep(props, limiter, workload, clients);
+      }
+    }
+
+    DB phasedb = preparePhase(dbname, props, workload, dotransactions, tracer, shared);
 
     if (status) {
       boolean standardstatus = false;
@@ -319,8 +504,19 @@ public final class Client {
       int statusIntervalSeconds = Integer.parseInt(props.getProperty("status.interval", "10"));
       boolean trackJVMStats = props.getProperty(Measurements.MEASUREMENT_TRACK_JVM_PROPERTY,
           Measurements.MEASUREMENT_TRACK_JVM_PROPERTY_DEFAULT).equals("true");
+      boolean trackServerStats = props.getProperty(Measurements.MEASUREMENT_TRACK_SERVER_PROPERTY,
+          Measurements.MEASUREMENT_TRACK_SERVER_PROPERTY_DEFAULT).equals("true");
+      DB serverdb = null;
+      if (trackServerStats) {
+        try {
+          serverdb = DBFactory.newDB(dbname, props, tracer);
+        } catch (UnknownDBException e) {
+          System.err.println("Unknown DB " + dbname + ", not tracking server stats.");
+        }
+      }
       statusthread = new StatusThread(completeLatch, clients, label, standardstatus, statusIntervalSeconds,
-          trackJVMStats);
+          trackJVMStats, serverdb);
+      statusthread.setTarget(target);
       statusthread.start();
     }
 
@@ -331,9 +527,24 @@ public final class Client {
 
     try (final TraceScope span = tracer.newScope(CLIENT_WORKLOAD_SPAN)) {
 
+      final ThreadFactory factory = clientThreadFactory(props);
       final Map<Thread, ClientThread> threads = new HashMap<>(threadcount);
       for (ClientThread client : clients) {
-        threads.put(new Thread(tracer.wrap(client, "ClientThread")), client);
+        threads.put(factory.newThread(tracer.wrap(client, "ClientThread")), client);
+      }
+
+      WarmupThread warmup = null;
+      if (WarmupThread.isEnabled(props)) {
+        warmup = new WarmupThread(props, clients);
+      }
+
+      if (worker != null) {
+        try {
+          worker.awaitStart(clients);
+        } catch (IOException e) {
+          System.err.println("The coordinator did not start this worker: " + e.getMessage());
+          System.exit(0);
+        }
       }
 
       st = System.currentTimeMillis();
@@ -342,6 +553,21 @@ public final class Client {
         t.start();
       }
 
+      if (warmup != null) {
+        warmup.start();
+      }
+
+      Thread dispatcher = null;
+      if (scheduler != null) {
+        dispatcher = new Thread(scheduler, "OpenLoopScheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+      }
+
+      if (sweeper != null) {
+        sweeper.start();
+      }
+
       if (maxExecutionTime > 0) {
         terminator = new TerminatorThread(maxExecutionTime, threads.keySet(), workload);
         terminator.start();
@@ -359,8 +585,41 @@ public final class Client {
       }
 
       en = System.currentTimeMillis();
+
+      if (worker != null) {
+        worker.finish(opsDone, en - st);
+      }
+      if (dispatcher != null) {
+        dispatcher.interrupt();
+        try {
+          dispatcher.join();
+        } catch (InterruptedException ignored) {
+          // ignored
+        }
+        scheduler.report();
+      }
+      if (warmup != null) {
+        warmup.interrupt();
+        try {
+          warmup.join();
+        } catch (InterruptedException ignored) {
+          // ignored
+        }
+        warmup.report(opsDone, en - st);
+      }
+      if (sweeper != null) {
+        // Ends the sweep if the client threads finished first, and waits for its report.
+        sweeper.interrupt();
+        try {
+          sweeper.join();
+        } catch (InterruptedException ignored) {
+          // ignored
+        }
+      }
     }
 
+    finishPhase(phasedb, workload, dotransactions, tracer, shared == null);
+
     try {
       try (final TraceScope span = tracer.newScope(CLIENT_CLEANUP_SPAN)) {
 
@@ -390,19 +649,18 @@ public final class Client {
     try {
       try (final TraceScope span = tracer.newScope(CLIENT_EXPORT_MEASUREMENTS_SPAN)) {
         exportMeasurements(props, opsDone, en - st);
+        SlowOpLog.getSlowOpLog().export();
       }
     } catch (IOException e) {
       System.err.println("Could not export measurements, error: " + e.getMessage());
       e.printStackTrace();
       System.exit(-1);
     }
-
-    System.exit(0);
   }
 
   private static List<ClientThread> initDb(String dbname, Properties props, int threadcount,
                                            double targetperthreadperms, Workload workload, Tracer tracer,
-                                           CountDownLatch completeLatch) {
+                                           CountDownLatch completeLatch, SharedDbs shared) {
     boolean initFailed = false;
     boolean dotransactions = Boolean.valueOf(props.getProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(true)));
 
@@ -424,13 +682,17 @@ public final class Client {
       }
       for (int threadid = 0; threadid < threadcount; threadid++) {
         DB db;
+        boolean reused = shared != null && threadid < shared.clientdbs.size();
         try {
-          db = DBFactory.newDB(dbname, props, tracer);
+          db = reused ? shared.clientdbs.get(threadid) : DBFactory.newDB(dbname, props, tracer);
         } catch (UnknownDBException e) {
           System.out.println("Unknown DB " + dbname);
           initFailed = true;
           break;
         }
+        if (shared != null && !reused) {
+          shared.clientdbs.add(db);
+        }
 
         int threadopcount = opcount / threadcount;
 
@@ -443,6 +705,9 @@ public final class Client {
             completeLatch);
         t.setThreadId(threadid);
         t.setThreadCount(threadcount);
+        if (shared != null) {
+          t.setSharedDb(reused);
+        }
         clients.add(t);
       }
 
@@ -454,6 +719,230 @@ public final class Client {
     return clients;
   }
 
+  /**
+   * Opens a DB instance of its own for the workload steps before and after the client
+   * threads, and runs the prepare step of the load phase on it. In a loadrun all phases
+   * share one.
+   */
+  private static DB preparePhase(String dbname, Properties props, Workload workload, boolean dotransactions,
+                                 Tracer tracer, SharedDbs shared) {
+    try (final TraceScope span = tracer.newScope(CLIENT_PREPARE_PHASE_SPAN)) {
+      DB db = shared == null ? null : shared.phasedb;
+      if (db == null) {
+        db = DBFactory.newDB(dbname, props, tracer);
+        if (db == null) {
+          throw new UnknownDBException("Unknown DB " + dbname);
+        }
+        db.init();
+        if (shared != null) {
+          shared.phasedb = db;
+        }
+      }
+      if (!dotransactions) {
+        workload.prepareLoad(db);
+      }
+      return db;
+    } catch (UnknownDBException | DBException | WorkloadException e) {
+      e.printStackTrace();
+      e.printStackTrace(System.out);
+      System.exit(0);
+      return null;
+    }
+  }
+
+  private static void finishPhase(DB db, Workload workload, boolean dotransactions, Tracer tracer,
+                                  boolean cleanup) {
+    try (final TraceScope span = tracer.newScope(CLIENT_FINISH_PHASE_SPAN)) {
+      if (dotransactions) {
+        workload.finishRun(db);
+      } else {
+        workload.finishLoad(db);
+      }
+      if (cleanup) {
+        db.cleanup();
+      }
+    } catch (DBException | WorkloadException e) {
+      e.printStackTrace();
+      e.printStackTrace(System.out);
+      System.exit(0);
+    }
+  }
+
+  /**
+   * The DB instances of a loadrun. The client threads of every phase take the instances
+   * of the previous phases by thread id, so the connections stay open from the load to
+   * the last run phase.
+   */
+  private static final class SharedDbs {
+    private final List<DB> clientdbs = new ArrayList<>();
+    private DB phasedb;
+
+    private void cleanup() {
+      List<DB> dbs = new ArrayList<>(clientdbs);
+      if (phasedb != null) {
+        dbs.add(phasedb);
+      }
+      for (DB db : dbs) {
+        try {
+          db.cleanup();
+        } catch (DBException e) {
+          e.printStackTrace();
+          e.printStackTrace(System.out);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the load phase and then the run phases of loadrun.phases in one JVM, on the same
+   * workload, dataset and DB instances. The workload's finishLoad hook builds deferred
+   * indexes after the load, and loadrun.pause waits before the first run phase. Each phase
+   * takes the properties with its loadrun.&lt;phase&gt;. overrides applied and exports its
+   * measurements on its own.
+   */
+  private static void loadRun(Properties props, Workload workload, Tracer tracer) {
+    List<String> phases = new ArrayList<>();
+    phases.add("load");
+    for (String phase : props.getProperty(LOAD_RUN_PHASES_PROPERTY, LOAD_RUN_PHASES_PROPERTY_DEFAULT).split(",")) {
+      if (!phase.trim().isEmpty()) {
+        phases.add(phase.trim());
+      }
+    }
+    long pause = Long.parseLong(props.getProperty(LOAD_RUN_PAUSE_PROPERTY, "0"));
+
+    SharedDbs shared = new SharedDbs();
+    for (int i = 0; i < phases.size(); i++) {
+      String phase = phases.get(i);
+      Properties phaseprops = phaseProperties(props, phase, i > 0);
+      if (i > 0) {
+        workload.clearStopRequest();
+      }
+      System.err.println("Starting phase " + phase + ".");
+      runPhase(phaseprops, workload, tracer, shared, null);
+
+      if (i == 0 && pause > 0) {
+        System.err.println("Pausing " + pause + " seconds before the run phases.");
+        try {
+          TimeUnit.SECONDS.sleep(pause);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    shared.cleanup();
+  }
+
+  /**
+   * Returns the properties of one loadrun phase. The files the phase writes get the phase
+   * name before their extension, so the phases do not overwrite each other.
+   */
+  private static Properties phaseProperties(Properties props, String phase, boolean dotransactions) {
+    Properties phaseprops = new Properties();
+    String prefix = LOAD_RUN_PROPERTY + "." + phase + ".";
+    for (String key : props.stringPropertyNames()) {
+      if (!key.startsWith(LOAD_RUN_PROPERTY + ".")) {
+        phaseprops.setProperty(key, props.getProperty(key));
+      }
+    }
+    for (String key : props.stringPropertyNames()) {
+      if (key.startsWith(prefix)) {
+        phaseprops.setProperty(key.substring(prefix.length()), props.getProperty(key));
+      }
+    }
+    phaseprops.setProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(dotransactions));
+    for (String key : new String[] {EXPORT_FILE_PROPERTY, SlowOpLog.FILE_PROPERTY, ThroughputSweep.FILE_PROPERTY}) {
+      String file = phaseprops.getProperty(key);
+      if (file != null) {
+        int dot = file.lastIndexOf('.');
+        phaseprops.setProperty(key, dot > file.lastIndexOf('/') ? file.substring(0, dot) + "-" + phase
+            + file.substring(dot) : file + "-" + phase);
+      }
+    }
+    return phaseprops;
+  }
+
+  /**
+   * Creates the open-loop scheduler of the transaction phase, for all the client threads
+   * and the operationcount arrivals.
+   */
+  private static OpenLoopScheduler openLoopScheduler(Properties props, int target, List<ClientThread> clients,
+                                                     Workload workload) {
+    try {
+      int opcount = Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY, "0"));
+      OpenLoopScheduler scheduler = new OpenLoopScheduler(props, target, opcount, clients.size(), workload);
+      for (ClientThread client : clients) {
+        client.setScheduler(scheduler);
+      }
+      return scheduler;
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("Could not set up the open-loop scheduler: " + e.getMessage());
+      System.exit(0);
+      return null;
+    }
+  }
+
+  /**
+   * Makes all the client threads share one rate limiter at the target. In the transaction
+   * phase they also share the operationcount, so no thread stops at its share while
+   * another one still owes its own. The load keeps the shares, which are the key ranges
+   * of the threads.
+   */
+  private static RateLimiter setupRateLimiter(Properties props, int target, List<ClientThread> clients,
+                                              boolean dotransactions) {
+    try {
+      int burst = Integer.parseInt(props.getProperty(RATE_LIMITER_BURST_PROPERTY, RATE_LIMITER_BURST_PROPERTY_DEFAULT));
+      RateLimiter limiter = new RateLimiter(target, burst);
+      int opcount = Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY, "0"));
+      AtomicInteger remaining = dotransactions && opcount > 0 ? new AtomicInteger(opcount) : null;
+      for (ClientThread client : clients) {
+        client.setRateLimiter(limiter);
+        client.setRemainingOps(remaining);
+      }
+      return limiter;
+    } catch (IllegalArgumentException e) {
+      System.err.println("Could not set up the rate limiter: " + e.getMessage());
+      System.exit(0);
+      return null;
+    }
+  }
+
+  private static ThroughputSweep throughputSweep(Properties props, RateLimiter limiter, Workload workload,
+                                                List<ClientThread> clients) {
+    try {
+      return new ThroughputSweep(props, limiter, workload, clients);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Could not set up the throughput sweep: " + e.getMessage());
+      System.exit(0);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the factory of the client threads for the clientmode. Virtual threads are
+   * created through reflection, so that the client still builds for and runs on Java 8.
+   */
+  private static ThreadFactory clientThreadFactory(Properties props) {
+    String mode = props.getProperty(CLIENT_MODE_PROPERTY, CLIENT_MODE_PROPERTY_DEFAULT);
+    if ("platform".equals(mode)) {
+      return Thread::new;
+    }
+    if (!"virtual".equals(mode)) {
+      System.err.println("Unknown " + CLIENT_MODE_PROPERTY + " \"" + mode + "\", use platform or virtual.");
+      System.exit(0);
+    }
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "ClientThread-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      System.err.println(CLIENT_MODE_PROPERTY + "=virtual needs Java 21 or later, this is Java "
+          + System.getProperty("java.version") + ".");
+      System.exit(0);
+      return null;
+    }
+  }
+
   private static Tracer getTracer(Properties props, Workload workload) {
     return new Tracer.Builder("YCSB " + workload.getClass().getSimpleName())
         .conf(getHTraceConfiguration(props))
@@ -567,6 +1056,15 @@ public final class Client {
       } else if (args[argindex].compareTo("-load") == 0) {
         props.setProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(false));
         argindex++;
+      } else if (args[argindex].compareTo("-loadrun") == 0) {
+        props.setProperty(LOAD_RUN_PROPERTY, String.valueOf(true));
+        argindex++;
+      } else if (args[argindex].compareTo("-coordinator") == 0) {
+        props.setProperty(Coordinator.COORDINATOR_PROPERTY, String.valueOf(true));
+        argindex++;
+      } else if (args[argindex].compareTo("-worker") == 0) {
+        props.setProperty(Coordinator.WORKER_PROPERTY, String.valueOf(true));
+        argindex++;
       } else if (args[argindex].compareTo("-t") == 0) {
         props.setProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(true));
         argindex++;
@@ -669,7 +1167,9 @@ public final class Client {
 
     props = fileprops;
 
-    if (!checkRequiredProperties(props)) {
+    // A worker takes the required properties from its coordinator.
+    if (!Boolean.valueOf(props.getProperty(Coordinator.WORKER_PROPERTY, String.valueOf(false)))
+        && !checkRequiredProperties(props)) {
       System.out.println("Failed check required properties.");
       System.exit(0);
     }
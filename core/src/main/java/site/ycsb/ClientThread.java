@@ -19,8 +19,12 @@ package site.ycsb;
 
 import site.ycsb.measurements.Measurements;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.LockSupport;
 
 /**
@@ -36,8 +40,14 @@ public class ClientThread implements Runnable {
   private Workload workload;
   private int opcount;
   private double targetOpsPerMs;
+  private int inflight;
+  private OpenLoopScheduler scheduler;
+  private RateLimiter rateLimiter;
+  private AtomicInteger remainingOps;
+  private boolean sharedDb;
+  private boolean dbInitialized;
 
-  private int opsdone;
+  private final AtomicInteger opsdone = new AtomicInteger();
   private int threadid;
   private int threadcount;
   private Object workloadstate;
@@ -62,14 +72,16 @@ public class ClientThread implements Runnable {
     this.dotransactions = dotransactions;
     this.workload = workload;
     this.opcount = opcount;
-    opsdone = 0;
     if (targetperthreadperms > 0) {
       targetOpsPerMs = targetperthreadperms;
       targetOpsTickNs = (long) (1000000 / targetOpsPerMs);
     }
     this.props = props;
     measurements = Measurements.getMeasurements();
-    spinSleep = Boolean.valueOf(this.props.getProperty("spin.sleep", "false"));
+    // A spinning virtual thread would hold on to its carrier thread, so virtual threads always park.
+    spinSleep = Boolean.valueOf(this.props.getProperty("spin.sleep", "false"))
+        && !"virtual".equals(this.props.getProperty(Client.CLIENT_MODE_PROPERTY));
+    inflight = Integer.parseInt(this.props.getProperty(Client.IN_FLIGHT_PROPERTY, "1"));
     this.completeLatch = completeLatch;
   }
 
@@ -81,17 +93,57 @@ public class ClientThread implements Runnable {
     threadcount = threadCount;
   }
 
+  /**
+   * Makes this thread serve the arrivals of an open-loop scheduler in the transaction phase.
+   */
+  public void setScheduler(OpenLoopScheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Makes this thread take its operations from a rate limiter shared with the other
+   * client threads, instead of from its own share of the target.
+   */
+  public void setRateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Makes this thread take its operations from a count shared with the other client
+   * threads instead of from its own share of the opcount, so the threads that are free
+   * keep going while another one is stuck on a slow operation.
+   */
+  public void setRemainingOps(AtomicInteger remainingOps) {
+    this.remainingOps = remainingOps;
+  }
+
+  /**
+   * Makes this thread use a DB instance that outlives it, shared by the phases of a
+   * loadrun: it is initialized unless an earlier phase did, and never cleaned up.
+   *
+   * @param initialized whether an earlier phase initialized the instance
+   */
+  public void setSharedDb(boolean initialized) {
+    sharedDb = true;
+    dbInitialized = initialized;
+  }
+
   public int getOpsDone() {
-    return opsdone;
+    return opsdone.get();
   }
 
   @Override
   public void run() {
     try {
-      db.init();
+      if (!dbInitialized) {
+        db.init();
+      }
     } catch (DBException e) {
       e.printStackTrace();
       e.printStackTrace(System.out);
+      if (scheduler != null) {
+        scheduler.ready();
+      }
       return;
     }
 
@@ -101,6 +153,10 @@ public class ClientThread implements Runnable {
       e.printStackTrace();
       e.printStackTrace(System.out);
       return;
+    } finally {
+      if (scheduler != null) {
+        scheduler.ready();
+      }
     }
 
     //NOTE: Switching to using nanoTime and parkNanos for time management here such that the measurements
@@ -114,31 +170,33 @@ public class ClientThread implements Runnable {
       sleepUntil(System.nanoTime() + randomMinorDelay);
     }
     try {
-      if (dotransactions) {
+      if (dotransactions && scheduler != null) {
+        doTransactionsOpenLoop();
+      } else if (dotransactions && inflight > 1) {
+        doTransactionsInFlight();
+      } else if (dotransactions) {
         long startTimeNanos = System.nanoTime();
 
-        while (((opcount == 0) || (opsdone < opcount)) && !workload.isStopRequested()) {
+        while (!workload.isStopRequested() && nextOp(opsdone.get())) {
+          acquireToken();
 
           if (!workload.doTransaction(db, workloadstate)) {
             break;
           }
 
-          opsdone++;
-
-          throttleNanos(startTimeNanos);
+          throttleNanos(startTimeNanos, opsdone.incrementAndGet());
         }
       } else {
         long startTimeNanos = System.nanoTime();
 
-        while (((opcount == 0) || (opsdone < opcount)) && !workload.isStopRequested()) {
+        while (!workload.isStopRequested() && nextOp(opsdone.get())) {
+          acquireToken();
 
           if (!workload.doInsert(db, workloadstate)) {
             break;
           }
 
-          opsdone++;
-
-          throttleNanos(startTimeNanos);
+          throttleNanos(startTimeNanos, opsdone.incrementAndGet());
         }
       }
     } catch (Exception e) {
@@ -149,7 +207,9 @@ public class ClientThread implements Runnable {
 
     try {
       measurements.setIntendedStartTimeNs(0);
-      db.cleanup();
+      if (!sharedDb) {
+        db.cleanup();
+      }
     } catch (DBException e) {
       e.printStackTrace();
       e.printStackTrace(System.out);
@@ -158,6 +218,61 @@ public class ClientThread implements Runnable {
     }
   }
 
+  /**
+   * Serves the arrivals of the open-loop scheduler until they are over. Each transaction
+   * is measured from its arrival, however long it waited for a free client thread.
+   */
+  private void doTransactionsOpenLoop() throws InterruptedException {
+    long arrival;
+    while ((arrival = scheduler.take()) != OpenLoopScheduler.DONE && !workload.isStopRequested()) {
+      measurements.setIntendedStartTimeNs(arrival);
+
+      if (!workload.doTransaction(db, workloadstate)) {
+        break;
+      }
+
+      opsdone.incrementAndGet();
+    }
+  }
+
+  /**
+   * Submits the transactions through the asynchronous DB API and keeps up to inflight of
+   * them outstanding. An operation counts as done once it completed, and the target
+   * throughput paces the submissions.
+   */
+  private void doTransactionsInFlight() throws InterruptedException {
+    Semaphore slots = new Semaphore(inflight);
+    AtomicBoolean done = new AtomicBoolean();
+    long startTimeNanos = System.nanoTime();
+    int submitted = 0;
+
+    while (!workload.isStopRequested() && !done.get() && nextOp(submitted)) {
+      slots.acquire();
+      acquireToken();
+
+      CompletableFuture<Boolean> operation = workload.doTransactionAsync(db, workloadstate);
+      operation.whenComplete((more, error) -> {
+        if (error != null) {
+          error.printStackTrace();
+          done.set(true);
+        } else if (!more) {
+          done.set(true);
+        } else {
+          opsdone.incrementAndGet();
+        }
+        slots.release();
+      });
+
+      throttleNanos(startTimeNanos, ++submitted);
+    }
+    // Wait for the operations still in flight.
+    slots.acquire(inflight);
+  }
+
+  /**
+   * Parks rather than sleeping in a monitor, which also unmounts a virtual thread from its
+   * carrier while it waits.
+   */
   private static void sleepUntil(long deadline) {
     while (System.nanoTime() < deadline) {
       if (!spinSleep) {
@@ -166,11 +281,37 @@ public class ClientThread implements Runnable {
     }
   }
 
-  private void throttleNanos(long startTimeNanos) {
-    //throttle the operations
-    if (targetOpsPerMs > 0) {
+  /**
+   * Takes the next operation, from the count shared by the client threads if there is one.
+   *
+   * @param done the operations this thread already did
+   */
+  private boolean nextOp(int done) {
+    if (remainingOps != null) {
+      return remainingOps.decrementAndGet() >= 0;
+    }
+    return opcount == 0 || done < opcount;
+  }
+
+  /**
+   * Waits for a token of the shared rate limiter before an operation. It is taken once the
+   * operation is known to run, so no thread waits for a token after its last one. A token
+   * left in the bucket is not due before the thread asked for it.
+   */
+  private void acquireToken() {
+    if (rateLimiter != null) {
+      long asked = System.nanoTime();
+      long slot = rateLimiter.acquire();
+      sleepUntil(slot);
+      measurements.setIntendedStartTimeNs(Math.max(slot, asked));
+    }
+  }
+
+  private void throttleNanos(long startTimeNanos, int ops) {
+    //throttle the operations; the shared rate limiter paces them in acquireToken()
+    if (rateLimiter == null && targetOpsPerMs > 0) {
       // delay until next tick
-      long deadline = startTimeNanos + opsdone * targetOpsTickNs;
+      long deadline = startTimeNanos + ops * targetOpsTickNs;
       sleepUntil(deadline);
       measurements.setIntendedStartTimeNs(deadline);
     }
@@ -180,7 +321,12 @@ public class ClientThread implements Runnable {
    * The total amount of work this thread is still expected to do.
    */
   int getOpsTodo() {
-    int todo = opcount - opsdone;
+    if (remainingOps != null) {
+      // An equal share of the shared count, so the shares of all threads add up to it.
+      int remaining = Math.max(remainingOps.get(), 0);
+      return remaining / threadcount + (threadid < remaining % threadcount ? 1 : 0);
+    }
+    int todo = opcount - opsdone.get();
     return todo < 0 ? 0 : todo;
   }
 }
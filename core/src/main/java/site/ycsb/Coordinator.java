@@ -0,0 +1,324 @@
+package site.ycsb;
+
+import org.HdrHistogram.Histogram;
+import site.ycsb.measurements.OneMeasurementHdrHistogram;
+import site.ycsb.measurements.exporter.MeasurementsExporter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+/**
+ * Runs one phase on several client processes, for loads beyond what one JVM can drive.
+ * The workers (Client -worker) connect to the coordinator (Client -coordinator) over TCP
+ * and receive its properties, each with its shard of the inserts (insertstart and
+ * insertcount) or of the operations, and its share of the target. Once all of them
+ * initialized they start together, and they stream the latency histograms of every
+ * interval back. The coordinator merges the histograms, so the percentiles it reports
+ * are the ones of all operations rather than a combination of per-process percentiles.
+ */
+public class Coordinator {
+
+  /** Whether this client is the coordinator, set by -coordinator. */
+  public static final String COORDINATOR_PROPERTY = "coordinator";
+
+  /** Whether this client is a worker of a coordinator, set by -worker. */
+  public static final String WORKER_PROPERTY = "worker";
+
+  /** The host of the coordinator the workers connect to. */
+  public static final String HOST_PROPERTY = "coordinator.host";
+  public static final String HOST_PROPERTY_DEFAULT = "localhost";
+
+  /** The port the coordinator listens on. */
+  public static final String PORT_PROPERTY = "coordinator.port";
+  public static final String PORT_PROPERTY_DEFAULT = "6000";
+
+  /** The number of workers the coordinator waits for. */
+  public static final String WORKERS_PROPERTY = "coordinator.workers";
+  public static final String WORKERS_PROPERTY_DEFAULT = "1";
+
+  /** The ms between two histograms of a worker, and between two status lines of the coordinator. */
+  public static final String INTERVAL_PROPERTY = "coordinator.interval";
+  public static final String INTERVAL_PROPERTY_DEFAULT = "1000";
+
+  /** The properties the coordinator sets per worker, which the worker's own do not override. */
+  static final String[] SHARD_PROPERTIES = {Client.DO_TRANSACTIONS_PROPERTY, Workload.INSERT_START_PROPERTY,
+      Client.INSERT_COUNT_PROPERTY, Client.OPERATION_COUNT_PROPERTY, Client.TARGET_PROPERTY};
+
+  // The messages: READY from a worker once it initialized, START to all workers, then
+  // INTERVAL from the workers while they run and DONE when they finished.
+  static final byte READY = 1;
+  static final byte START = 2;
+  static final byte INTERVAL = 3;
+  static final byte DONE = 4;
+
+  private final Properties props;
+  private final int workers;
+  private final long intervalMs;
+
+  private final long[] opsDone;
+  private final long[] runtimes;
+  private final CountDownLatch done;
+  private final Map<String, Histogram> interval = new TreeMap<>();
+  private final Map<String, OneMeasurementHdrHistogram> total = new TreeMap<>();
+
+  public Coordinator(Properties props) {
+    this.props = props;
+    workers = Integer.parseInt(props.getProperty(WORKERS_PROPERTY, WORKERS_PROPERTY_DEFAULT));
+    intervalMs = Long.parseLong(props.getProperty(INTERVAL_PROPERTY, INTERVAL_PROPERTY_DEFAULT));
+    opsDone = new long[workers];
+    runtimes = new long[workers];
+    done = new CountDownLatch(workers);
+  }
+
+  /**
+   * Waits for the workers, runs the phase on them and exports the merged measurements.
+   */
+  public void run() throws IOException {
+    int port = Integer.parseInt(props.getProperty(PORT_PROPERTY, PORT_PROPERTY_DEFAULT));
+    List<Socket> sockets = new ArrayList<>();
+    List<DataInputStream> ins = new ArrayList<>();
+    List<DataOutputStream> outs = new ArrayList<>();
+
+    try (ServerSocket server = new ServerSocket(port)) {
+      System.err.println("Waiting for " + workers + " workers on port " + port + ".");
+      for (int i = 0; i < workers; i++) {
+        Socket socket = server.accept();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        writeProperties(out, shard(i));
+        out.flush();
+        sockets.add(socket);
+        ins.add(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+        outs.add(out);
+        System.err.println("Worker " + i + " connected from " + socket.getRemoteSocketAddress() + ".");
+      }
+    }
+
+    try {
+      for (int i = 0; i < workers; i++) {
+        if (ins.get(i).readByte() != READY) {
+          throw new IOException("Worker " + i + " did not get ready");
+        }
+      }
+      System.err.println("All workers ready, starting.");
+      for (DataOutputStream out : outs) {
+        out.writeByte(START);
+        out.flush();
+      }
+
+      for (int i = 0; i < workers; i++) {
+        final int worker = i;
+        final DataInputStream in = ins.get(i);
+        Thread reader = new Thread(() -> read(worker, in), "CoordinatorReader-" + i);
+        reader.setDaemon(true);
+        reader.start();
+      }
+
+      report();
+      export();
+    } finally {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+    }
+  }
+
+  /**
+   * Returns the properties of a worker, with its share of the inserts or operations and
+   * of the target.
+   */
+  private Properties shard(int worker) {
+    Properties shard = new Properties();
+    for (String key : props.stringPropertyNames()) {
+      shard.setProperty(key, props.getProperty(key));
+    }
+    shard.remove(COORDINATOR_PROPERTY);
+
+    boolean dotransactions = Boolean.valueOf(props.getProperty(Client.DO_TRANSACTIONS_PROPERTY, "true"));
+    shard.setProperty(Client.DO_TRANSACTIONS_PROPERTY, String.valueOf(dotransactions));
+    if (dotransactions) {
+      long opcount = Long.parseLong(props.getProperty(Client.OPERATION_COUNT_PROPERTY, "0"));
+      if (opcount > 0) {
+        shard.setProperty(Client.OPERATION_COUNT_PROPERTY, String.valueOf(share(opcount, worker)));
+      }
+    } else {
+      long insertstart = Long.parseLong(props.getProperty(Workload.INSERT_START_PROPERTY,
+          Workload.INSERT_START_PROPERTY_DEFAULT));
+      long recordcount = Long.parseLong(props.getProperty(Client.RECORD_COUNT_PROPERTY,
+          Client.DEFAULT_RECORD_COUNT));
+      long insertcount = Long.parseLong(props.getProperty(Client.INSERT_COUNT_PROPERTY,
+          String.valueOf(recordcount - insertstart)));
+      long start = insertstart;
+      for (int i = 0; i < worker; i++) {
+        start += share(insertcount, i);
+      }
+      shard.setProperty(Workload.INSERT_START_PROPERTY, String.valueOf(start));
+      shard.setProperty(Client.INSERT_COUNT_PROPERTY, String.valueOf(share(insertcount, worker)));
+    }
+
+    long target = Long.parseLong(props.getProperty(Client.TARGET_PROPERTY, "0"));
+    if (target > 0) {
+      shard.setProperty(Client.TARGET_PROPERTY, String.valueOf(Math.max(1, share(target, worker))));
+    }
+    return shard;
+  }
+
+  private long share(long count, int worker) {
+    return count / workers + (worker < count % workers ? 1 : 0);
+  }
+
+  private void read(int worker, DataInputStream in) {
+    try {
+      while (true) {
+        byte type = in.readByte();
+        long ops = in.readLong();
+        long runtime = type == DONE ? in.readLong() : 0;
+        merge(worker, ops, readHistograms(in));
+        if (type == DONE) {
+          synchronized (this) {
+            runtimes[worker] = runtime;
+          }
+          break;
+        }
+      }
+    } catch (IOException | DataFormatException e) {
+      System.err.println("Lost worker " + worker + ": " + e);
+    } finally {
+      done.countDown();
+    }
+  }
+
+  private synchronized void merge(int worker, long ops, Map<String, Histogram> histograms) {
+    opsDone[worker] = ops;
+    for (Map.Entry<String, Histogram> op : histograms.entrySet()) {
+      interval.computeIfAbsent(op.getKey(), k -> new Histogram(3)).add(op.getValue());
+      total.computeIfAbsent(op.getKey(), k -> new OneMeasurementHdrHistogram(k, props)).add(op.getValue());
+    }
+  }
+
+  /**
+   * Prints the merged status of every interval until all workers are done.
+   */
+  private void report() {
+    long start = System.nanoTime();
+    long lastOps = 0;
+    long lastNanos = start;
+    boolean alldone = false;
+    while (!alldone) {
+      try {
+        alldone = done.await(intervalMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        alldone = true;
+      }
+
+      long now = System.nanoTime();
+      DecimalFormat d = new DecimalFormat("#.##");
+      StringBuilder msg = new StringBuilder();
+      synchronized (this) {
+        long ops = 0;
+        for (long workerOps : opsDone) {
+          ops += workerOps;
+        }
+        msg.append(TimeUnit.NANOSECONDS.toSeconds(now - start)).append(" sec: ").append(ops)
+            .append(" operations; ").append(d.format((ops - lastOps) * 1e9 / Math.max(1, now - lastNanos)))
+            .append(" current ops/sec;");
+        for (Map.Entry<String, Histogram> op : interval.entrySet()) {
+          Histogram h = op.getValue();
+          msg.append(" [").append(op.getKey()).append(": Count=").append(h.getTotalCount())
+              .append(", Max=").append(h.getMaxValue()).append(", Min=").append(h.getMinValue())
+              .append(", Avg=").append(d.format(h.getMean()))
+              .append(", 90=").append(h.getValueAtPercentile(90))
+              .append(", 99=").append(h.getValueAtPercentile(99))
+              .append(", 99.9=").append(h.getValueAtPercentile(99.9)).append("]");
+        }
+        interval.clear();
+        lastOps = ops;
+      }
+      lastNanos = now;
+      System.err.println(msg);
+    }
+  }
+
+  /**
+   * Exports the merged measurements, with the throughput of all workers over the longest
+   * run time of a worker.
+   */
+  private synchronized void export() throws IOException {
+    long ops = 0;
+    long runtime = 0;
+    for (int i = 0; i < workers; i++) {
+      ops += opsDone[i];
+      runtime = Math.max(runtime, runtimes[i]);
+    }
+
+    MeasurementsExporter exporter = null;
+    try {
+      exporter = Client.createExporter(props);
+      exporter.write("OVERALL", "RunTime(ms)", runtime);
+      exporter.write("OVERALL", "Throughput(ops/sec)", runtime == 0 ? 0 : 1000.0 * ops / runtime);
+      exporter.write("OVERALL", "Workers", workers);
+      for (OneMeasurementHdrHistogram op : total.values()) {
+        op.exportMeasurements(exporter);
+      }
+    } finally {
+      if (exporter != null) {
+        exporter.close();
+      }
+    }
+  }
+
+  static void writeProperties(DataOutputStream out, Properties props) throws IOException {
+    out.writeInt(props.size());
+    for (String key : props.stringPropertyNames()) {
+      out.writeUTF(key);
+      out.writeUTF(props.getProperty(key));
+    }
+  }
+
+  static Properties readProperties(DataInputStream in) throws IOException {
+    Properties props = new Properties();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      props.setProperty(in.readUTF(), in.readUTF());
+    }
+    return props;
+  }
+
+  static void writeHistograms(DataOutputStream out, Map<String, Histogram> histograms) throws IOException {
+    out.writeInt(histograms.size());
+    for (Map.Entry<String, Histogram> op : histograms.entrySet()) {
+      ByteBuffer buffer = ByteBuffer.allocate(op.getValue().getNeededByteBufferCapacity());
+      int length = op.getValue().encodeIntoCompressedByteBuffer(buffer);
+      out.writeUTF(op.getKey());
+      out.writeInt(length);
+      out.write(buffer.array(), 0, length);
+    }
+  }
+
+  static Map<String, Histogram> readHistograms(DataInputStream in) throws IOException, DataFormatException {
+    Map<String, Histogram> histograms = new TreeMap<>();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      String op = in.readUTF();
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      histograms.put(op, Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0));
+    }
+    return histograms;
+  }
+}
@@ -17,13 +17,23 @@
 
 package site.ycsb;
 
+import site.ycsb.geodata.GeoFenceListener;
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoFootprint;
+import site.ycsb.geodata.GeoPage;
 import site.ycsb.geodata.GeoPoint;
+import site.ycsb.geodata.GeoServerStats;
 import site.ycsb.measurements.Measurements;
+import site.ycsb.measurements.SlowOpLog;
 import org.apache.htrace.core.TraceScope;
 import org.apache.htrace.core.Tracer;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 /**
  * Wrapper around a "real" DB that measures latencies and counts return codes.
@@ -32,10 +42,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class DBWrapper extends DB {
   private final DB db;
   private final Measurements measurements;
+  private final SlowOpLog slowOps;
   private final Tracer tracer;
 
   private boolean reportLatencyForEachError = false;
   private Set<String> latencyTrackedErrors = new HashSet<String>();
+  private long opTimeoutNanos;
 
   private static final String REPORT_LATENCY_FOR_EACH_ERROR_PROPERTY = "reportlatencyforeacherror";
   private static final String REPORT_LATENCY_FOR_EACH_ERROR_PROPERTY_DEFAULT = "false";
@@ -51,14 +63,26 @@ public class DBWrapper extends DB {
   private final String scopeStringRead;
   private final String scopeStringScan;
   private final String scopeStringUpdate;
+  private final String scopeStringReadPoint;
   private final String scopeStringScanKNN;
   private final String scopeStringScanDistance;
+  private final String scopeStringScanDistancePage;
   private final String scopeStringScanPolygon;
+  private final String scopeStringScanCorridor;
+  private final String scopeStringCountDistance;
+  private final String scopeStringCountPolygon;
   private final String scopeStringReset;
+  private final String scopeStringCreateSpatialIndex;
+  private final String scopeStringFinishLoad;
+  private final String scopeStringFootprint;
+  private final String scopeStringServerStats;
+  private final String scopeStringSubscribe;
+  private final String scopeStringUnsubscribe;
 
   public DBWrapper(final DB db, final Tracer tracer) {
     this.db = db;
     measurements = Measurements.getMeasurements();
+    slowOps = SlowOpLog.getSlowOpLog();
     this.tracer = tracer;
     final String simple = db.getClass().getSimpleName();
     scopeStringCleanup = simple + "#cleanup";
@@ -68,10 +92,28 @@ public class DBWrapper extends DB {
     scopeStringRead = simple + "#read";
     scopeStringScan = simple + "#scan";
     scopeStringUpdate = simple + "#update";
+    scopeStringReadPoint = simple + "#readpoint";
     scopeStringScanKNN = simple + "#scanknn";
     scopeStringScanDistance = simple + "#scandistance";
+    scopeStringScanDistancePage = simple + "#scandistancepage";
     scopeStringScanPolygon = simple + "#scanpolygon";
+    scopeStringScanCorridor = simple + "#scancorridor";
+    scopeStringCountDistance = simple + "#countdistance";
+    scopeStringCountPolygon = simple + "#countpolygon";
     scopeStringReset = simple + "#reset";
+    scopeStringCreateSpatialIndex = simple + "#createspatialindex";
+    scopeStringFinishLoad = simple + "#finishload";
+    scopeStringFootprint = simple + "#footprint";
+    scopeStringServerStats = simple + "#serverstats";
+    scopeStringSubscribe = simple + "#subscribe";
+    scopeStringUnsubscribe = simple + "#unsubscribe";
+  }
+
+  /**
+   * The wrapped DB, for calls that must not be measured as operations.
+   */
+  public DB getDB() {
+    return db;
   }
 
   /**
@@ -108,6 +150,9 @@ public class DBWrapper extends DB {
         }
       }
 
+      opTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(
+          getProperties().getProperty(OP_TIMEOUT_PROPERTY, OP_TIMEOUT_PROPERTY_DEFAULT)));
+
       if (LOG_REPORT_CONFIG.compareAndSet(false, true)) {
         System.err.println("DBWrapper: report latency for each error is " +
             this.reportLatencyForEachError + " and specific error codes to track" +
@@ -147,6 +192,7 @@ public class DBWrapper extends DB {
       long st = System.nanoTime();
       Status res = db.read(table, key, fields, result);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("READ", res, ist, st, en);
       measurements.reportStatus("READ", res);
       return res;
@@ -172,16 +218,39 @@ public class DBWrapper extends DB {
       long st = System.nanoTime();
       Status res = db.scan(table, startkey, recordcount, fields, result);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("SCAN", res, ist, st, en);
       measurements.reportStatus("SCAN", res);
       return res;
     }
   }
 
+  /**
+   * Fails an operation that took longer than geo.optimeout.ms, also when the binding could
+   * not cancel it, so a degraded store does not count late answers as throughput. A binding
+   * that returned no status at all failed the operation.
+   */
+  private Status enforceTimeout(Status result, long startTimeNanos, long endTimeNanos) {
+    if (result == null) {
+      return Status.ERROR;
+    }
+    if (opTimeoutNanos > 0 && endTimeNanos - startTimeNanos > opTimeoutNanos && result.isOk()) {
+      return Status.TIMEOUT;
+    }
+    return result;
+  }
+
   private void measure(String op, Status result, long intendedStartTimeNanos,
       long startTimeNanos, long endTimeNanos) {
     String measurementName = op;
-    if (result == null || !result.isOk()) {
+    if (result == null) {
+      // The operations without a timeout pass the status of the binding on unchecked.
+      result = Status.ERROR;
+    }
+    if (result == Status.TIMEOUT) {
+      // Timeouts always get their own histogram, apart from the other failures.
+      measurementName = op + "-TIMEOUT";
+    } else if (!result.isOk()) {
       if (this.reportLatencyForEachError ||
           this.latencyTrackedErrors.contains(result.getName())) {
         measurementName = op + "-" + result.getName();
@@ -195,6 +264,71 @@ public class DBWrapper extends DB {
         (int) ((endTimeNanos - intendedStartTimeNanos) / 1000));
   }
 
+  /**
+   * Adds the operation to the slow operation log if it is slow, with the query plan
+   * if requested. The parameters are only formatted and the plan only fetched for slow
+   * operations the log keeps.
+   */
+  private void sample(String op, long startTimeNanos, long endTimeNanos, int results,
+      Supplier<String> parameters) {
+    sample(op, startTimeNanos, endTimeNanos, results, parameters, slowOps.isExplain());
+  }
+
+  private void sample(String op, long startTimeNanos, long endTimeNanos, int results,
+      Supplier<String> parameters, boolean explain) {
+    if (!slowOps.isEnabled()) {
+      return;
+    }
+    long latency = (endTimeNanos - startTimeNanos) / 1000;
+    if (!slowOps.isSlow(op, latency) || !slowOps.wouldKeep(latency)) {
+      return;
+    }
+    String plan = null;
+    if (explain) {
+      StringBuilder explained = new StringBuilder();
+      if (db.explainLast(explained).isOk()) {
+        plan = explained.toString();
+      }
+    }
+    slowOps.add(new SlowOpLog.SlowOp(op, parameters.get(), results, latency, System.currentTimeMillis(), plan));
+  }
+
+  /**
+   * Measures an asynchronous operation from its submission until its completion, so the
+   * latency includes the time the store took to answer while the other operations of the
+   * thread were in flight. The intended start time is taken on the submitting thread. The
+   * plan of a slow operation is not fetched, as the last operation of the binding is no
+   * longer this one by then.
+   */
+  private CompletableFuture<Status> measureAsync(String op, String scope,
+      Supplier<CompletableFuture<Status>> operation, ToIntFunction<Status> results, Supplier<String> parameters) {
+    try (final TraceScope span = tracer.newScope(scope)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      return operation.get().handle((status, error) -> {
+        long en = System.nanoTime();
+        Status res = enforceTimeout(error == null ? status : Status.ERROR, st, en);
+        measure(op, res, ist, st, en);
+        measurements.reportStatus(op, res);
+        if (parameters != null) {
+          sample(op, st, en, results.applyAsInt(res), parameters, false);
+        }
+        return res;
+      });
+    }
+  }
+
+  private static String vertices(ArrayList<GeoPoint> vertices) {
+    StringBuilder text = new StringBuilder("[");
+    for (GeoPoint vertex : vertices) {
+      if (text.length() > 1) {
+        text.append(", ");
+      }
+      text.append(vertex.getLatitude()).append(' ').append(vertex.getLongitude());
+    }
+    return text.append(']').toString();
+  }
+
   /**
    * Update a record in the database. Any field/value pairs in the specified
    * values HashMap will be written into the
@@ -213,6 +347,7 @@ public class DBWrapper extends DB {
       long st = System.nanoTime();
       Status res = db.update(table, key, values);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("UPDATE", res, ist, st, en);
       measurements.reportStatus("UPDATE", res);
       return res;
@@ -236,6 +371,7 @@ public class DBWrapper extends DB {
       long st = System.nanoTime();
       Status res = db.insert(table, key, values);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("INSERT", res, ist, st, en);
       measurements.reportStatus("INSERT", res);
       return res;
@@ -255,6 +391,7 @@ public class DBWrapper extends DB {
       long st = System.nanoTime();
       Status res = db.delete(table, key);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("DELETE", res, ist, st, en);
       measurements.reportStatus("DELETE", res);
       return res;
@@ -262,40 +399,132 @@ public class DBWrapper extends DB {
   }
 
   @Override
-  public Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> result) {
+  public Status readPoint(String table, String key, GeoPoint result) {
+    try (final TraceScope span = tracer.newScope(scopeStringReadPoint)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.readPoint(table, key, result);
+      long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
+      measure("READ-POINT", res, ist, st, en);
+      measurements.reportStatus("READ-POINT", res);
+      sample("READ-POINT", st, en, res.isOk() ? 1 : 0, () -> "table=" + table + ", key=" + key);
+      return res;
+    }
+  }
+
+  @Override
+  public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     try (final TraceScope span = tracer.newScope(scopeStringScanKNN)) {
       long ist = measurements.getIntendedStartTimeNs();
       long st = System.nanoTime();
-      Status res = db.scanKNN(table, lat, lgn, k, result);
+      Status res = db.scanKNN(table, lat, lgn, k, fields, result);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("SCAN-KNN", res, ist, st, en);
       measurements.reportStatus("SCAN-KNN", res);
+      sample("SCAN-KNN", st, en, result.size(), () -> "table=" + table + ", lat=" + lat + ", lgn=" + lgn + ", k=" + k);
       return res;
     }
   }
 
   @Override
-  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, ArrayList<GeoPoint> result) {
+  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     try (final TraceScope span = tracer.newScope(scopeStringScanDistance)) {
       long ist = measurements.getIntendedStartTimeNs();
       long st = System.nanoTime();
-      Status res = db.scanByDistance(table, lat, lgn, maxDistance, result);
+      Status res = db.scanByDistance(table, lat, lgn, maxDistance, fields, result);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("SCAN-DISTANCE", res, ist, st, en);
       measurements.reportStatus("SCAN-DISTANCE", res);
+      sample("SCAN-DISTANCE", st, en, result.size(),
+          () -> "table=" + table + ", lat=" + lat + ", lgn=" + lgn + ", maxDistance=" + maxDistance);
+      return res;
+    }
+  }
+
+  @Override
+  public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+      String continuation, Set<String> fields, GeoPage page) {
+    try (final TraceScope span = tracer.newScope(scopeStringScanDistancePage)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.scanByDistancePage(table, lat, lgn, maxDistance, pageSize, continuation, fields, page);
+      long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
+      measure("SCAN-DISTANCE-PAGE", res, ist, st, en);
+      measurements.reportStatus("SCAN-DISTANCE-PAGE", res);
+      sample("SCAN-DISTANCE-PAGE", st, en, page.getPoints().size(),
+          () -> "table=" + table + ", lat=" + lat + ", lgn=" + lgn
+            + ", maxDistance=" + maxDistance + ", pageSize=" + pageSize + ", continuation=" + continuation);
       return res;
     }
   }
 
   @Override
-  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, ArrayList<GeoPoint> result) {
+  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     try (final TraceScope span = tracer.newScope(scopeStringScanPolygon)) {
       long ist = measurements.getIntendedStartTimeNs();
       long st = System.nanoTime();
-      Status res = db.scanByPolygon(table, polygonVertices, result);
+      Status res = db.scanByPolygon(table, polygonVertices, fields, result);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("SCAN-POLYGON", res, ist, st, en);
       measurements.reportStatus("SCAN-POLYGON", res);
+      sample("SCAN-POLYGON", st, en, result.size(), () -> "table=" + table + ", polygon=" + vertices(polygonVertices));
+      return res;
+    }
+  }
+
+  @Override
+  public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    try (final TraceScope span = tracer.newScope(scopeStringScanCorridor)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.scanByCorridor(table, polyline, bufferKm, fields, result);
+      long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
+      measure("SCAN-CORRIDOR", res, ist, st, en);
+      measurements.reportStatus("SCAN-CORRIDOR", res);
+      sample("SCAN-CORRIDOR", st, en, result.size(),
+          () -> "table=" + table + ", polyline=" + vertices(polyline) + ", bufferKm=" + bufferKm);
+      return res;
+    }
+  }
+
+  @Override
+  public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount result) {
+    try (final TraceScope span = tracer.newScope(scopeStringCountDistance)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.countByDistance(table, lat, lgn, maxDistance, result);
+      long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
+      measure("COUNT-DISTANCE", res, ist, st, en);
+      measurements.reportStatus("COUNT-DISTANCE", res);
+      sample("COUNT-DISTANCE", st, en, (int) result.getCount(),
+          () -> "table=" + table + ", lat=" + lat + ", lgn=" + lgn + ", maxDistance=" + maxDistance);
+      return res;
+    }
+  }
+
+  @Override
+  public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
+    try (final TraceScope span = tracer.newScope(scopeStringCountPolygon)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.countByPolygon(table, polygonVertices, result);
+      long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
+      measure("COUNT-POLYGON", res, ist, st, en);
+      measurements.reportStatus("COUNT-POLYGON", res);
+      sample("COUNT-POLYGON", st, en, (int) result.getCount(),
+          () -> "table=" + table + ", polygon=" + vertices(polygonVertices));
       return res;
     }
   }
@@ -307,12 +536,71 @@ public class DBWrapper extends DB {
       long st = System.nanoTime();
       Status res = db.insert(table, key, values);
       long en = System.nanoTime();
+      res = enforceTimeout(res, st, en);
       measure("INSERT", res, ist, st, en);
       measurements.reportStatus("INSERT", res);
       return res;
     }
   }
 
+  @Override
+  public CompletableFuture<Status> insertAsync(String table, String key, GeoPoint values) {
+    return measureAsync("INSERT", scopeStringInsert, () -> db.insertAsync(table, key, values), null, null);
+  }
+
+  @Override
+  public CompletableFuture<Status> readPointAsync(String table, String key, GeoPoint result) {
+    return measureAsync("READ-POINT", scopeStringReadPoint, () -> db.readPointAsync(table, key, result),
+        res -> res != null && res.isOk() ? 1 : 0, () -> "table=" + table + ", key=" + key);
+  }
+
+  @Override
+  public CompletableFuture<Status> scanKNNAsync(String table, double lat, double lgn, int k, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    return measureAsync("SCAN-KNN", scopeStringScanKNN, () -> db.scanKNNAsync(table, lat, lgn, k, fields, result),
+        res -> result.size(), () -> "table=" + table + ", lat=" + lat + ", lgn=" + lgn + ", k=" + k);
+  }
+
+  @Override
+  public CompletableFuture<Status> scanByDistanceAsync(String table, double lat, double lgn, double maxDistance,
+      Set<String> fields, ArrayList<GeoPoint> result) {
+    return measureAsync("SCAN-DISTANCE", scopeStringScanDistance,
+        () -> db.scanByDistanceAsync(table, lat, lgn, maxDistance, fields, result), res -> result.size(),
+        () -> "table=" + table + ", lat=" + lat + ", lgn=" + lgn + ", maxDistance=" + maxDistance);
+  }
+
+  @Override
+  public CompletableFuture<Status> scanByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+      Set<String> fields, ArrayList<GeoPoint> result) {
+    return measureAsync("SCAN-POLYGON", scopeStringScanPolygon,
+        () -> db.scanByPolygonAsync(table, polygonVertices, fields, result), res -> result.size(),
+        () -> "table=" + table + ", polygon=" + vertices(polygonVertices));
+  }
+
+  @Override
+  public CompletableFuture<Status> scanByCorridorAsync(String table, ArrayList<GeoPoint> polyline, double bufferKm,
+      Set<String> fields, ArrayList<GeoPoint> result) {
+    return measureAsync("SCAN-CORRIDOR", scopeStringScanCorridor,
+        () -> db.scanByCorridorAsync(table, polyline, bufferKm, fields, result), res -> result.size(),
+        () -> "table=" + table + ", polyline=" + vertices(polyline) + ", bufferKm=" + bufferKm);
+  }
+
+  @Override
+  public CompletableFuture<Status> countByDistanceAsync(String table, double lat, double lgn, double maxDistance,
+      GeoCount result) {
+    return measureAsync("COUNT-DISTANCE", scopeStringCountDistance,
+        () -> db.countByDistanceAsync(table, lat, lgn, maxDistance, result), res -> (int) result.getCount(),
+        () -> "table=" + table + ", lat=" + lat + ", lgn=" + lgn + ", maxDistance=" + maxDistance);
+  }
+
+  @Override
+  public CompletableFuture<Status> countByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+      GeoCount result) {
+    return measureAsync("COUNT-POLYGON", scopeStringCountPolygon,
+        () -> db.countByPolygonAsync(table, polygonVertices, result), res -> (int) result.getCount(),
+        () -> "table=" + table + ", polygon=" + vertices(polygonVertices));
+  }
+
   @Override
   public Status reset(String table) {
     try (final TraceScope span = tracer.newScope(scopeStringInsert)) {
@@ -325,4 +613,82 @@ public class DBWrapper extends DB {
       return res;
     }
   }
+
+  @Override
+  public Status createSpatialIndex(String table) {
+    try (final TraceScope span = tracer.newScope(scopeStringCreateSpatialIndex)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.createSpatialIndex(table);
+      long en = System.nanoTime();
+      measure("BUILD-INDEX", res, ist, st, en);
+      measurements.reportStatus("BUILD-INDEX", res);
+      return res;
+    }
+  }
+
+  @Override
+  public Status explainLast(StringBuilder plan) {
+    return db.explainLast(plan);
+  }
+
+  /**
+   * The footprint is a report, not an operation, so it is not measured.
+   */
+  @Override
+  public Status footprint(String table, GeoFootprint result) {
+    try (final TraceScope span = tracer.newScope(scopeStringFootprint)) {
+      return db.footprint(table, result);
+    }
+  }
+
+  /**
+   * The server statistics are sampled by the status thread, so they are not measured.
+   */
+  @Override
+  public Status serverStats(GeoServerStats result) {
+    try (final TraceScope span = tracer.newScope(scopeStringServerStats)) {
+      return db.serverStats(result);
+    }
+  }
+
+  @Override
+  public Status finishLoad(String table) {
+    try (final TraceScope span = tracer.newScope(scopeStringFinishLoad)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.finishLoad(table);
+      long en = System.nanoTime();
+      measure("FINISH-LOAD", res, ist, st, en);
+      measurements.reportStatus("FINISH-LOAD", res);
+      return res;
+    }
+  }
+
+  @Override
+  public Status subscribe(String table, String subscriptionId, ArrayList<GeoPoint> region,
+      GeoFenceListener listener) {
+    try (final TraceScope span = tracer.newScope(scopeStringSubscribe)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.subscribe(table, subscriptionId, region, listener);
+      long en = System.nanoTime();
+      measure("SUBSCRIBE", res, ist, st, en);
+      measurements.reportStatus("SUBSCRIBE", res);
+      return res;
+    }
+  }
+
+  @Override
+  public Status unsubscribe(String table, String subscriptionId) {
+    try (final TraceScope span = tracer.newScope(scopeStringUnsubscribe)) {
+      long ist = measurements.getIntendedStartTimeNs();
+      long st = System.nanoTime();
+      Status res = db.unsubscribe(table, subscriptionId);
+      long en = System.nanoTime();
+      measure("UNSUBSCRIBE", res, ist, st, en);
+      measurements.reportStatus("UNSUBSCRIBE", res);
+      return res;
+    }
+  }
 }
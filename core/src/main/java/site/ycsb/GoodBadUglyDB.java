@@ -28,6 +28,8 @@ import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoPage;
 import site.ycsb.geodata.GeoPoint;
 
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
@@ -176,19 +178,54 @@ public class GoodBadUglyDB extends DB {
   }
 
   @Override
-  public Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> result) {
+  public Status readPoint(String table, String key, GeoPoint result) {
     delay();
     return Status.OK;
   }
 
   @Override
-  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, ArrayList<GeoPoint> result) {
+  public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     delay();
     return Status.OK;
   }
 
   @Override
-  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, ArrayList<GeoPoint> result) {
+  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    delay();
+    return Status.OK;
+  }
+
+  @Override
+  public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+      String continuation, Set<String> fields, GeoPage page) {
+    delay();
+    return Status.OK;
+  }
+
+  @Override
+  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    delay();
+    return Status.OK;
+  }
+
+  @Override
+  public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    delay();
+    return Status.OK;
+  }
+
+  @Override
+  public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount result) {
+    delay();
+    return Status.OK;
+  }
+
+  @Override
+  public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
     delay();
     return Status.OK;
   }
@@ -199,4 +236,10 @@ public class GoodBadUglyDB extends DB {
     return Status.OK;
   }
 
+  @Override
+  public Status createSpatialIndex(String table) {
+    delay();
+    return Status.OK;
+  }
+
 }
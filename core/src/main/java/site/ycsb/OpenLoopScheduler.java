@@ -0,0 +1,173 @@
+package site.ycsb;
+
+import org.HdrHistogram.Histogram;
+import site.ycsb.measurements.Measurements;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The open-loop arrival stream of the transaction phase. A dispatcher thread generates
+ * the arrivals of the whole client, Poisson at the target rate or replayed from a trace,
+ * and queues them; the client threads are the worker pool that takes them. When the
+ * store stalls the arrivals keep coming and queue up, and each operation is measured
+ * from its arrival as intended start time, so the latencies include the queueing a user
+ * of the API would see.
+ *
+ * The queue depth every arrival finds is reported as the QUEUE-DEPTH values at the end of
+ * the run. As Poisson arrivals see time averages, its distribution is the one of the
+ * queue over time. It is a count, not a latency, so it stays out of the operation series.
+ */
+public class OpenLoopScheduler implements Runnable {
+
+  /** The arrival process, "poisson" at the target rate or "trace". */
+  public static final String ARRIVAL_PROPERTY = "arrival";
+  public static final String ARRIVAL_PROPERTY_DEFAULT = "poisson";
+
+  /** The trace of arrival=trace: one arrival per line, in ms since the start of the run. */
+  public static final String ARRIVAL_TRACE_FILE_PROPERTY = "arrival.tracefile";
+
+  /** What take() returns once the arrivals are over. */
+  public static final long DONE = Long.MIN_VALUE;
+
+  private final BlockingQueue<Long> arrivals = new LinkedBlockingQueue<>();
+  private final CountDownLatch ready;
+  private final Workload workload;
+  private final Measurements measurements;
+  private final int opcount;
+  private final double meanGapNs;
+  private final long[] trace;
+  /** Written by the dispatcher thread only, read once it is done. */
+  private final Histogram queueDepth = new Histogram(3);
+
+  /**
+   * @param props       the properties of the run
+   * @param target      the arrival rate in operations per second, for Poisson arrivals
+   * @param opcount     the number of arrivals, 0 for as many as the run lasts
+   * @param threadcount the number of client threads, which all report ready before the first arrival
+   * @param workload    the workload, to stop with it
+   */
+  public OpenLoopScheduler(Properties props, int target, int opcount, int threadcount, Workload workload)
+      throws IOException {
+    this.workload = workload;
+    this.opcount = opcount;
+    ready = new CountDownLatch(threadcount);
+    measurements = Measurements.getMeasurements();
+
+    String arrival = props.getProperty(ARRIVAL_PROPERTY, ARRIVAL_PROPERTY_DEFAULT);
+    if ("trace".equals(arrival)) {
+      String file = props.getProperty(ARRIVAL_TRACE_FILE_PROPERTY);
+      if (file == null) {
+        throw new IllegalArgumentException(ARRIVAL_PROPERTY + "=trace needs " + ARRIVAL_TRACE_FILE_PROPERTY);
+      }
+      trace = readTrace(file);
+      meanGapNs = 0;
+    } else if ("poisson".equals(arrival)) {
+      if (target <= 0) {
+        throw new IllegalArgumentException(ARRIVAL_PROPERTY + "=poisson needs a target rate");
+      }
+      trace = null;
+      meanGapNs = TimeUnit.SECONDS.toNanos(1) / (double) target;
+    } else {
+      throw new IllegalArgumentException("Unknown " + ARRIVAL_PROPERTY + " \"" + arrival + "\"");
+    }
+  }
+
+  private static long[] readTrace(String file) throws IOException {
+    List<Long> offsets = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          offsets.add((long) (Double.parseDouble(line) * TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+      }
+    }
+    long[] trace = new long[offsets.size()];
+    for (int i = 0; i < trace.length; i++) {
+      trace[i] = offsets.get(i);
+    }
+    return trace;
+  }
+
+  /**
+   * Called by each client thread once it is initialized. The arrivals start when all are.
+   */
+  public void ready() {
+    ready.countDown();
+  }
+
+  /**
+   * Takes the next arrival, waiting for it. Returns its time in System.nanoTime(), or
+   * DONE once the arrivals are over.
+   */
+  public long take() throws InterruptedException {
+    long arrival = arrivals.take();
+    if (arrival == DONE) {
+      // Leave it for the other client threads.
+      arrivals.add(DONE);
+    }
+    return arrival;
+  }
+
+  @Override
+  public void run() {
+    try {
+      ready.await();
+
+      long start = System.nanoTime();
+      long arrival = start;
+      for (int i = 0; (opcount == 0 || i < opcount) && !workload.isStopRequested(); i++) {
+        if (trace != null) {
+          if (i >= trace.length) {
+            break;
+          }
+          arrival = start + trace[i];
+        } else {
+          arrival += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanGapNs);
+        }
+
+        while (System.nanoTime() < arrival) {
+          LockSupport.parkNanos(arrival - System.nanoTime());
+          if (Thread.interrupted()) {
+            return;
+          }
+        }
+        queueDepth.recordValue(arrivals.size());
+        arrivals.add(arrival);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      arrivals.add(DONE);
+    }
+  }
+
+  /**
+   * Reports the queue depths the arrivals found; call it once the dispatcher thread was
+   * interrupted and joined.
+   */
+  public void report() {
+    measurements.reportValue("QUEUE-DEPTH", "Arrivals", queueDepth.getTotalCount());
+    if (queueDepth.getTotalCount() > 0) {
+      measurements.reportValue("QUEUE-DEPTH", "AverageDepth", queueDepth.getMean());
+      measurements.reportValue("QUEUE-DEPTH", "MaxDepth", queueDepth.getMaxValue());
+      measurements.reportValue("QUEUE-DEPTH", "95thPercentileDepth", queueDepth.getValueAtPercentile(95));
+      measurements.reportValue("QUEUE-DEPTH", "99thPercentileDepth", queueDepth.getValueAtPercentile(99));
+    }
+  }
+}
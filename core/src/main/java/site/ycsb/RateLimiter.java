@@ -0,0 +1,63 @@
+package site.ycsb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket shared by all client threads, so the target is the throughput of the
+ * whole client rather than a fixed share per thread: a thread stuck on a slow operation
+ * leaves its tokens to the others. The bucket holds up to burst tokens; after a stall
+ * that many operations may start at once to catch up, then the rate is the target again.
+ *
+ * The bucket is kept as the time its next token is due, taken with a compare-and-set,
+ * so acquiring a token never blocks on a lock.
+ */
+public class RateLimiter {
+
+  private final int burst;
+  private volatile long intervalNs;
+  private volatile long burstNs;
+  private final AtomicLong next = new AtomicLong(System.nanoTime());
+
+  /**
+   * @param target the rate in operations per second
+   * @param burst  the number of operations that may start at once, at least 1
+   */
+  public RateLimiter(int target, int burst) {
+    if (burst < 1) {
+      throw new IllegalArgumentException("The rate limiter needs a burst of at least 1");
+    }
+    this.burst = burst;
+    setTarget(target);
+  }
+
+  /**
+   * Changes the rate while the client threads run. The token already due keeps its time.
+   *
+   * @param target the rate in operations per second
+   */
+  public void setTarget(int target) {
+    if (target <= 0) {
+      throw new IllegalArgumentException("The rate limiter needs a target");
+    }
+    long interval = TimeUnit.SECONDS.toNanos(1) / target;
+    intervalNs = interval;
+    burstNs = (burst - 1) * interval;
+  }
+
+  /**
+   * Takes a token. Returns the time in System.nanoTime() the operation is due, which the
+   * caller waits for. It is in the past when the bucket had tokens left, up to the length
+   * of a burst before the call.
+   */
+  public long acquire() {
+    while (true) {
+      long now = System.nanoTime();
+      long due = next.get();
+      long slot = Math.max(due, now - burstNs);
+      if (next.compareAndSet(due, slot + intervalNs)) {
+        return slot;
+      }
+    }
+  }
+}
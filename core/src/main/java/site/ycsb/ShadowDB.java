@@ -0,0 +1,407 @@
+package site.ycsb;
+
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoFenceListener;
+import site.ycsb.geodata.GeoFootprint;
+import site.ycsb.geodata.GeoPage;
+import site.ycsb.geodata.GeoPoint;
+import site.ycsb.geodata.GeoServerStats;
+import site.ycsb.measurements.Measurements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Runs every geo operation against two bindings, a primary and a secondary, to compare
+ * them on the exact same queries. For every operation it records the latency of each
+ * binding as OP-label, the primary latency in percent of the secondary one as OP-RATIO
+ * and whether both returned the same points or count as the OP-DIFF status
+ * (UNEXPECTED_STATE on a difference). The caller gets the result of the primary.
+ *
+ * Each binding runs on a thread of its own, as bindings may keep per thread state, so
+ * both pay the same hand-off. With shadow.mode=alternate the two run one after the
+ * other, the first one alternating between operations; with concurrent they run at the
+ * same time.
+ *
+ * The lifecycle operations go to both bindings, the key-value operations, footprint,
+ * server stats, query plans and subscriptions only to the primary.
+ */
+public class ShadowDB extends DB {
+
+  /** The DB classes of the two bindings. */
+  public static final String PRIMARY_PROPERTY = "shadow.primary";
+  public static final String SECONDARY_PROPERTY = "shadow.secondary";
+
+  /** The labels of the two bindings in the measurement names, the class names by default. */
+  public static final String PRIMARY_LABEL_PROPERTY = "shadow.primary.label";
+  public static final String SECONDARY_LABEL_PROPERTY = "shadow.secondary.label";
+
+  /** "alternate" or "concurrent". */
+  public static final String MODE_PROPERTY = "shadow.mode";
+  public static final String MODE_PROPERTY_DEFAULT = "alternate";
+
+  /**
+   * One of the two bindings and the thread it runs on.
+   */
+  private static final class Side {
+    private final DB db;
+    private final String label;
+    private final ExecutorService executor;
+
+    private Side(DB db, String label) {
+      this.db = db;
+      this.label = label;
+      this.executor = Executors.newSingleThreadExecutor(r -> {
+          Thread thread = new Thread(r, "shadow-" + label);
+          thread.setDaemon(true);
+          return thread;
+        });
+    }
+
+    private <T> T call(Callable<T> task) throws DBException {
+      try {
+        return executor.submit(task).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DBException(e);
+      } catch (ExecutionException e) {
+        throw new DBException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * The status and latency of one side of an operation.
+   */
+  private static final class Outcome {
+    private Status status = Status.ERROR;
+    private long nanos;
+  }
+
+  private Side primary;
+  private Side secondary;
+  private boolean concurrent;
+  private boolean primaryFirst = true;
+  private Measurements measurements;
+
+  /** The secondary continuation tokens, keyed by the primary token of the same page. */
+  private final Map<String, String> continuations = new HashMap<>();
+
+  @Override
+  public void init() throws DBException {
+    String mode = getProperties().getProperty(MODE_PROPERTY, MODE_PROPERTY_DEFAULT);
+    if (!"alternate".equals(mode) && !"concurrent".equals(mode)) {
+      throw new DBException("Unknown " + MODE_PROPERTY + " \"" + mode + "\"");
+    }
+    concurrent = "concurrent".equals(mode);
+    measurements = Measurements.getMeasurements();
+
+    primary = newSide(PRIMARY_PROPERTY, PRIMARY_LABEL_PROPERTY);
+    secondary = newSide(SECONDARY_PROPERTY, SECONDARY_LABEL_PROPERTY);
+    if (primary.label.equals(secondary.label)) {
+      throw new DBException("Set " + PRIMARY_LABEL_PROPERTY + " and " + SECONDARY_LABEL_PROPERTY
+          + " to tell the two bindings apart.");
+    }
+
+    for (Side side : new Side[] {primary, secondary}) {
+      side.call(() -> {
+          side.db.init();
+          return null;
+        });
+    }
+  }
+
+  private Side newSide(String property, String labelProperty) throws DBException {
+    String dbname = getProperties().getProperty(property);
+    if (dbname == null) {
+      throw new DBException("Missing " + property);
+    }
+    DB db;
+    try {
+      db = (DB) ShadowDB.class.getClassLoader().loadClass(dbname).newInstance();
+    } catch (Exception e) {
+      throw new DBException("Unknown DB " + dbname, e);
+    }
+    db.setProperties(getProperties());
+    return new Side(db, getProperties().getProperty(labelProperty, db.getClass().getSimpleName()));
+  }
+
+  @Override
+  public void cleanup() throws DBException {
+    try {
+      for (Side side : new Side[] {primary, secondary}) {
+        side.call(() -> {
+            side.db.cleanup();
+            return null;
+          });
+      }
+    } finally {
+      primary.executor.shutdown();
+      secondary.executor.shutdown();
+    }
+  }
+
+  /**
+   * Runs one operation on both bindings, records the paired latencies and the result
+   * difference and returns the status of the primary.
+   */
+  private Status shadow(String op, Function<DB, Status> primaryOp, Function<DB, Status> secondaryOp,
+                        BooleanSupplier sameResult) {
+    Outcome primaryOutcome;
+    Outcome secondaryOutcome;
+    try {
+      if (concurrent) {
+        Future<Outcome> primaryFuture = submit(primary, primaryOp);
+        Future<Outcome> secondaryFuture = submit(secondary, secondaryOp);
+        primaryOutcome = primaryFuture.get();
+        secondaryOutcome = secondaryFuture.get();
+      } else if (primaryFirst) {
+        primaryOutcome = submit(primary, primaryOp).get();
+        secondaryOutcome = submit(secondary, secondaryOp).get();
+      } else {
+        secondaryOutcome = submit(secondary, secondaryOp).get();
+        primaryOutcome = submit(primary, primaryOp).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Status.ERROR;
+    } catch (ExecutionException e) {
+      System.err.println("Error in shadowed " + op + ": " + e.getCause());
+      return Status.ERROR;
+    }
+    primaryFirst = !primaryFirst;
+
+    record(op, primary, primaryOutcome);
+    record(op, secondary, secondaryOutcome);
+
+    if (primaryOutcome.status.isOk() && secondaryOutcome.status.isOk()) {
+      long secondaryMicros = Math.max(1, secondaryOutcome.nanos / 1000);
+      measurements.measure(op + "-RATIO", (int) (100 * (primaryOutcome.nanos / 1000) / secondaryMicros));
+      measurements.reportStatus(op + "-DIFF", sameResult.getAsBoolean() ? Status.OK : Status.UNEXPECTED_STATE);
+    } else if (primaryOutcome.status.isOk() != secondaryOutcome.status.isOk()) {
+      measurements.reportStatus(op + "-DIFF", Status.UNEXPECTED_STATE);
+    }
+    return primaryOutcome.status;
+  }
+
+  private static Future<Outcome> submit(Side side, Function<DB, Status> operation) {
+    return side.executor.submit(() -> {
+        Outcome outcome = new Outcome();
+        long st = System.nanoTime();
+        Status status = operation.apply(side.db);
+        outcome.nanos = System.nanoTime() - st;
+        if (status != null) {
+          outcome.status = status;
+        }
+        return outcome;
+      });
+  }
+
+  private void record(String op, Side side, Outcome outcome) {
+    String name = op + "-" + side.label;
+    measurements.measure(outcome.status.isOk() ? name : name + "-FAILED", (int) (outcome.nanos / 1000));
+    measurements.reportStatus(name, outcome.status);
+  }
+
+  private static boolean sameIds(List<GeoPoint> a, List<GeoPoint> b) {
+    return a.size() == b.size() && ids(a).equals(ids(b));
+  }
+
+  private static Set<String> ids(List<GeoPoint> points) {
+    Set<String> ids = new HashSet<>();
+    for (GeoPoint point : points) {
+      ids.add(point.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Runs a lifecycle operation on both bindings, failing if either fails.
+   */
+  private Status both(Function<DB, Status> operation) {
+    Status status = Status.OK;
+    for (Side side : new Side[] {primary, secondary}) {
+      Status res;
+      try {
+        res = side.call(() -> operation.apply(side.db));
+      } catch (DBException e) {
+        System.err.println("Error in " + side.label + ": " + e.getCause());
+        res = Status.ERROR;
+      }
+      if (res == null || !res.isOk()) {
+        status = res == null ? Status.ERROR : res;
+      }
+    }
+    return status;
+  }
+
+  private Status primaryOnly(Function<DB, Status> operation) {
+    try {
+      return primary.call(() -> operation.apply(primary.db));
+    } catch (DBException e) {
+      System.err.println("Error in " + primary.label + ": " + e.getCause());
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status reset(String table) {
+    return both(db -> db.reset(table));
+  }
+
+  @Override
+  public Status createSpatialIndex(String table) {
+    return both(db -> db.createSpatialIndex(table));
+  }
+
+  @Override
+  public Status finishLoad(String table) {
+    return both(db -> db.finishLoad(table));
+  }
+
+  @Override
+  public Status insert(String table, String key, GeoPoint values) {
+    return shadow("INSERT", db -> db.insert(table, key, values), db -> db.insert(table, key, values), () -> true);
+  }
+
+  @Override
+  public Status readPoint(String table, String key, GeoPoint result) {
+    GeoPoint other = new GeoPoint();
+    return shadow("READ-POINT", db -> db.readPoint(table, key, result), db -> db.readPoint(table, key, other),
+        () -> result.getLatitude() == other.getLatitude() && result.getLongitude() == other.getLongitude());
+  }
+
+  @Override
+  public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+                        ArrayList<GeoPoint> result) {
+    ArrayList<GeoPoint> other = new ArrayList<>();
+    return shadow("SCAN-KNN", db -> db.scanKNN(table, lat, lgn, k, fields, result),
+        db -> db.scanKNN(table, lat, lgn, k, fields, other), () -> sameIds(result, other));
+  }
+
+  @Override
+  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, Set<String> fields,
+                               ArrayList<GeoPoint> result) {
+    ArrayList<GeoPoint> other = new ArrayList<>();
+    return shadow("SCAN-DISTANCE", db -> db.scanByDistance(table, lat, lgn, maxDistance, fields, result),
+        db -> db.scanByDistance(table, lat, lgn, maxDistance, fields, other), () -> sameIds(result, other));
+  }
+
+  /**
+   * The continuation tokens are binding specific, so the secondary gets its own token of
+   * the same page. A page the secondary has no token for is not shadowed.
+   */
+  @Override
+  public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+                                   String continuation, Set<String> fields, GeoPage page) {
+    String otherContinuation = continuation == null ? null : continuations.remove(continuation);
+    if (continuation != null && otherContinuation == null) {
+      return primaryOnly(db -> db.scanByDistancePage(table, lat, lgn, maxDistance, pageSize, continuation,
+          fields, page));
+    }
+
+    GeoPage other = new GeoPage();
+    Status status = shadow("SCAN-DISTANCE-PAGE",
+        db -> db.scanByDistancePage(table, lat, lgn, maxDistance, pageSize, continuation, fields, page),
+        db -> db.scanByDistancePage(table, lat, lgn, maxDistance, pageSize, otherContinuation, fields, other),
+        () -> sameIds(page.getPoints(), other.getPoints()));
+    if (!page.isLast() && !other.isLast()) {
+      continuations.put(page.getContinuation(), other.getContinuation());
+    }
+    return status;
+  }
+
+  @Override
+  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, Set<String> fields,
+                              ArrayList<GeoPoint> result) {
+    ArrayList<GeoPoint> other = new ArrayList<>();
+    return shadow("SCAN-POLYGON", db -> db.scanByPolygon(table, polygonVertices, fields, result),
+        db -> db.scanByPolygon(table, polygonVertices, fields, other), () -> sameIds(result, other));
+  }
+
+  @Override
+  public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm, Set<String> fields,
+                               ArrayList<GeoPoint> result) {
+    ArrayList<GeoPoint> other = new ArrayList<>();
+    return shadow("SCAN-CORRIDOR", db -> db.scanByCorridor(table, polyline, bufferKm, fields, result),
+        db -> db.scanByCorridor(table, polyline, bufferKm, fields, other), () -> sameIds(result, other));
+  }
+
+  @Override
+  public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount result) {
+    GeoCount other = new GeoCount();
+    return shadow("COUNT-DISTANCE", db -> db.countByDistance(table, lat, lgn, maxDistance, result),
+        db -> db.countByDistance(table, lat, lgn, maxDistance, other), () -> result.getCount() == other.getCount());
+  }
+
+  @Override
+  public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
+    GeoCount other = new GeoCount();
+    return shadow("COUNT-POLYGON", db -> db.countByPolygon(table, polygonVertices, result),
+        db -> db.countByPolygon(table, polygonVertices, other), () -> result.getCount() == other.getCount());
+  }
+
+  @Override
+  public Status footprint(String table, GeoFootprint result) {
+    return primaryOnly(db -> db.footprint(table, result));
+  }
+
+  @Override
+  public Status serverStats(GeoServerStats result) {
+    return primaryOnly(db -> db.serverStats(result));
+  }
+
+  @Override
+  public Status explainLast(StringBuilder plan) {
+    return primaryOnly(db -> db.explainLast(plan));
+  }
+
+  @Override
+  public Status subscribe(String table, String subscriptionId, ArrayList<GeoPoint> region,
+                          GeoFenceListener listener) {
+    return primaryOnly(db -> db.subscribe(table, subscriptionId, region, listener));
+  }
+
+  @Override
+  public Status unsubscribe(String table, String subscriptionId) {
+    return primaryOnly(db -> db.unsubscribe(table, subscriptionId));
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    return primaryOnly(db -> db.read(table, key, fields, result));
+  }
+
+  @Override
+  public Status scan(String table, String startkey, int recordcount, Set<String> fields,
+                     Vector<HashMap<String, ByteIterator>> result) {
+    return primaryOnly(db -> db.scan(table, startkey, recordcount, fields, result));
+  }
+
+  @Override
+  public Status update(String table, String key, Map<String, ByteIterator> values) {
+    return primaryOnly(db -> db.update(table, key, values));
+  }
+
+  @Override
+  public Status insert(String table, String key, Map<String, ByteIterator> values) {
+    return primaryOnly(db -> db.insert(table, key, values));
+  }
+
+  @Override
+  public Status delete(String table, String key) {
+    return primaryOnly(db -> db.delete(table, key));
+  }
+}
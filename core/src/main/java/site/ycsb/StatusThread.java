@@ -17,11 +17,16 @@
 
 package site.ycsb;
 
+import org.HdrHistogram.Histogram;
+import site.ycsb.geodata.GeoServerStats;
 import site.ycsb.measurements.Measurements;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -41,9 +46,15 @@ public class StatusThread extends Thread {
   // The clients that are running.
   private final List<ClientThread> clients;
 
+  // The DB instance the server stats are sampled on, null to not track them
+  private DB serverdb;
+
   private final String label;
   private final boolean standardstatus;
 
+  // The target throughput in ops/sec, 0 for none
+  private int target;
+
   // The interval for reporting status.
   private long sleeptimeNs;
 
@@ -57,6 +68,14 @@ public class StatusThread extends Thread {
   private long lastGCCount = 0;
   private long lastGCTime = 0;
 
+  // Server counters at the previous sample
+  private final Map<String, Long> lastServerCounters = new HashMap<>();
+
+  /** The samples of each server gauge and the increases of each server counter per interval. */
+  private final Map<String, Histogram> serverGauges = new TreeMap<>();
+  private final Map<String, Histogram> serverCounters = new TreeMap<>();
+  private final Map<String, Long> serverCounterTotals = new HashMap<>();
+
   /**
    * Creates a new StatusThread without JVM stat tracking.
    *
@@ -95,6 +114,35 @@ public class StatusThread extends Thread {
     this.trackJVMStats = trackJVMStats;
   }
 
+  /**
+   * Creates a new StatusThread that also samples the server stats of the store.
+   *
+   * @param completeLatch         The latch that each client thread will {@link CountDownLatch#countDown()}
+   *                              as they complete.
+   * @param clients               The clients to collect metrics from.
+   * @param label                 The label for the status.
+   * @param standardstatus        If true the status is printed to stdout in addition to stderr.
+   * @param statusIntervalSeconds The number of seconds between status updates.
+   * @param trackJVMStats         Whether or not to track JVM stats.
+   * @param serverdb              A DB instance of its own to sample the server stats on, null to not
+   *                              track them. It is initialized and cleaned up by this thread.
+   */
+  public StatusThread(CountDownLatch completeLatch, List<ClientThread> clients,
+                      String label, boolean standardstatus, int statusIntervalSeconds,
+                      boolean trackJVMStats, DB serverdb) {
+    this(completeLatch, clients, label, standardstatus, statusIntervalSeconds, trackJVMStats);
+    this.serverdb = serverdb;
+  }
+
+  /**
+   * Sets the target throughput the throughput of each interval is reported against.
+   *
+   * @param target The target in operations per second, 0 for none.
+   */
+  public void setTarget(int target) {
+    this.target = target;
+  }
+
   /**
    * Run and periodically report status.
    */
@@ -108,6 +156,8 @@ public class StatusThread extends Thread {
 
     boolean alldone;
 
+    initServerDB();
+
     do {
       long nowMs = System.currentTimeMillis();
 
@@ -116,6 +166,9 @@ public class StatusThread extends Thread {
       if (trackJVMStats) {
         measureJVM();
       }
+      if (serverdb != null) {
+        measureServer();
+      }
 
       alldone = waitForClientsUntil(deadline);
 
@@ -127,6 +180,11 @@ public class StatusThread extends Thread {
     if (trackJVMStats) {
       measureJVM();
     }
+    if (serverdb != null) {
+      measureServer();
+      cleanupServerDB();
+    }
+    reportServer();
     // Print the final stats.
     computeStats(startTimeMs, startIntervalMs, System.currentTimeMillis(), lastTotalOps);
   }
@@ -169,6 +227,9 @@ public class StatusThread extends Thread {
 
     if (totalops != 0) {
       msg.append(d.format(curthroughput)).append(" current ops/sec; ");
+      if (target > 0 && endIntervalMs > startIntervalMs) {
+        msg.append(d.format(100 * curthroughput / target)).append("% of target ").append(target).append(" ops/sec; ");
+      }
     }
     if (todoops != 0) {
       msg.append("est completion in ").append(RemainingFormatter.format(estremaining));
@@ -257,6 +318,91 @@ public class StatusThread extends Thread {
     lastGCTime = gcTime;
   }
 
+  /**
+   * Initializes the server stats DB on this thread, as bindings may keep per thread state.
+   */
+  private void initServerDB() {
+    if (serverdb == null) {
+      return;
+    }
+    try {
+      serverdb.init();
+    } catch (DBException e) {
+      System.err.println("Could not initialize the server stats DB, not tracking server stats: " + e);
+      serverdb = null;
+    }
+  }
+
+  private void cleanupServerDB() {
+    if (serverdb == null) {
+      return;
+    }
+    try {
+      serverdb.cleanup();
+    } catch (DBException e) {
+      System.err.println("Could not clean up the server stats DB: " + e);
+    }
+    serverdb = null;
+  }
+
+  /**
+   * Samples the server stats, recording the gauges as they are and the counters as
+   * their increase since the previous sample.
+   */
+  private void measureServer() {
+    GeoServerStats stats = new GeoServerStats();
+    Status status = serverdb.serverStats(stats);
+    if (Status.NOT_IMPLEMENTED.equals(status)) {
+      System.err.println("The DB does not report server stats, not tracking them.");
+      cleanupServerDB();
+      return;
+    }
+    if (status == null || !status.isOk()) {
+      return;
+    }
+
+    for (Map.Entry<String, Long> gauge : stats.getGauges().entrySet()) {
+      record(serverGauges, gauge.getKey(), gauge.getValue());
+    }
+    for (Map.Entry<String, Long> counter : stats.getCounters().entrySet()) {
+      Long last = lastServerCounters.put(counter.getKey(), counter.getValue());
+      if (last != null) {
+        // A counter that went back was reset, e.g. by a restart of the server.
+        long delta = Math.max(0, counter.getValue() - last);
+        record(serverCounters, counter.getKey(), delta);
+        serverCounterTotals.merge(counter.getKey(), delta, Long::sum);
+      }
+    }
+  }
+
+  private static void record(Map<String, Histogram> samples, String name, long value) {
+    samples.computeIfAbsent(name, k -> new Histogram(3)).recordValue(Math.max(0, value));
+  }
+
+  /**
+   * Reports the server stats as values, apart from the latencies of the operations: the
+   * average and the range of each gauge, and the total and the per interval increase of
+   * each counter.
+   */
+  private void reportServer() {
+    for (Map.Entry<String, Histogram> gauge : serverGauges.entrySet()) {
+      Histogram h = gauge.getValue();
+      String metric = "SERVER_" + gauge.getKey();
+      measurements.reportValue(metric, "Samples", h.getTotalCount());
+      measurements.reportValue(metric, "Average", h.getMean());
+      measurements.reportValue(metric, "Min", h.getMinValue());
+      measurements.reportValue(metric, "Max", h.getMaxValue());
+    }
+    for (Map.Entry<String, Histogram> counter : serverCounters.entrySet()) {
+      Histogram h = counter.getValue();
+      String metric = "SERVER_" + counter.getKey();
+      measurements.reportValue(metric, "Intervals", h.getTotalCount());
+      measurements.reportValue(metric, "Total", serverCounterTotals.get(counter.getKey()));
+      measurements.reportValue(metric, "AveragePerInterval", h.getMean());
+      measurements.reportValue(metric, "MaxPerInterval", h.getMaxValue());
+    }
+  }
+
   /**
    * @return The maximum threads running during the test.
    */
@@ -0,0 +1,342 @@
+package site.ycsb;
+
+import org.HdrHistogram.Histogram;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.util.DefaultPrettyPrinter;
+import site.ycsb.measurements.Measurements;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steps the target of the global rate limiter while the client threads run, to find the
+ * latency/throughput knee of every operation in one run: the dataset stays loaded and the
+ * connections open from one step to the next.
+ *
+ * Each step is held for windows of sweep.window.ms until the p99 of every operation moved
+ * by less than sweep.tolerance from the previous window, and the last window is the point
+ * of the step on the curve. The sweep ends at sweep.max, once the client cannot deliver
+ * the target any more or once every operation is over the p99 SLO. For each operation the
+ * highest throughput that kept its p99 within sweep.slo.p99.ms is reported as the SWEEP
+ * metric, and the curve is written to sweep.file, as JSON when the name ends in .json and
+ * as CSV otherwise.
+ *
+ * The throughput of a step is the transactions the client threads completed, not the
+ * samples of the histograms, and only the series of successful operations count for the
+ * SLO: a failure or timeout that returns quickly does not make a step sustainable, and
+ * the pages of a paged scan are not operations of their own.
+ */
+public class ThroughputSweep extends Thread {
+
+  /** The target of the first step, in ops/sec. */
+  public static final String START_PROPERTY = "sweep.start";
+  public static final String START_PROPERTY_DEFAULT = "100";
+
+  /** The increase of the target from one step to the next, in ops/sec. */
+  public static final String STEP_PROPERTY = "sweep.step";
+  public static final String STEP_PROPERTY_DEFAULT = "100";
+
+  /** The target of the last step, 0 to go on until the client saturates. */
+  public static final String MAX_PROPERTY = "sweep.max";
+  public static final String MAX_PROPERTY_DEFAULT = "0";
+
+  /** The p99 latency in ms an operation may reach at a sustainable throughput. */
+  public static final String SLO_PROPERTY = "sweep.slo.p99.ms";
+  public static final String SLO_PROPERTY_DEFAULT = "10";
+
+  /** The length of the windows the latencies of a step are compared over. */
+  public static final String WINDOW_PROPERTY = "sweep.window.ms";
+  public static final String WINDOW_PROPERTY_DEFAULT = "5000";
+
+  /** The relative change of the p99 between two windows under which a step is stable. */
+  public static final String TOLERANCE_PROPERTY = "sweep.tolerance";
+  public static final String TOLERANCE_PROPERTY_DEFAULT = "0.1";
+
+  /** The number of windows after which a step ends even if it is not stable. */
+  public static final String MAX_WINDOWS_PROPERTY = "sweep.maxwindows";
+  public static final String MAX_WINDOWS_PROPERTY_DEFAULT = "6";
+
+  /** The file the curve is written to, none by default. */
+  public static final String FILE_PROPERTY = "sweep.file";
+
+  /** The share of the target below which the client counts as saturated. */
+  private static final double SATURATION = 0.9;
+
+  /** The series of the single pages of a paged scan, which are part of one transaction. */
+  private static final String PAGE_SERIES = "SCAN-DISTANCE-PAGE";
+
+  /** The statuses DBWrapper may name the series of the failed operations after. */
+  private static final Status[] FAILURES = {Status.ERROR, Status.NOT_FOUND, Status.NOT_IMPLEMENTED,
+      Status.UNEXPECTED_STATE, Status.BAD_REQUEST, Status.FORBIDDEN, Status.SERVICE_UNAVAILABLE, Status.TIMEOUT};
+
+  /**
+   * The point of one step on the curve.
+   */
+  private static final class Step {
+    private final int target;
+    private final double throughput;
+    private final boolean stable;
+    private final Map<String, Histogram> latencies;
+
+    private Step(int target, double throughput, boolean stable, Map<String, Histogram> latencies) {
+      this.target = target;
+      this.throughput = throughput;
+      this.stable = stable;
+      this.latencies = latencies;
+    }
+
+    private boolean saturated() {
+      return throughput < SATURATION * target;
+    }
+  }
+
+  private final RateLimiter limiter;
+  private final Workload workload;
+  private final Collection<ClientThread> clients;
+  private final Measurements measurements;
+  private final int start;
+  private final int step;
+  private final int max;
+  private final long sloUs;
+  private final long windowMs;
+  private final double tolerance;
+  private final int maxWindows;
+  private final String file;
+  private final List<Step> steps = new ArrayList<>();
+
+  /**
+   * @param props    the properties of the run
+   * @param limiter  the rate limiter shared by the client threads
+   * @param workload the workload, stopped at the end of the sweep
+   * @param clients  the client threads, whose transactions are the throughput of a step
+   */
+  public ThroughputSweep(Properties props, RateLimiter limiter, Workload workload,
+                         Collection<ClientThread> clients) {
+    super("ThroughputSweep");
+    this.limiter = limiter;
+    this.workload = workload;
+    this.clients = clients;
+    measurements = Measurements.getMeasurements();
+    start = Integer.parseInt(props.getProperty(START_PROPERTY, START_PROPERTY_DEFAULT));
+    step = Integer.parseInt(props.getProperty(STEP_PROPERTY, STEP_PROPERTY_DEFAULT));
+    max = Integer.parseInt(props.getProperty(MAX_PROPERTY, MAX_PROPERTY_DEFAULT));
+    sloUs = (long) (Double.parseDouble(props.getProperty(SLO_PROPERTY, SLO_PROPERTY_DEFAULT))
+        * TimeUnit.MILLISECONDS.toMicros(1));
+    windowMs = Long.parseLong(props.getProperty(WINDOW_PROPERTY, WINDOW_PROPERTY_DEFAULT));
+    tolerance = Double.parseDouble(props.getProperty(TOLERANCE_PROPERTY, TOLERANCE_PROPERTY_DEFAULT));
+    maxWindows = Integer.parseInt(props.getProperty(MAX_WINDOWS_PROPERTY, MAX_WINDOWS_PROPERTY_DEFAULT));
+    file = props.getProperty(FILE_PROPERTY);
+    if (start <= 0 || step <= 0) {
+      throw new IllegalArgumentException(START_PROPERTY + " and " + STEP_PROPERTY + " must be positive");
+    }
+    measurements.recordSteps();
+  }
+
+  @Override
+  public void run() {
+    try {
+      for (int target = start; max == 0 || target <= max; target += step) {
+        limiter.setTarget(target);
+        Step point = hold(target);
+        if (point == null) {
+          break;
+        }
+        steps.add(point);
+        System.err.println("[SWEEP] target " + target + " ops/sec: " + describe(point));
+        if (point.saturated() || overSlo(point)) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      // The client threads are done, report the steps so far.
+      Thread.currentThread().interrupt();
+    } finally {
+      workload.requestStop();
+      report();
+    }
+  }
+
+  /**
+   * Holds a step until the p99 of every operation is stable or the windows run out.
+   * Returns null if the run ended during the step.
+   */
+  private Step hold(int target) throws InterruptedException {
+    // The latencies of the ramp to the new target belong to no step.
+    measurements.takeStepHistograms();
+
+    Map<String, Histogram> previous = null;
+    for (int window = 1; !workload.isStopRequested(); window++) {
+      long windowStart = System.nanoTime();
+      long opsBefore = opsDone();
+      TimeUnit.MILLISECONDS.sleep(windowMs);
+      Map<String, Histogram> latencies = measurements.takeStepHistograms();
+      double throughput = (opsDone() - opsBefore) * 1e9 / (System.nanoTime() - windowStart);
+
+      boolean stable = previous != null && stable(previous, latencies);
+      if (stable || window >= maxWindows) {
+        return new Step(target, throughput, stable, latencies);
+      }
+      previous = latencies;
+    }
+    return null;
+  }
+
+  private long opsDone() {
+    long done = 0;
+    for (ClientThread client : clients) {
+      done += client.getOpsDone();
+    }
+    return done;
+  }
+
+  /**
+   * Whether the series holds the latencies of successful transactions. The failures and
+   * timeouts have series of their own, -FAILED or named after the status.
+   */
+  private static boolean isOperation(String series) {
+    if (series.endsWith("-FAILED") || series.endsWith(PAGE_SERIES)) {
+      return false;
+    }
+    for (Status failure : FAILURES) {
+      if (series.endsWith("-" + failure.getName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean stable(Map<String, Histogram> previous, Map<String, Histogram> latencies) {
+    for (Map.Entry<String, Histogram> op : latencies.entrySet()) {
+      if (!isOperation(op.getKey())) {
+        continue;
+      }
+      Histogram before = previous.get(op.getKey());
+      if (before == null || before.getTotalCount() == 0) {
+        return false;
+      }
+      long p99 = op.getValue().getValueAtPercentile(99);
+      long p99Before = before.getValueAtPercentile(99);
+      if (Math.abs(p99 - p99Before) > tolerance * Math.max(1, p99Before)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean overSlo(Step point) {
+    for (Map.Entry<String, Histogram> op : point.latencies.entrySet()) {
+      Histogram histogram = op.getValue();
+      if (isOperation(op.getKey()) && histogram.getTotalCount() > 0 && histogram.getValueAtPercentile(99) <= sloUs) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String describe(Step point) {
+    DecimalFormat d = new DecimalFormat("#.##");
+    StringBuilder msg = new StringBuilder();
+    msg.append(d.format(point.throughput)).append(" ops/sec");
+    if (!point.stable) {
+      msg.append(" (not stable)");
+    }
+    for (Map.Entry<String, Histogram> op : point.latencies.entrySet()) {
+      msg.append(", ").append(op.getKey()).append(" p99=").append(op.getValue().getValueAtPercentile(99))
+          .append(" us");
+    }
+    return msg.toString();
+  }
+
+  /**
+   * Reports the highest throughput of each operation under the SLO and writes the curve.
+   */
+  private void report() {
+    Map<String, Double> sustainable = new TreeMap<>();
+    for (Step point : steps) {
+      for (Map.Entry<String, Histogram> op : point.latencies.entrySet()) {
+        if (!isOperation(op.getKey())) {
+          continue;
+        }
+        sustainable.putIfAbsent(op.getKey(), 0.0);
+        if (!point.saturated() && op.getValue().getTotalCount() > 0
+            && op.getValue().getValueAtPercentile(99) <= sloUs) {
+          sustainable.put(op.getKey(), Math.max(sustainable.get(op.getKey()), point.throughput));
+        }
+      }
+    }
+    for (Map.Entry<String, Double> op : sustainable.entrySet()) {
+      System.err.println("[SWEEP] " + op.getKey() + " sustains " + new DecimalFormat("#.##").format(op.getValue())
+          + " ops/sec with p99 <= " + sloUs + " us");
+      measurements.reportValue("SWEEP", op.getKey() + " MaxThroughput(ops/sec)", op.getValue());
+    }
+
+    if (file != null) {
+      try {
+        if (file.endsWith(".json")) {
+          writeJson();
+        } else {
+          writeCsv();
+        }
+      } catch (IOException e) {
+        System.err.println("Could not write the sweep to " + file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private void writeCsv() throws IOException {
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+        StandardCharsets.UTF_8))) {
+      out.println("target,throughput,stable,operation,count,p50_us,p99_us,p999_us,max_us");
+      for (Step point : steps) {
+        for (Map.Entry<String, Histogram> op : point.latencies.entrySet()) {
+          Histogram h = op.getValue();
+          out.println(point.target + "," + point.throughput + "," + point.stable + "," + op.getKey() + ","
+              + h.getTotalCount() + "," + h.getValueAtPercentile(50) + "," + h.getValueAtPercentile(99) + ","
+              + h.getValueAtPercentile(99.9) + "," + h.getMaxValue());
+        }
+      }
+    }
+  }
+
+  private void writeJson() throws IOException {
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+      JsonGenerator g = new JsonFactory().createJsonGenerator(out);
+      g.setPrettyPrinter(new DefaultPrettyPrinter());
+      g.writeStartArray();
+      for (Step point : steps) {
+        g.writeStartObject();
+        g.writeNumberField("target", point.target);
+        g.writeNumberField("throughput", point.throughput);
+        g.writeBooleanField("stable", point.stable);
+        g.writeObjectFieldStart("operations");
+        for (Map.Entry<String, Histogram> op : point.latencies.entrySet()) {
+          Histogram h = op.getValue();
+          g.writeObjectFieldStart(op.getKey());
+          g.writeNumberField("count", h.getTotalCount());
+          g.writeNumberField("p50_us", h.getValueAtPercentile(50));
+          g.writeNumberField("p99_us", h.getValueAtPercentile(99));
+          g.writeNumberField("p999_us", h.getValueAtPercentile(99.9));
+          g.writeNumberField("max_us", h.getMaxValue());
+          g.writeEndObject();
+        }
+        g.writeEndObject();
+        g.writeEndObject();
+      }
+      g.writeEndArray();
+      g.close();
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package site.ycsb;
+
+import site.ycsb.measurements.Measurements;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ends the warm-up of a run. The client threads run the real workload from the start,
+ * but until the warm-up is over {@link Measurements} records their samples under
+ * WARMUP-prefixed names, so JIT compilation, cold caches and connection setup stay out of
+ * the steady-state histograms and both can be compared in the export.
+ *
+ * The warm-up ends after warmup.time seconds, after warmup.ops operations or, with
+ * warmup.stable, once the throughput of the last warmup.stable.intervals intervals varies
+ * by less than that percentage, whichever comes first.
+ */
+public class WarmupThread extends Thread {
+
+  /** The length of the warm-up in seconds, 0 for no limit. */
+  public static final String WARMUP_TIME_PROPERTY = "warmup.time";
+
+  /** The number of operations of the warm-up, 0 for no limit. */
+  public static final String WARMUP_OPS_PROPERTY = "warmup.ops";
+
+  /** The variation in percent of the interval throughput under which it is stable, 0 to not check. */
+  public static final String WARMUP_STABLE_PROPERTY = "warmup.stable";
+
+  /** The number of intervals the throughput must be stable over. */
+  public static final String WARMUP_STABLE_INTERVALS_PROPERTY = "warmup.stable.intervals";
+  public static final String WARMUP_STABLE_INTERVALS_PROPERTY_DEFAULT = "3";
+
+  /** The length in ms of the intervals the throughput is compared over. */
+  public static final String WARMUP_INTERVAL_PROPERTY = "warmup.interval";
+  public static final String WARMUP_INTERVAL_PROPERTY_DEFAULT = "1000";
+
+  private static final long POLL_MS = 10;
+
+  private final Collection<ClientThread> clients;
+  private final Measurements measurements;
+  private final long timeNs;
+  private final long ops;
+  private final double stable;
+  private final int stableIntervals;
+  private final long intervalNs;
+
+  private volatile long warmupOps;
+  private volatile long warmupTimeNs;
+
+  /**
+   * Returns whether the properties ask for a warm-up.
+   */
+  public static boolean isEnabled(Properties props) {
+    return Long.parseLong(props.getProperty(WARMUP_TIME_PROPERTY, "0")) > 0
+        || Long.parseLong(props.getProperty(WARMUP_OPS_PROPERTY, "0")) > 0
+        || Double.parseDouble(props.getProperty(WARMUP_STABLE_PROPERTY, "0")) > 0;
+  }
+
+  /**
+   * Starts the warm-up of the measurements; call it before the client threads start.
+   *
+   * @param props   the properties of the run
+   * @param clients the client threads, whose operations are counted
+   */
+  public WarmupThread(Properties props, Collection<ClientThread> clients) {
+    super("WarmupThread");
+    setDaemon(true);
+    this.clients = clients;
+    measurements = Measurements.getMeasurements();
+    timeNs = TimeUnit.SECONDS.toNanos(Long.parseLong(props.getProperty(WARMUP_TIME_PROPERTY, "0")));
+    ops = Long.parseLong(props.getProperty(WARMUP_OPS_PROPERTY, "0"));
+    stable = Double.parseDouble(props.getProperty(WARMUP_STABLE_PROPERTY, "0"));
+    stableIntervals = Math.max(2, Integer.parseInt(
+        props.getProperty(WARMUP_STABLE_INTERVALS_PROPERTY, WARMUP_STABLE_INTERVALS_PROPERTY_DEFAULT)));
+    intervalNs = TimeUnit.MILLISECONDS.toNanos(
+        Long.parseLong(props.getProperty(WARMUP_INTERVAL_PROPERTY, WARMUP_INTERVAL_PROPERTY_DEFAULT)));
+    measurements.setWarmup(true);
+  }
+
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    long intervalStart = start;
+    long intervalOps = 0;
+    Deque<Double> throughputs = new ArrayDeque<>();
+
+    try {
+      while (true) {
+        TimeUnit.MILLISECONDS.sleep(POLL_MS);
+        long now = System.nanoTime();
+        long done = opsDone();
+
+        if ((timeNs > 0 && now - start >= timeNs) || (ops > 0 && done >= ops)) {
+          break;
+        }
+        if (stable > 0 && now - intervalStart >= intervalNs) {
+          throughputs.addLast((done - intervalOps) / ((now - intervalStart) / 1e9));
+          if (throughputs.size() > stableIntervals) {
+            throughputs.removeFirst();
+          }
+          if (throughputs.size() == stableIntervals && isStable(throughputs)) {
+            break;
+          }
+          intervalStart = now;
+          intervalOps = done;
+        }
+      }
+      end(start);
+      System.err.println("Warm-up done after " + TimeUnit.NANOSECONDS.toMillis(warmupTimeNs) + " ms and "
+          + warmupOps + " operations.");
+    } catch (InterruptedException e) {
+      // The run ended during the warm-up.
+      end(start);
+    }
+  }
+
+  private boolean isStable(Deque<Double> throughputs) {
+    double min = Double.MAX_VALUE;
+    double max = 0;
+    double sum = 0;
+    for (double throughput : throughputs) {
+      min = Math.min(min, throughput);
+      max = Math.max(max, throughput);
+      sum += throughput;
+    }
+    double mean = sum / throughputs.size();
+    return mean > 0 && (max - min) / mean * 100 <= stable;
+  }
+
+  private void end(long start) {
+    measurements.setWarmup(false);
+    warmupOps = opsDone();
+    warmupTimeNs = System.nanoTime() - start;
+  }
+
+  private long opsDone() {
+    long done = 0;
+    for (ClientThread client : clients) {
+      done += client.getOpsDone();
+    }
+    return done;
+  }
+
+  /**
+   * Reports the warm-up and the steady state of the run, to be called once the client
+   * threads are done and this thread was interrupted and joined.
+   *
+   * @param opsDone   the operations of the whole run
+   * @param runtimeMs the length of the whole run
+   */
+  public void report(long opsDone, long runtimeMs) {
+    long warmupMs = TimeUnit.NANOSECONDS.toMillis(warmupTimeNs);
+    measurements.reportValue("WARMUP", "RunTime(ms)", warmupMs);
+    measurements.reportValue("WARMUP", "Operations", warmupOps);
+    if (warmupMs > 0) {
+      measurements.reportValue("WARMUP", "Throughput(ops/sec)", 1000.0 * warmupOps / warmupMs);
+    }
+    long steadyMs = runtimeMs - warmupMs;
+    measurements.reportValue("STEADY", "RunTime(ms)", steadyMs);
+    measurements.reportValue("STEADY", "Operations", opsDone - warmupOps);
+    if (steadyMs > 0) {
+      measurements.reportValue("STEADY", "Throughput(ops/sec)", 1000.0 * (opsDone - warmupOps) / steadyMs);
+    }
+  }
+}
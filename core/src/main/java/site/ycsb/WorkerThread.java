@@ -0,0 +1,141 @@
+package site.ycsb;
+
+import org.HdrHistogram.Histogram;
+import site.ycsb.measurements.Measurements;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The connection of a worker to its {@link Coordinator}. It takes the properties of the
+ * worker from the coordinator, waits for the start of all workers and then streams the
+ * histograms of every interval back, until {@link #finish(long, long)}.
+ */
+public class WorkerThread extends Thread {
+
+  private final Socket socket;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private final Properties props;
+  private final long intervalMs;
+  private Measurements measurements;
+  private Collection<ClientThread> clients;
+
+  /**
+   * Connects to the coordinator and takes the properties of this worker from it. The
+   * worker's own properties override them, except the shard the coordinator assigned.
+   *
+   * @param local the properties of the worker's command line
+   */
+  public WorkerThread(Properties local) throws IOException {
+    super("WorkerThread");
+    setDaemon(true);
+    String host = local.getProperty(Coordinator.HOST_PROPERTY, Coordinator.HOST_PROPERTY_DEFAULT);
+    int port = Integer.parseInt(local.getProperty(Coordinator.PORT_PROPERTY, Coordinator.PORT_PROPERTY_DEFAULT));
+    socket = new Socket(host, port);
+    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    props = Coordinator.readProperties(in);
+    Properties shard = new Properties();
+    for (String key : Coordinator.SHARD_PROPERTIES) {
+      if (props.getProperty(key) != null) {
+        shard.setProperty(key, props.getProperty(key));
+      }
+    }
+    for (String key : local.stringPropertyNames()) {
+      props.setProperty(key, local.getProperty(key));
+    }
+    props.putAll(shard);
+
+    intervalMs = Long.parseLong(props.getProperty(Coordinator.INTERVAL_PROPERTY,
+        Coordinator.INTERVAL_PROPERTY_DEFAULT));
+  }
+
+  /**
+   * The properties of this worker: the coordinator's, the worker's own and the shard.
+   */
+  public Properties getProperties() {
+    return props;
+  }
+
+  /**
+   * Reports this worker ready, waits until the coordinator starts all workers and starts
+   * streaming the histograms.
+   *
+   * @param clients the client threads of this worker, whose operations are counted
+   */
+  public void awaitStart(Collection<ClientThread> clients) throws IOException {
+    this.clients = clients;
+    measurements = Measurements.getMeasurements();
+    measurements.recordSteps();
+    out.writeByte(Coordinator.READY);
+    out.flush();
+    if (in.readByte() != Coordinator.START) {
+      throw new IOException("The coordinator did not start the workers");
+    }
+    start();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        TimeUnit.MILLISECONDS.sleep(intervalMs);
+        send(Coordinator.INTERVAL, -1);
+      }
+    } catch (InterruptedException e) {
+      // finish() sends the rest.
+    } catch (IOException e) {
+      System.err.println("Lost the coordinator: " + e);
+    }
+  }
+
+  /**
+   * Stops streaming and sends the last histograms, the operations done and the run time.
+   */
+  public void finish(long opsDone, long runtimeMs) {
+    interrupt();
+    try {
+      join();
+      send(Coordinator.DONE, runtimeMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      System.err.println("Could not report to the coordinator: " + e);
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // ignored
+      }
+    }
+  }
+
+  private synchronized void send(byte type, long runtimeMs) throws IOException {
+    Map<String, Histogram> histograms = measurements.takeStepHistograms();
+    out.writeByte(type);
+    out.writeLong(opsDone());
+    if (type == Coordinator.DONE) {
+      out.writeLong(runtimeMs);
+    }
+    Coordinator.writeHistograms(out, histograms);
+    out.flush();
+  }
+
+  private long opsDone() {
+    long done = 0;
+    for (ClientThread client : clients) {
+      done += client.getOpsDone();
+    }
+    return done;
+  }
+}
@@ -17,6 +17,7 @@
 
 package site.ycsb;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.Properties;
 
@@ -91,6 +92,29 @@ public abstract class Workload {
     return null;
   }
 
+  /**
+   * Prepare the database for the load phase, e.g. create the tables. Called once,
+   * in the main client thread, before the load threads are started, on a DB
+   * instance of its own.
+   */
+  public void prepareLoad(DB db) throws WorkloadException {
+  }
+
+  /**
+   * Finish the load phase, e.g. build the indexes that were deferred until the data
+   * is in. Called once, in the main client thread, after the load threads have
+   * completed and before the measurements are exported.
+   */
+  public void finishLoad(DB db) throws WorkloadException {
+  }
+
+  /**
+   * Finish the transaction phase. Called once, in the main client thread, after the
+   * transaction threads have completed and before the measurements are exported.
+   */
+  public void finishRun(DB db) throws WorkloadException {
+  }
+
   /**
    * Cleanup the scenario. Called once, in the main client thread, after all
    * operations have completed.
@@ -131,6 +155,17 @@ public abstract class Workload {
    */
   public abstract boolean doTransaction(DB db, Object threadstate);
 
+  /**
+   * Do one transaction operation through the asynchronous DB API, so that a client
+   * thread can keep several of them in flight. Called on the client thread, which does
+   * not wait for the returned future before the next call. The future completes with
+   * the same value doTransaction() returns once the operation is done. The default runs
+   * doTransaction() and returns it completed.
+   */
+  public CompletableFuture<Boolean> doTransactionAsync(DB db, Object threadstate) {
+    return CompletableFuture.completedFuture(doTransaction(db, threadstate));
+  }
+
   /**
    * Allows scheduling a request to stop the workload.
    */
@@ -138,6 +173,13 @@ public abstract class Workload {
     stopRequested.set(true);
   }
 
+  /**
+   * Clears a stop request, before the workload runs another phase.
+   */
+  void clearStopRequest() {
+    stopRequested.set(false);
+  }
+
   /**
    * Check the status of the stop request flag.
    * 
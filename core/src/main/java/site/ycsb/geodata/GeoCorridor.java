@@ -0,0 +1,98 @@
+package site.ycsb.geodata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Geometry helpers for corridor queries, i.e. the points within a distance of a polyline.
+ * Distances are in km and computed on a local equirectangular projection, which is
+ * accurate enough for the few km wide corridors the workload generates.
+ */
+public final class GeoCorridor {
+
+    public static final double KM_PER_DEGREE = 111.32;
+
+    private GeoCorridor() {
+    }
+
+    /**
+     * Returns the closed ring of the rectangle covering every point within bufferKm of
+     * the segment from a to b. The rectangles of consecutive segments overlap at the
+     * shared vertex, so their union covers the whole corridor.
+     */
+    public static ArrayList<GeoPoint> segmentRectangle(GeoPoint a, GeoPoint b, double bufferKm) {
+        double kx = kmPerDegreeLongitude((a.getLatitude() + b.getLatitude()) / 2);
+
+        double dx = (b.getLongitude() - a.getLongitude()) * kx;
+        double dy = (b.getLatitude() - a.getLatitude()) * KM_PER_DEGREE;
+        double length = Math.sqrt(dx * dx + dy * dy);
+
+        double ux = 1;
+        double uy = 0;
+        if (length > 0) {
+            ux = dx / length;
+            uy = dy / length;
+        }
+
+        // Direction along the segment and normal to it, scaled to the buffer, in degrees.
+        double alongLon = ux * bufferKm / kx;
+        double alongLat = uy * bufferKm / KM_PER_DEGREE;
+        double normalLon = -uy * bufferKm / kx;
+        double normalLat = ux * bufferKm / KM_PER_DEGREE;
+
+        GeoPoint first = vertex(a.getLatitude() - alongLat + normalLat, a.getLongitude() - alongLon + normalLon);
+        GeoPoint second = vertex(b.getLatitude() + alongLat + normalLat, b.getLongitude() + alongLon + normalLon);
+        GeoPoint third = vertex(b.getLatitude() + alongLat - normalLat, b.getLongitude() + alongLon - normalLon);
+        GeoPoint fourth = vertex(a.getLatitude() - alongLat - normalLat, a.getLongitude() - alongLon - normalLon);
+
+        return new ArrayList<>(Arrays.asList(first, second, third, fourth, first));
+    }
+
+    /**
+     * Returns the distance in km from the given coordinate to the segment from a to b.
+     */
+    public static double distanceToSegmentKm(double lat, double lgn, GeoPoint a, GeoPoint b) {
+        double kx = kmPerDegreeLongitude((a.getLatitude() + b.getLatitude()) / 2);
+
+        double bx = (b.getLongitude() - a.getLongitude()) * kx;
+        double by = (b.getLatitude() - a.getLatitude()) * KM_PER_DEGREE;
+        double px = (lgn - a.getLongitude()) * kx;
+        double py = (lat - a.getLatitude()) * KM_PER_DEGREE;
+
+        double lengthSquared = bx * bx + by * by;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = Math.max(0, Math.min(1, (px * bx + py * by) / lengthSquared));
+        }
+
+        double ex = px - t * bx;
+        double ey = py - t * by;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    /**
+     * Returns the distance in km from the given coordinate to the polyline.
+     */
+    public static double distanceToPolylineKm(double lat, double lgn, ArrayList<GeoPoint> polyline) {
+        if (polyline.size() == 1) {
+            return distanceToSegmentKm(lat, lgn, polyline.get(0), polyline.get(0));
+        }
+        double min = Double.MAX_VALUE;
+        for (int i = 0; i < polyline.size() - 1; i++) {
+            min = Math.min(min, distanceToSegmentKm(lat, lgn, polyline.get(i), polyline.get(i + 1)));
+        }
+        return min;
+    }
+
+    /**
+     * Returns the length in km of one degree of longitude at the given latitude.
+     */
+    public static double kmPerDegreeLongitude(double lat) {
+        return KM_PER_DEGREE * Math.max(Math.cos(Math.toRadians(lat)), 1e-6);
+    }
+
+    private static GeoPoint vertex(double lat, double lgn) {
+        return new GeoPoint("", lat, lgn, new Date());
+    }
+}
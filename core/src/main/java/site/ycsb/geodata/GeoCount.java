@@ -0,0 +1,17 @@
+package site.ycsb.geodata;
+
+/**
+ * The result of a count query, the number of points matching it.
+ */
+public class GeoCount {
+
+    private long count;
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
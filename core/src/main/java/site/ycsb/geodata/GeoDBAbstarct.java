@@ -1,19 +1,161 @@
 package site.ycsb.geodata;
 
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import site.ycsb.Status;
 
 public abstract class GeoDBAbstarct {
 
+        /**
+         * The ms an operation may take before the binding cancels it and it counts as
+         * Status.TIMEOUT, 0 for no limit.
+         */
+        public static final String OP_TIMEOUT_PROPERTY = "geo.optimeout.ms";
+        public static final String OP_TIMEOUT_PROPERTY_DEFAULT = "0";
+
+        /*
+         * The load lifecycle: reset runs once before the load and leaves the table without its
+         * spatial index, createSpatialIndex builds the index before or after the load depending
+         * on geo.indexmode, and finishLoad runs once after the load.
+         */
+
         public abstract Status reset(String table);
 
+        /**
+         * Builds the spatial index of the table. Bindings without a separate index build keep
+         * this default.
+         */
+        public Status createSpatialIndex(String table) {
+                return Status.NOT_IMPLEMENTED;
+        }
+
+        /**
+         * Called once after the load and the index build, e.g. to refresh the planner
+         * statistics. Bindings with nothing to do keep this default.
+         */
+        public Status finishLoad(String table) {
+                return Status.OK;
+        }
+
         public abstract Status insert(String table, String key, GeoPoint values);
 
-        public abstract Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> result);
+        public abstract Status readPoint(String table, String key, GeoPoint result);
 
-        public abstract Status scanByDistance(String table, double lat, double lgn, double maxDistance,
+        /*
+         * The scans take the payload fields to return, like DB.scan: null returns all of
+         * them, an empty set only the id, coordinates and time of the points.
+         */
+
+        public abstract Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
                         ArrayList<GeoPoint> result);
 
+        public abstract Status scanByDistance(String table, double lat, double lgn, double maxDistance,
+                        Set<String> fields, ArrayList<GeoPoint> result);
+
+        /**
+         * Returns one page of at most pageSize points of scanByDistance, nearest first. The
+         * first call passes a null continuation, the following ones the continuation of the
+         * previous page.
+         */
+        public abstract Status scanByDistancePage(String table, double lat, double lgn, double maxDistance,
+                        int pageSize, String continuation, Set<String> fields, GeoPage page);
+
         public abstract Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices,
-                        ArrayList<GeoPoint> result);
+                        Set<String> fields, ArrayList<GeoPoint> result);
+
+        public abstract Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm,
+                        Set<String> fields, ArrayList<GeoPoint> result);
+
+        /*
+         * The count queries return only the number of points the matching scan would return.
+         */
+
+        public abstract Status countByDistance(String table, double lat, double lgn, double maxDistance,
+                        GeoCount result);
+
+        public abstract Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result);
+
+        /*
+         * The asynchronous variants let a client thread keep several operations in flight. The
+         * future completes once the store answered and the result is filled in. Bindings
+         * without an asynchronous client keep these defaults, which run the synchronous
+         * operation and return it completed.
+         */
+
+        public CompletableFuture<Status> insertAsync(String table, String key, GeoPoint values) {
+                return CompletableFuture.completedFuture(insert(table, key, values));
+        }
+
+        public CompletableFuture<Status> readPointAsync(String table, String key, GeoPoint result) {
+                return CompletableFuture.completedFuture(readPoint(table, key, result));
+        }
+
+        public CompletableFuture<Status> scanKNNAsync(String table, double lat, double lgn, int k,
+                        Set<String> fields, ArrayList<GeoPoint> result) {
+                return CompletableFuture.completedFuture(scanKNN(table, lat, lgn, k, fields, result));
+        }
+
+        public CompletableFuture<Status> scanByDistanceAsync(String table, double lat, double lgn,
+                        double maxDistance, Set<String> fields, ArrayList<GeoPoint> result) {
+                return CompletableFuture.completedFuture(scanByDistance(table, lat, lgn, maxDistance, fields, result));
+        }
+
+        public CompletableFuture<Status> scanByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+                        Set<String> fields, ArrayList<GeoPoint> result) {
+                return CompletableFuture.completedFuture(scanByPolygon(table, polygonVertices, fields, result));
+        }
+
+        public CompletableFuture<Status> scanByCorridorAsync(String table, ArrayList<GeoPoint> polyline,
+                        double bufferKm, Set<String> fields, ArrayList<GeoPoint> result) {
+                return CompletableFuture.completedFuture(scanByCorridor(table, polyline, bufferKm, fields, result));
+        }
+
+        public CompletableFuture<Status> countByDistanceAsync(String table, double lat, double lgn,
+                        double maxDistance, GeoCount result) {
+                return CompletableFuture.completedFuture(countByDistance(table, lat, lgn, maxDistance, result));
+        }
+
+        public CompletableFuture<Status> countByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+                        GeoCount result) {
+                return CompletableFuture.completedFuture(countByPolygon(table, polygonVertices, result));
+        }
+
+        /**
+         * Fills in the storage footprint of the table from the size statistics of the store.
+         * Bindings without such statistics keep this default.
+         */
+        public Status footprint(String table, GeoFootprint result) {
+                return Status.NOT_IMPLEMENTED;
+        }
+
+        /**
+         * Samples the server side statistics of the store, e.g. its cache and checkpoint
+         * activity. Called by the status thread every interval.
+         */
+        public Status serverStats(GeoServerStats result) {
+                return Status.NOT_IMPLEMENTED;
+        }
+
+        /**
+         * Appends the query plan of the last operation of this instance, which it executes
+         * again with the profiling of the store. Called on the same thread right after an
+         * operation the slow operation log caught.
+         */
+        public Status explainLast(StringBuilder plan) {
+                return Status.NOT_IMPLEMENTED;
+        }
+
+        /**
+         * Registers a standing query: the listener is notified of every point inserted
+         * into the region from now on. Bindings without a change feed keep this default.
+         */
+        public Status subscribe(String table, String subscriptionId, ArrayList<GeoPoint> region,
+                        GeoFenceListener listener) {
+                return Status.NOT_IMPLEMENTED;
+        }
+
+        public Status unsubscribe(String table, String subscriptionId) {
+                return Status.NOT_IMPLEMENTED;
+        }
 }
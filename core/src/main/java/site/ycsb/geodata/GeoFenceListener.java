@@ -0,0 +1,16 @@
+package site.ycsb.geodata;
+
+/**
+ * Receives the notifications of a geofence subscription.
+ */
+public interface GeoFenceListener {
+
+    /**
+     * Called by the binding when an inserted point lies inside the region of a subscription.
+     * Implementations must be thread safe, bindings call it from their own threads.
+     *
+     * @param subscriptionId The id the region was subscribed with.
+     * @param key The key of the inserted point.
+     */
+    void onEnter(String subscriptionId, String key);
+}
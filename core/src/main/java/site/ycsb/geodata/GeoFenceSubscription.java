@@ -0,0 +1,73 @@
+package site.ycsb.geodata;
+
+/**
+ * A background thread delivering the notifications of one geofence subscription.
+ * Bindings implement {@link #poll()} with their own change feed and stop it in
+ * {@link #onClose()}.
+ */
+public abstract class GeoFenceSubscription extends Thread {
+
+    /** The ms to wait after a failed poll, so a broken feed is not polled in a tight loop. */
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private volatile boolean running = true;
+
+    protected GeoFenceSubscription(String name) {
+        super(name);
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                poll();
+            } catch (Exception e) {
+                if (running) {
+                    System.err.println("Error in geofence subscription " + getName() + ": " + e);
+                    try {
+                        Thread.sleep(RETRY_DELAY_MS);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next notifications and hands them to the listener. Called in a loop
+     * until the subscription is closed, so it may return without a notification. After
+     * an exception it is called again after a second.
+     */
+    protected abstract void poll() throws Exception;
+
+    /**
+     * Unblocks a pending {@link #poll()} and releases the resources of the subscription.
+     */
+    protected void onClose() throws Exception {
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops the subscription and waits for its thread to finish.
+     */
+    public void close() {
+        running = false;
+        try {
+            onClose();
+        } catch (Exception e) {
+            System.err.println("Error closing geofence subscription " + getName() + ": " + e);
+        }
+        // Ends the wait after a failed poll.
+        interrupt();
+        try {
+            join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package site.ycsb.geodata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.htrace.core.HTraceConfiguration;
+import org.apache.htrace.core.Tracer;
+
+import site.ycsb.Client;
+import site.ycsb.DB;
+import site.ycsb.DBException;
+import site.ycsb.DBFactory;
+import site.ycsb.Status;
+import site.ycsb.UnknownDBException;
+import site.ycsb.WorkloadException;
+
+/**
+ * A continuous-query workload. Subscribers register square regions as standing queries
+ * and the transactions insert points, part of them inside the regions. For every insert
+ * that falls inside a region the time from the insert acknowledgement until the
+ * subscriber is notified is recorded as the NOTIFY measurement; notifications that never
+ * arrive are reported as NOTIFY NOT_FOUND.
+ *
+ * With geofence.mode=db the regions are subscribed on the binding (change streams,
+ * LISTEN/NOTIFY, keyspace notifications). With geofence.mode=inprocess the workload
+ * notifies itself right after the acknowledgement, which is the client side baseline.
+ *
+ * The load phase is the one of {@link GeoPointWorkload}.
+ */
+public class GeoFenceWorkload extends GeoPointWorkload {
+
+    /** Where the standing queries are evaluated, "db" or "inprocess". */
+    public static final String MODE_PROPERTY = "geofence.mode";
+    public static final String MODE_PROPERTY_DEFAULT = "db";
+
+    /** The number of subscribed regions. */
+    public static final String SUBSCRIPTIONS_PROPERTY = "geofence.subscriptions";
+    public static final String SUBSCRIPTIONS_PROPERTY_DEFAULT = "10";
+
+    /** The width in km of the square regions. */
+    public static final String REGION_SIZE_PROPERTY = "geofence.regionsize";
+    public static final String REGION_SIZE_PROPERTY_DEFAULT = "10";
+
+    /** The proportion of inserts placed inside a region. */
+    public static final String HIT_PROPORTION_PROPERTY = "geofence.hitproportion";
+    public static final String HIT_PROPORTION_PROPERTY_DEFAULT = "0.5";
+
+    /** How long in ms to wait for outstanding notifications at the end of the run. */
+    public static final String DRAIN_TIME_PROPERTY = "geofence.draintime";
+    public static final String DRAIN_TIME_PROPERTY_DEFAULT = "1000";
+
+    private static final class Region {
+        private final String id;
+        private final String table;
+        private final double south;
+        private final double north;
+        private final double west;
+        private final double east;
+
+        private Region(String id, String table, double south, double north, double west, double east) {
+            this.id = id;
+            this.table = table;
+            this.south = south;
+            this.north = north;
+            this.west = west;
+            this.east = east;
+        }
+
+        private boolean contains(String pointTable, double lat, double lgn) {
+            return table.equals(pointTable) && lat >= south && lat <= north && lgn >= west && lgn <= east;
+        }
+
+        private ArrayList<GeoPoint> ring() {
+            GeoPoint first = new GeoPoint("", south, west, new Date());
+            return new ArrayList<>(Arrays.asList(first, new GeoPoint("", north, west, new Date()),
+                    new GeoPoint("", north, east, new Date()), new GeoPoint("", south, east, new Date()), first));
+        }
+    }
+
+    protected boolean inprocess;
+    protected double hitproportion;
+    protected long draintime;
+
+    private final List<Region> regions = new ArrayList<>();
+    private final AtomicLong insertsequence = new AtomicLong();
+    private String keyprefix;
+
+    /**
+     * The acknowledgement and notification times of every expected notification, keyed by
+     * subscription and point. Whichever arrives second completes the measurement.
+     */
+    private final Map<String, long[]> pending = new ConcurrentHashMap<>();
+    private final GeoFenceListener listener = this::notified;
+
+    private DB subscriber;
+
+    @Override
+    public void init(Properties p) throws WorkloadException {
+        super.init(p);
+
+        String mode = p.getProperty(MODE_PROPERTY, MODE_PROPERTY_DEFAULT);
+        if (!"db".equals(mode) && !"inprocess".equals(mode)) {
+            throw new WorkloadException("Unknown " + MODE_PROPERTY + " \"" + mode + "\"");
+        }
+        inprocess = "inprocess".equals(mode);
+
+        int subscriptions = Integer.parseInt(p.getProperty(SUBSCRIPTIONS_PROPERTY, SUBSCRIPTIONS_PROPERTY_DEFAULT));
+        double regionsize = Double.parseDouble(p.getProperty(REGION_SIZE_PROPERTY, REGION_SIZE_PROPERTY_DEFAULT));
+        hitproportion = Double.parseDouble(p.getProperty(HIT_PROPORTION_PROPERTY, HIT_PROPORTION_PROPERTY_DEFAULT));
+        draintime = Long.parseLong(p.getProperty(DRAIN_TIME_PROPERTY, DRAIN_TIME_PROPERTY_DEFAULT));
+
+        // Keys must not collide with the points inserted by earlier runs.
+        keyprefix = "fence" + System.currentTimeMillis() + "-";
+
+        for (int i = 0; i < subscriptions; i++) {
+            long keynum = nextKeynum();
+            GeoPoint center = geopoints.get((int) keynum);
+            double halfLat = regionsize / 2 / GeoCorridor.KM_PER_DEGREE;
+            double halfLon = regionsize / 2 / GeoCorridor.kmPerDegreeLongitude(center.getLatitude());
+            regions.add(new Region("fence" + i, tableFor(keynum),
+                    center.getLatitude() - halfLat, center.getLatitude() + halfLat,
+                    center.getLongitude() - halfLon, center.getLongitude() + halfLon));
+        }
+
+        boolean dotransactions = Boolean.valueOf(p.getProperty(Client.DO_TRANSACTIONS_PROPERTY, "true"));
+        if (dotransactions && !inprocess) {
+            subscribe(p);
+        }
+    }
+
+    /**
+     * Subscribes all regions on a DB instance of its own, which lives until {@link #cleanup()}.
+     */
+    private void subscribe(Properties p) throws WorkloadException {
+        Tracer tracer = new Tracer.Builder("YCSB " + getClass().getSimpleName())
+                .conf(HTraceConfiguration.EMPTY)
+                .build();
+        String dbname = p.getProperty(Client.DB_PROPERTY, "site.ycsb.BasicDB");
+        try {
+            subscriber = DBFactory.newDB(dbname, p, tracer);
+            if (subscriber == null) {
+                throw new WorkloadException("Unknown DB " + dbname);
+            }
+            subscriber.init();
+        } catch (UnknownDBException | DBException e) {
+            throw new WorkloadException(e);
+        }
+
+        for (Region region : regions) {
+            Status status = subscriber.subscribe(region.table, region.id, region.ring(), listener);
+            if (status == null || !status.isOk()) {
+                throw new WorkloadException("Could not subscribe region " + region.id + " on " + dbname + ": "
+                        + status + ". Use " + MODE_PROPERTY + "=inprocess for bindings without a change feed.");
+            }
+        }
+    }
+
+    @Override
+    public boolean doTransaction(DB db, Object threadstate) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        String pointTable;
+        double lat;
+        double lgn;
+        if (!regions.isEmpty() && random.nextDouble() < hitproportion) {
+            Region region = regions.get(random.nextInt(regions.size()));
+            pointTable = region.table;
+            lat = region.south + random.nextDouble() * (region.north - region.south);
+            lgn = region.west + random.nextDouble() * (region.east - region.west);
+        } else {
+            long keynum = nextKeynum(partitionOf(threadstate));
+            GeoPoint gp = geopoints.get((int) keynum);
+            pointTable = tableFor(keynum);
+            lat = gp.getLatitude();
+            lgn = gp.getLongitude();
+        }
+
+        String key = keyprefix + insertsequence.getAndIncrement();
+        Status status = db.insert(pointTable, key, withFields(new GeoPoint(key, lat, lgn, new Date())));
+        if (status == null || !status.isOk()) {
+            return true;
+        }
+        long acknowledged = System.nanoTime();
+
+        for (Region region : regions) {
+            if (region.contains(pointTable, lat, lgn)) {
+                record(region.id + "/" + key, 0, acknowledged);
+                if (inprocess) {
+                    listener.onEnter(region.id, key);
+                }
+            }
+        }
+
+        probeFreshness(db, pointTable, new GeoPoint(key, lat, lgn, null));
+        return true;
+    }
+
+    /**
+     * The notification latency is measured from the acknowledgement on the client thread,
+     * so the inserts stay synchronous.
+     */
+    @Override
+    public CompletableFuture<Boolean> doTransactionAsync(DB db, Object threadstate) {
+        return CompletableFuture.completedFuture(doTransaction(db, threadstate));
+    }
+
+    private void notified(String subscriptionId, String key) {
+        record(subscriptionId + "/" + key, 1, System.nanoTime());
+    }
+
+    private void record(String id, int event, long nanos) {
+        pending.compute(id, (k, times) -> {
+            if (times == null) {
+                times = new long[] {Long.MIN_VALUE, Long.MIN_VALUE};
+            }
+            times[event] = nanos;
+            if (times[0] == Long.MIN_VALUE || times[1] == Long.MIN_VALUE) {
+                return times;
+            }
+            // A notification racing ahead of the acknowledgement counts as immediate.
+            long latency = Math.max(0, times[1] - times[0]);
+            measurements.measure("NOTIFY", (int) (latency / 1000));
+            measurements.reportStatus("NOTIFY", Status.OK);
+            return null;
+        });
+    }
+
+    @Override
+    public void cleanup() throws WorkloadException {
+        if (subscriber != null) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(draintime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Region region : regions) {
+                subscriber.unsubscribe(region.table, region.id);
+            }
+            try {
+                subscriber.cleanup();
+            } catch (DBException e) {
+                throw new WorkloadException(e);
+            }
+        }
+
+        for (long[] times : pending.values()) {
+            if (times[1] == Long.MIN_VALUE) {
+                measurements.reportStatus("NOTIFY", Status.NOT_FOUND);
+            } else {
+                measurements.reportStatus("NOTIFY", Status.UNEXPECTED_STATE);
+            }
+        }
+        pending.clear();
+        super.cleanup();
+    }
+}
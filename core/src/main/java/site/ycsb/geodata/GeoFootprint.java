@@ -0,0 +1,46 @@
+package site.ycsb.geodata;
+
+/**
+ * The storage footprint of a table as the store reports it: the number of points and
+ * the bytes taken by the data and by the indexes.
+ */
+public class GeoFootprint {
+
+    private long points;
+    private long dataSize;
+    private long indexSize;
+
+    public long getPoints() {
+        return points;
+    }
+
+    public void setPoints(long points) {
+        this.points = points;
+    }
+
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    public void setDataSize(long dataSize) {
+        this.dataSize = dataSize;
+    }
+
+    public long getIndexSize() {
+        return indexSize;
+    }
+
+    public void setIndexSize(long indexSize) {
+        this.indexSize = indexSize;
+    }
+
+    /**
+     * Returns the data and index bytes per point, 0 for an empty table.
+     */
+    public double getBytesPerPoint() {
+        if (points == 0) {
+            return 0;
+        }
+        return (double) (dataSize + indexSize) / points;
+    }
+}
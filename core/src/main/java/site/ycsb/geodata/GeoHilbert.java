@@ -0,0 +1,57 @@
+package site.ycsb.geodata;
+
+/**
+ * Hilbert curve ordering of coordinates. Points close on the curve are close in space,
+ * so contiguous ranges of the curve are compact regions.
+ */
+public final class GeoHilbert {
+
+    /** The curve covers a 2^ORDER x 2^ORDER grid. */
+    public static final int ORDER = 16;
+
+    private GeoHilbert() {
+    }
+
+    /**
+     * Returns the position on the curve of the grid cell (x, y), both in [0, 2^ORDER).
+     */
+    public static long index(long x, long y) {
+        long n = 1L << ORDER;
+        long d = 0;
+        for (long s = n / 2; s > 0; s >>= 1) {
+            long rx = (x & s) > 0 ? 1 : 0;
+            long ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant so the curve stays continuous.
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Returns the position on the curve of a coordinate, with the grid spread over the
+     * given bounding box.
+     */
+    public static long index(double lat, double lgn, double south, double north, double west, double east) {
+        long cells = (1L << ORDER) - 1;
+        long x = Math.round(cells * normalize(lgn, west, east));
+        long y = Math.round(cells * normalize(lat, south, north));
+        return index(x, y);
+    }
+
+    private static double normalize(double value, double min, double max) {
+        if (max <= min) {
+            return 0;
+        }
+        return Math.max(0, Math.min(1, (value - min) / (max - min)));
+    }
+}
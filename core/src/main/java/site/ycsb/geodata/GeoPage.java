@@ -0,0 +1,30 @@
+package site.ycsb.geodata;
+
+import java.util.ArrayList;
+
+/**
+ * One page of a paginated scan: the points of the page and the continuation token to
+ * pass to the next call, null once the scan is exhausted. The token is opaque, each
+ * binding encodes its own cursor position in it.
+ */
+public class GeoPage {
+
+    private final ArrayList<GeoPoint> points = new ArrayList<>();
+    private String continuation;
+
+    public ArrayList<GeoPoint> getPoints() {
+        return points;
+    }
+
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public void setContinuation(String continuation) {
+        this.continuation = continuation;
+    }
+
+    public boolean isLast() {
+        return continuation == null;
+    }
+}
@@ -0,0 +1,52 @@
+package site.ycsb.geodata;
+
+import java.util.Set;
+
+import site.ycsb.ByteIterator;
+import site.ycsb.NumericByteIterator;
+import site.ycsb.StringByteIterator;
+
+/**
+ * Conversions between the payload attributes of a {@link GeoPoint} and the values the
+ * bindings store. Numeric attributes are stored as numbers, all others as strings.
+ */
+public final class GeoPayload {
+
+    private GeoPayload() {
+    }
+
+    /**
+     * Returns the value to store for an attribute, a Double, a Long or a String.
+     * Consumes the iterator unless it is numeric.
+     */
+    public static Object toValue(ByteIterator value) {
+        if (value instanceof NumericByteIterator) {
+            NumericByteIterator numeric = (NumericByteIterator) value;
+            if (numeric.isFloatingPoint()) {
+                return numeric.getDouble();
+            }
+            return numeric.getLong();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Returns the attribute for a stored value.
+     */
+    public static ByteIterator fromValue(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            return new NumericByteIterator(((Number) value).doubleValue());
+        }
+        if (value instanceof Number) {
+            return new NumericByteIterator(((Number) value).longValue());
+        }
+        return new StringByteIterator(String.valueOf(value));
+    }
+
+    /**
+     * Whether a scan with the given projection returns the named attribute.
+     */
+    public static boolean isProjected(Set<String> fields, String name) {
+        return fields == null || fields.contains(name);
+    }
+}
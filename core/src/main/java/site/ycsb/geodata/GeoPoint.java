@@ -1,5 +1,9 @@
 package site.ycsb.geodata;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import site.ycsb.ByteIterator;
 
 public class GeoPoint{
 
@@ -19,6 +23,7 @@ public class GeoPoint{
     private double latitude;
     private double longitude;
     private Date timeOfReacord;
+    private Map<String, ByteIterator> fields = new HashMap<>();
 
     public String getId() {
         return id;
@@ -52,4 +57,15 @@ public class GeoPoint{
         this.longitude = longitude;
     }
 
+    /**
+     * The payload attributes of the point, empty unless the workload generates them.
+     */
+    public Map<String, ByteIterator> getFields() {
+        return fields;
+    }
+
+    public void setFields(Map<String, ByteIterator> fields) {
+        this.fields = fields;
+    }
+
 }
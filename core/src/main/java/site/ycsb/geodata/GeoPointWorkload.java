@@ -2,33 +2,60 @@ package site.ycsb.geodata;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+import site.ycsb.ByteIterator;
 import site.ycsb.Client;
 import site.ycsb.DB;
+import site.ycsb.DBWrapper;
+import site.ycsb.NumericByteIterator;
+import site.ycsb.RandomByteIterator;
 import site.ycsb.Status;
+import site.ycsb.Utils;
 import site.ycsb.Workload;
 import site.ycsb.WorkloadException;
 import site.ycsb.generator.AcknowledgedCounterGenerator;
+import site.ycsb.generator.ConstantIntegerGenerator;
 import site.ycsb.generator.CounterGenerator;
 import site.ycsb.generator.DiscreteGenerator;
 import site.ycsb.generator.ExponentialGenerator;
 import site.ycsb.generator.NumberGenerator;
 import site.ycsb.generator.UniformLongGenerator;
+import site.ycsb.generator.ZipfianGenerator;
+import site.ycsb.measurements.Measurements;
 import site.ycsb.workloads.CoreWorkload;
 
 public class GeoPointWorkload extends Workload {
 
     public static final String TABLENAME_PROPERTY_DEFAULT = "GEOPOINTS";
 
+    public static final String READ_PROPORTION_PROPERTY = "readproportion";
     public static final String SCAN_KNN_PROPORTION_PROPERTY = "scanknnproportion";
     public static final String SCAN_BY_DISTANCE_PROPORTION_PROPERTY = "scanbydistanceproportion";
+    public static final String SCAN_BY_DISTANCE_PAGED_PROPORTION_PROPERTY = "scanbydistancepagedproportion";
     public static final String SCAN_BY_POLYGON_PROPORTION_PROPERTY = "scanbypolygonproportion";
+    public static final String SCAN_BY_CORRIDOR_PROPORTION_PROPERTY = "scanbycorridorproportion";
+    public static final String COUNT_BY_DISTANCE_PROPORTION_PROPERTY = "countbydistanceproportion";
+    public static final String COUNT_BY_POLYGON_PROPORTION_PROPERTY = "countbypolygonproportion";
 
+    public static final String READ_PROPORTION_PROPERTY_DEFAULT = "0";
     public static final String SCAN_KNN_PROPORTION_PROPERTY_DEFAULT = "0";
     public static final String SCAN_BY_DISTANCE_PROPORTION_PROPERTY_DEFAULT = "0";
+    public static final String SCAN_BY_DISTANCE_PAGED_PROPORTION_PROPERTY_DEFAULT = "0";
     public static final String SCAN_BY_POLYGON_PROPORTION_PROPERTY_DEFAULT = "0";
+    public static final String SCAN_BY_CORRIDOR_PROPORTION_PROPERTY_DEFAULT = "0";
+    public static final String COUNT_BY_DISTANCE_PROPORTION_PROPERTY_DEFAULT = "0";
+    public static final String COUNT_BY_POLYGON_PROPORTION_PROPERTY_DEFAULT = "0";
 
     public static final String MIN_SCAN_NEIGHBORS_PROPERTY = "minscanneighbors";
     public static final String MAX_SCAN_NEIGHBORS_PROPERTY = "maxscanneighbors";
@@ -48,23 +75,213 @@ public class GeoPointWorkload extends Workload {
     public static final String MIN_SCAN_POLYGON_DISTANCE_PROPERTY_DEFAULT = "1";
     public static final String MAX_SCAN_POLYGON_DISTANCE_PROPERTY_DEFAULT = "100";
 
+    /**
+     * The page size of the paginated distance scans, which fetch all pages of the scan.
+     */
+    public static final String PAGE_SIZE_PROPERTY = "geo.pagesize";
+    public static final String PAGE_SIZE_PROPERTY_DEFAULT = "10";
+
+    /**
+     * The number of vertices of a corridor polyline, taken from consecutive points of the dataset.
+     */
+    public static final String MIN_CORRIDOR_POINTS_PROPERTY = "mincorridorpoints";
+    public static final String MAX_CORRIDOR_POINTS_PROPERTY = "maxcorridorpoints";
+
+    public static final String MIN_CORRIDOR_POINTS_PROPERTY_DEFAULT = "2";
+    public static final String MAX_CORRIDOR_POINTS_PROPERTY_DEFAULT = "10";
+
+    /**
+     * The corridor buffer in km around the polyline.
+     */
+    public static final String MIN_CORRIDOR_BUFFER_PROPERTY = "mincorridorbuffer";
+    public static final String MAX_CORRIDOR_BUFFER_PROPERTY = "maxcorridorbuffer";
+
+    public static final String MIN_CORRIDOR_BUFFER_PROPERTY_DEFAULT = "1";
+    public static final String MAX_CORRIDOR_BUFFER_PROPERTY_DEFAULT = "5";
+
+    /**
+     * The number of tables (one per tenant) the points are spread over. With a
+     * single table the configured table name is used as is, otherwise the tables
+     * are named table_0 .. table_(n-1).
+     */
+    public static final String TABLE_COUNT_PROPERTY = "geo.tablecount";
+    public static final String TABLE_COUNT_PROPERTY_DEFAULT = "1";
+
+    /**
+     * The distribution of tenant sizes over the tables, "zipfian" or "uniform".
+     */
+    public static final String TABLE_DISTRIBUTION_PROPERTY = "geo.tabledistribution";
+    public static final String TABLE_DISTRIBUTION_PROPERTY_DEFAULT = "zipfian";
+
+    /**
+     * How the points are assigned to the client threads. With "none" every thread queries
+     * and inserts anywhere in the dataset. With "hilbert" the points are ordered along a
+     * Hilbert curve and each thread owns one contiguous range of it, a compact region,
+     * like an application server behind region-affine routing.
+     */
+    public static final String THREAD_PARTITIONING_PROPERTY = "geo.threadpartitioning";
+    public static final String THREAD_PARTITIONING_PROPERTY_DEFAULT = "none";
+
+    /**
+     * When the spatial index is built in the load phase: "before" the points are inserted,
+     * "after" they are all in (a bulk build), or "none" to load and query without it.
+     * The build is measured as BUILD-INDEX.
+     */
+    public static final String INDEX_MODE_PROPERTY = "geo.indexmode";
+    public static final String INDEX_MODE_PROPERTY_DEFAULT = "before";
+
+    /**
+     * The proportion of inserts followed by a freshness probe, which polls a distance scan
+     * around the new point until it shows up and records the delay as FRESHNESS. The probe
+     * scans bypass the DB wrapper, so they are not measured as SCAN-DISTANCE.
+     */
+    public static final String FRESHNESS_PROPORTION_PROPERTY = "geo.freshness.proportion";
+    public static final String FRESHNESS_PROPORTION_PROPERTY_DEFAULT = "0";
+
+    /** The pause in ms between two probe scans. */
+    public static final String FRESHNESS_INTERVAL_PROPERTY = "geo.freshness.interval";
+    public static final String FRESHNESS_INTERVAL_PROPERTY_DEFAULT = "1";
+
+    /** How long in ms to wait for the point before reporting FRESHNESS NOT_FOUND. */
+    public static final String FRESHNESS_TIMEOUT_PROPERTY = "geo.freshness.timeout";
+    public static final String FRESHNESS_TIMEOUT_PROPERTY_DEFAULT = "10000";
+
+    /** The radius in km of the probe scans. */
+    private static final double FRESHNESS_RADIUS = 0.01;
+
+    /**
+     * The number of payload attributes of every inserted point, named field0 .. field(n-1).
+     * With 0 the records only hold the id, the coordinates and the time.
+     */
+    public static final String FIELD_COUNT_PROPERTY = "geo.fieldcount";
+    public static final String FIELD_COUNT_PROPERTY_DEFAULT = "0";
+
+    /**
+     * The length of the string attributes, "constant" (fieldlength), "uniform" or "zipfian"
+     * (between minfieldlength and fieldlength).
+     */
+    public static final String FIELD_LENGTH_PROPERTY = "geo.fieldlength";
+    public static final String MIN_FIELD_LENGTH_PROPERTY = "geo.minfieldlength";
+    public static final String FIELD_LENGTH_DISTRIBUTION_PROPERTY = "geo.fieldlengthdistribution";
+
+    public static final String FIELD_LENGTH_PROPERTY_DEFAULT = "100";
+    public static final String MIN_FIELD_LENGTH_PROPERTY_DEFAULT = "1";
+    public static final String FIELD_LENGTH_DISTRIBUTION_PROPERTY_DEFAULT = "constant";
+
+    /**
+     * The proportion of the attributes that are numbers (speed, heading, ...) rather than strings.
+     */
+    public static final String NUMERIC_FIELD_PROPORTION_PROPERTY = "geo.numericfieldproportion";
+    public static final String NUMERIC_FIELD_PROPORTION_PROPERTY_DEFAULT = "0";
+
+    /**
+     * The attributes returned by the scans: "all", "none" for the coordinates only, or a
+     * comma separated list of field names.
+     */
+    public static final String SCAN_FIELDS_PROPERTY = "geo.scanfields";
+    public static final String SCAN_FIELDS_PROPERTY_DEFAULT = "all";
+
     protected String table;
+    protected String[] tables;
+    protected double[] tablecdf;
 
     protected NumberGenerator keysequence;
     protected NumberGenerator keychooser;
     protected NumberGenerator scanneighbors;
     protected NumberGenerator scandistance;
     protected NumberGenerator scanpolygondistance;
+    protected NumberGenerator corridorpoints;
+    protected NumberGenerator corridorbuffer;
 
     protected AcknowledgedCounterGenerator transactioninsertkeysequence;
     protected DiscreteGenerator operationchooser;
 
+    protected String[] fieldnames;
+    protected int numericfieldcount;
+    protected NumberGenerator fieldlengthgenerator;
+    protected Set<String> scanfields;
+
     protected long recordcount;
     protected int insertionRetryLimit;
     protected int insertionRetryInterval;
+    protected int pagesize;
+    protected double freshnessproportion;
+    protected long freshnessinterval;
+    protected long freshnesstimeout;
+
+    protected String indexmode;
+
+    protected Measurements measurements;
+
+    /** The key numbers in Hilbert order, null without thread partitioning. */
+    protected int[] hilbertorder;
+
+    /**
+     * The partition of a client thread, a range of {@link #hilbertorder} or, for a
+     * checkpointed load without partitioning, a range of the keys.
+     */
+    protected static final class ThreadPartition {
+        private final int[] keynums;
+        private final long base;
+        private final int start;
+        private final int end;
+        private final NumberGenerator chooser;
+        private int nextinsert;
+        private volatile int acknowledged;
+
+        private ThreadPartition(int[] keynums, long base, int start, int end) {
+            this.keynums = keynums;
+            this.base = base;
+            this.start = start;
+            this.end = end;
+            this.chooser = new UniformLongGenerator(start, end - 1);
+            this.nextinsert = start;
+            this.acknowledged = start;
+        }
+
+        private long keynum(int position) {
+            return keynums == null ? base + position : keynums[position];
+        }
+
+        long nextKeynum() {
+            return keynum(chooser.nextValue().intValue());
+        }
+
+        boolean hasNextInsert() {
+            return nextinsert < end;
+        }
+
+        long nextInsertKeynum() {
+            return keynum(nextinsert++);
+        }
+
+        /** Marks every insert up to the last one handed out as acknowledged. */
+        void acknowledgeInsert() {
+            acknowledged = nextinsert;
+        }
+
+        int start() {
+            return start;
+        }
+
+        int acknowledged() {
+            return acknowledged;
+        }
+
+        void resumeAt(int position) {
+            nextinsert = Math.max(start, Math.min(end, position));
+            acknowledged = nextinsert;
+        }
+    }
+
+    /** The progress of a checkpointed load, null without one. */
+    protected LoadCheckpoint checkpoint;
+    private long loadstart;
+    private long loadcount;
 
     protected ArrayList<GeoPoint> geopoints;
     protected ReadFileWithGeoPointData readerGeoPointFile;
+    private long loadedrecordcount = -1;
 
     public GeoPointWorkload() {
         this.geopoints = new ArrayList<>();
@@ -75,13 +292,25 @@ public class GeoPointWorkload extends Workload {
 
         table = p.getProperty(CoreWorkload.TABLENAME_PROPERTY, TABLENAME_PROPERTY_DEFAULT);
 
+        int tablecount = Integer.parseInt(p.getProperty(TABLE_COUNT_PROPERTY, TABLE_COUNT_PROPERTY_DEFAULT));
+        String tabledistribution = p.getProperty(TABLE_DISTRIBUTION_PROPERTY, TABLE_DISTRIBUTION_PROPERTY_DEFAULT);
+        if (tablecount < 1) {
+            throw new WorkloadException(TABLE_COUNT_PROPERTY + " must be at least 1");
+        }
+        tables = createTableNames(table, tablecount);
+        tablecdf = createTableCdf(tablecount, tabledistribution);
+
         recordcount = Long.parseLong(p.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
 
         if (recordcount == 0) {
             recordcount = Integer.MAX_VALUE;
         }
 
-        this.geopoints = readerGeoPointFile.readFile((int) recordcount);
+        // A loadrun initializes the workload again for every phase and keeps the points read.
+        if (recordcount != loadedrecordcount) {
+            this.geopoints = readerGeoPointFile.readFile((int) recordcount);
+            loadedrecordcount = recordcount;
+        }
 
         long insertstart = Long.parseLong(p.getProperty(INSERT_START_PROPERTY, INSERT_START_PROPERTY_DEFAULT));
 
@@ -103,6 +332,22 @@ public class GeoPointWorkload extends Workload {
         int maxscanpolygondistance = Integer.parseInt(
                 p.getProperty(MAX_SCAN_POLYGON_DISTANCE_PROPERTY, MAX_SCAN_POLYGON_DISTANCE_PROPERTY_DEFAULT));
 
+        int mincorridorpoints = Integer.parseInt(
+                p.getProperty(MIN_CORRIDOR_POINTS_PROPERTY, MIN_CORRIDOR_POINTS_PROPERTY_DEFAULT));
+
+        int maxcorridorpoints = Integer.parseInt(
+                p.getProperty(MAX_CORRIDOR_POINTS_PROPERTY, MAX_CORRIDOR_POINTS_PROPERTY_DEFAULT));
+
+        int mincorridorbuffer = Integer.parseInt(
+                p.getProperty(MIN_CORRIDOR_BUFFER_PROPERTY, MIN_CORRIDOR_BUFFER_PROPERTY_DEFAULT));
+
+        int maxcorridorbuffer = Integer.parseInt(
+                p.getProperty(MAX_CORRIDOR_BUFFER_PROPERTY, MAX_CORRIDOR_BUFFER_PROPERTY_DEFAULT));
+
+        if (mincorridorpoints < 2) {
+            throw new WorkloadException(MIN_CORRIDOR_POINTS_PROPERTY + " must be at least 2");
+        }
+
         long insertcount = Integer.parseInt(
                 p.getProperty(INSERT_COUNT_PROPERTY, String.valueOf(recordcount - insertstart)));
 
@@ -113,15 +358,61 @@ public class GeoPointWorkload extends Workload {
         }
 
         keysequence = new CounterGenerator(insertstart);
+        loadstart = insertstart;
+        loadcount = insertcount;
+        if (!Boolean.parseBoolean(p.getProperty(Client.DO_TRANSACTIONS_PROPERTY, String.valueOf(true)))) {
+            checkpoint = LoadCheckpoint.create(p, insertstart, insertcount);
+            if (checkpoint != null) {
+                checkpoint.start();
+            }
+        }
         operationchooser = createOperationGenerator(p);
 
         transactioninsertkeysequence = new AcknowledgedCounterGenerator(recordcount);
 
         keychooser = new UniformLongGenerator(insertstart, insertstart + insertcount - 1);
 
+        String threadpartitioning = p.getProperty(THREAD_PARTITIONING_PROPERTY, THREAD_PARTITIONING_PROPERTY_DEFAULT);
+        if ("hilbert".equals(threadpartitioning)) {
+            hilbertorder = createHilbertOrder(insertstart, (int) insertcount);
+        } else if (!"none".equals(threadpartitioning)) {
+            throw new WorkloadException("Unknown " + THREAD_PARTITIONING_PROPERTY + " \"" + threadpartitioning + "\"");
+        }
+
         scanneighbors = new UniformLongGenerator(minscanneighbors, maxscanneighbors);
         scandistance = new UniformLongGenerator(minscandistance, maxscandistance);
         scanpolygondistance = new UniformLongGenerator(minscanpolygondistance, maxscanpolygondistance);
+        corridorpoints = new UniformLongGenerator(mincorridorpoints, maxcorridorpoints);
+        corridorbuffer = new UniformLongGenerator(mincorridorbuffer, maxcorridorbuffer);
+
+        pagesize = Integer.parseInt(p.getProperty(PAGE_SIZE_PROPERTY, PAGE_SIZE_PROPERTY_DEFAULT));
+        if (pagesize < 1) {
+            throw new WorkloadException(PAGE_SIZE_PROPERTY + " must be at least 1");
+        }
+        measurements = Measurements.getMeasurements();
+
+        freshnessproportion = Double.parseDouble(
+                p.getProperty(FRESHNESS_PROPORTION_PROPERTY, FRESHNESS_PROPORTION_PROPERTY_DEFAULT));
+        freshnessinterval = Long.parseLong(
+                p.getProperty(FRESHNESS_INTERVAL_PROPERTY, FRESHNESS_INTERVAL_PROPERTY_DEFAULT));
+        freshnesstimeout = Long.parseLong(
+                p.getProperty(FRESHNESS_TIMEOUT_PROPERTY, FRESHNESS_TIMEOUT_PROPERTY_DEFAULT));
+
+        int fieldcount = Integer.parseInt(p.getProperty(FIELD_COUNT_PROPERTY, FIELD_COUNT_PROPERTY_DEFAULT));
+        fieldnames = new String[fieldcount];
+        for (int i = 0; i < fieldcount; i++) {
+            fieldnames[i] = "field" + i;
+        }
+        double numericfieldproportion = Double.parseDouble(
+                p.getProperty(NUMERIC_FIELD_PROPORTION_PROPERTY, NUMERIC_FIELD_PROPORTION_PROPERTY_DEFAULT));
+        numericfieldcount = (int) Math.round(fieldcount * numericfieldproportion);
+        fieldlengthgenerator = createFieldLengthGenerator(p);
+        scanfields = createScanFields(p.getProperty(SCAN_FIELDS_PROPERTY, SCAN_FIELDS_PROPERTY_DEFAULT));
+
+        indexmode = p.getProperty(INDEX_MODE_PROPERTY, INDEX_MODE_PROPERTY_DEFAULT);
+        if (!"before".equals(indexmode) && !"after".equals(indexmode) && !"none".equals(indexmode)) {
+            throw new WorkloadException("Unknown " + INDEX_MODE_PROPERTY + " \"" + indexmode + "\"");
+        }
 
         insertionRetryLimit = Integer.parseInt(p.getProperty(CoreWorkload.INSERTION_RETRY_LIMIT,
                 CoreWorkload.INSERTION_RETRY_LIMIT_DEFAULT));
@@ -130,80 +421,322 @@ public class GeoPointWorkload extends Workload {
 
     }
 
-    private void doTransactionScanPolygon(DB db) {
-        long keynum = nextKeynum();
+    /**
+     * Assigns the thread its range of the Hilbert order, or of the keys in a checkpointed
+     * load. The ranges are sized like the per thread operation counts of the Client, so in
+     * the load phase every thread inserts exactly its own range.
+     */
+    @Override
+    public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException {
+        if (hilbertorder == null && checkpoint == null) {
+            return null;
+        }
+        int length = hilbertorder != null ? hilbertorder.length : (int) loadcount;
+        int size = length / threadcount;
+        int remainder = length % threadcount;
+        int start = mythreadid * size + Math.min(mythreadid, remainder);
+        int end = start + size + (mythreadid < remainder ? 1 : 0);
+        if (start == end) {
+            throw new WorkloadException("Thread " + mythreadid + " has no points to partition, use fewer threads.");
+        }
+        ThreadPartition partition = new ThreadPartition(hilbertorder, loadstart, start, end);
+        if (checkpoint != null) {
+            checkpoint.register(mythreadid, partition);
+        }
+        return partition;
+    }
+
+    /**
+     * Returns the partition of a thread, null when the threads are not partitioned.
+     * Subclasses with their own thread state keep the partition in it and override this.
+     */
+    protected ThreadPartition partitionOf(Object threadstate) {
+        if (threadstate instanceof ThreadPartition) {
+            return (ThreadPartition) threadstate;
+        }
+        return null;
+    }
+
+    private CompletableFuture<Status> doTransactionReadPoint(DB db, ThreadPartition partition, boolean async) {
+        long keynum = nextKeynum(partition);
+
+        GeoPoint gp = geopoints.get((int) keynum);
+        if (async) {
+            return db.readPointAsync(tableFor(keynum), gp.getId(), new GeoPoint());
+        }
+        return CompletableFuture.completedFuture(db.readPoint(tableFor(keynum), gp.getId(), new GeoPoint()));
+    }
+
+    private CompletableFuture<Status> doTransactionScanPolygon(DB db, ThreadPartition partition, boolean async) {
+        long keynum = nextKeynum(partition);
+
+        GeoPoint gp = geopoints.get((int) keynum);
+        double verticesDistance = scanpolygondistance.nextValue().intValue();
+
+        ArrayList<GeoPoint> gps = generateSquare(gp, verticesDistance);
+        if (async) {
+            return db.scanByPolygonAsync(tableFor(keynum), gps, scanfields, new ArrayList<GeoPoint>());
+        }
+        return CompletableFuture.completedFuture(
+                db.scanByPolygon(tableFor(keynum), gps, scanfields, new ArrayList<GeoPoint>()));
+    }
+
+    private CompletableFuture<Status> doTransactionCountPolygon(DB db, ThreadPartition partition, boolean async) {
+        long keynum = nextKeynum(partition);
 
         GeoPoint gp = geopoints.get((int) keynum);
         double verticesDistance = scanpolygondistance.nextValue().intValue();
 
         ArrayList<GeoPoint> gps = generateSquare(gp, verticesDistance);
-        db.scanByPolygon(table, gps, new ArrayList<GeoPoint>());
+        if (async) {
+            return db.countByPolygonAsync(tableFor(keynum), gps, new GeoCount());
+        }
+        return CompletableFuture.completedFuture(db.countByPolygon(tableFor(keynum), gps, new GeoCount()));
+    }
+
+    private CompletableFuture<Status> doTransactionScanCorridor(DB db, ThreadPartition partition, boolean async) {
+        long keynum = nextKeynum(partition);
+
+        ArrayList<GeoPoint> polyline = generatePolyline(keynum, corridorpoints.nextValue().intValue());
+        double bufferKm = corridorbuffer.nextValue().intValue();
 
+        if (async) {
+            return db.scanByCorridorAsync(tableFor(keynum), polyline, bufferKm, scanfields, new ArrayList<>());
+        }
+        return CompletableFuture.completedFuture(
+                db.scanByCorridor(tableFor(keynum), polyline, bufferKm, scanfields, new ArrayList<>()));
     }
 
-    private void doTransactionScanDistance(DB db) {
-        long keynum = nextKeynum();
+    private CompletableFuture<Status> doTransactionScanDistance(DB db, ThreadPartition partition, boolean async) {
+        long keynum = nextKeynum(partition);
 
         GeoPoint gp = geopoints.get((int) keynum);
         double distance = scandistance.nextValue().intValue();
 
-        db.scanByDistance(table, gp.getLatitude(), gp.getLongitude(), distance, new ArrayList<>());
+        if (async) {
+            return db.scanByDistanceAsync(tableFor(keynum), gp.getLatitude(), gp.getLongitude(), distance,
+                    scanfields, new ArrayList<>());
+        }
+        return CompletableFuture.completedFuture(db.scanByDistance(tableFor(keynum), gp.getLatitude(),
+                gp.getLongitude(), distance, scanfields, new ArrayList<>()));
     }
 
-    private void doTransactionScanKNN(DB db) {
-        long keynum = nextKeynum();
+    private CompletableFuture<Status> doTransactionCountDistance(DB db, ThreadPartition partition, boolean async) {
+        long keynum = nextKeynum(partition);
+
+        GeoPoint gp = geopoints.get((int) keynum);
+        double distance = scandistance.nextValue().intValue();
+
+        if (async) {
+            return db.countByDistanceAsync(tableFor(keynum), gp.getLatitude(), gp.getLongitude(), distance,
+                    new GeoCount());
+        }
+        return CompletableFuture.completedFuture(db.countByDistance(tableFor(keynum), gp.getLatitude(),
+                gp.getLongitude(), distance, new GeoCount()));
+    }
+
+    /**
+     * Fetches all pages of a distance scan. Besides the per page latency measured by the
+     * DB wrapper, records the time until the first page and until the last page arrived.
+     * Each page needs the continuation of the previous one, so the pages are always
+     * fetched synchronously.
+     */
+    private Status doTransactionScanDistancePaged(DB db, ThreadPartition partition) {
+        long keynum = nextKeynum(partition);
+
+        GeoPoint gp = geopoints.get((int) keynum);
+        double distance = scandistance.nextValue().intValue();
+        String pageTable = tableFor(keynum);
+
+        long st = System.nanoTime();
+        String continuation = null;
+        boolean first = true;
+        Status status;
+        do {
+            GeoPage page = new GeoPage();
+            status = db.scanByDistancePage(pageTable, gp.getLatitude(), gp.getLongitude(), distance, pagesize,
+                    continuation, scanfields, page);
+            if (status == null || !status.isOk()) {
+                break;
+            }
+            if (first) {
+                first = false;
+                measurements.measure("SCAN-DISTANCE-FIRST-PAGE", (int) ((System.nanoTime() - st) / 1000));
+                measurements.reportStatus("SCAN-DISTANCE-FIRST-PAGE", status);
+            }
+            continuation = page.getContinuation();
+        } while (continuation != null);
+        long en = System.nanoTime();
+
+        if (status != null && status.isOk()) {
+            measurements.measure("SCAN-DISTANCE-LAST-PAGE", (int) ((en - st) / 1000));
+        }
+        measurements.reportStatus("SCAN-DISTANCE-LAST-PAGE", status == null ? Status.ERROR : status);
+        return status;
+    }
+
+    private CompletableFuture<Status> doTransactionScanKNN(DB db, ThreadPartition partition, boolean async) {
+        long keynum = nextKeynum(partition);
 
         GeoPoint gp = geopoints.get((int) keynum);
         int neighbors = scanneighbors.nextValue().intValue();
-        db.scanKNN(table, gp.getLatitude(), gp.getLongitude(), neighbors, new ArrayList<>());
+        if (async) {
+            return db.scanKNNAsync(tableFor(keynum), gp.getLatitude(), gp.getLongitude(), neighbors, scanfields,
+                    new ArrayList<>());
+        }
+        return CompletableFuture.completedFuture(db.scanKNN(tableFor(keynum), gp.getLatitude(), gp.getLongitude(),
+                neighbors, scanfields, new ArrayList<>()));
     }
 
     @Override
     public boolean doTransaction(DB db, Object threadstate) {
+        return doTransaction(db, threadstate, false) != null;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> doTransactionAsync(DB db, Object threadstate) {
+        CompletableFuture<Status> operation = doTransaction(db, threadstate, true);
+        if (operation == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return operation.thenApply(status -> true);
+    }
+
+    /**
+     * Runs the next operation, through the asynchronous API of the DB if async is set.
+     * Returns null when the operation chooser has no more operations.
+     */
+    private CompletableFuture<Status> doTransaction(DB db, Object threadstate, boolean async) {
         String operation = operationchooser.nextString();
         if (operation == null) {
-            return false;
+            return null;
         }
+        ThreadPartition partition = partitionOf(threadstate);
 
         switch (operation) {
+            case "READ_POINT":
+                return doTransactionReadPoint(db, partition, async);
             case "SCAN_KNN":
-                doTransactionScanKNN(db);
-                break;
+                return doTransactionScanKNN(db, partition, async);
             case "SCAN_BY_DISTANCE":
-                doTransactionScanDistance(db);
-                break;
+                return doTransactionScanDistance(db, partition, async);
+            case "SCAN_BY_DISTANCE_PAGED":
+                return CompletableFuture.completedFuture(doTransactionScanDistancePaged(db, partition));
             case "SCAN_BY_POLYGON":
-                doTransactionScanPolygon(db);
-                break;
+                return doTransactionScanPolygon(db, partition, async);
+            case "SCAN_BY_CORRIDOR":
+                return doTransactionScanCorridor(db, partition, async);
+            case "COUNT_BY_DISTANCE":
+                return doTransactionCountDistance(db, partition, async);
+            case "COUNT_BY_POLYGON":
+                return doTransactionCountPolygon(db, partition, async);
             default:
-                break;
+                return CompletableFuture.completedFuture(Status.NOT_IMPLEMENTED);
+        }
+    }
+
+    /**
+     * Resets the tables, and builds their spatial index if it comes before the load. A
+     * resumed load keeps the tables and the points loaded before.
+     */
+    @Override
+    public void prepareLoad(DB db) throws WorkloadException {
+        if (checkpoint != null && checkpoint.isResumed()) {
+            return;
+        }
+        for (String t : tables) {
+            Status status = db.reset(t);
+            if (!(null != status && status.isOk())) {
+                System.err.println("Error reseting DB table " + t);
+            }
+            if ("before".equals(indexmode)) {
+                createSpatialIndex(db, t);
+            }
         }
-        return true;
     }
 
-    private static boolean isFirstThread = true;
+    /**
+     * Builds the deferred spatial indexes and finishes the load of the tables.
+     */
+    @Override
+    public void finishLoad(DB db) throws WorkloadException {
+        for (String t : tables) {
+            if ("after".equals(indexmode)) {
+                createSpatialIndex(db, t);
+            }
+            Status status = db.finishLoad(t);
+            if (!(null != status && status.isOk())) {
+                System.err.println("Error finishing the load of DB table " + t);
+            }
+        }
+        reportFootprint(db);
+    }
 
+    /**
+     * Writes the last checkpoint of a checkpointed load.
+     */
     @Override
-    public boolean doInsert(DB db, Object threadstate) {
-        int keynum = keysequence.nextValue().intValue();
-        Status status;
+    public void cleanup() throws WorkloadException {
+        if (checkpoint != null) {
+            checkpoint.finish();
+            checkpoint = null;
+        }
+    }
 
-        synchronized (GeoPointWorkload.class) {
-            if (isFirstThread) {
-                isFirstThread = false;
-                status = db.reset(table);
-                if (!(null != status && status.isOk())) {
-                    System.err.println("Error reseting DB");
-                }
+    @Override
+    public void finishRun(DB db) throws WorkloadException {
+        reportFootprint(db);
+    }
+
+    /**
+     * Exports the storage footprint of every table as the FOOTPRINT-table metric.
+     */
+    private void reportFootprint(DB db) {
+        for (String t : tables) {
+            GeoFootprint footprint = new GeoFootprint();
+            Status status = db.footprint(t, footprint);
+            if (Status.NOT_IMPLEMENTED.equals(status)) {
+                return;
             }
+            if (!(null != status && status.isOk())) {
+                System.err.println("Error reading the footprint of DB table " + t);
+                continue;
+            }
+            String metric = "FOOTPRINT-" + t;
+            measurements.reportValue(metric, "Points", footprint.getPoints());
+            measurements.reportValue(metric, "DataSize(bytes)", footprint.getDataSize());
+            measurements.reportValue(metric, "IndexSize(bytes)", footprint.getIndexSize());
+            measurements.reportValue(metric, "BytesPerPoint", footprint.getBytesPerPoint());
         }
+    }
+
+    private void createSpatialIndex(DB db, String t) {
+        Status status = db.createSpatialIndex(t);
+        // Bindings whose spatial index is maintained with the data have nothing to build.
+        if (!Status.NOT_IMPLEMENTED.equals(status) && !(null != status && status.isOk())) {
+            System.err.println("Error building the spatial index of DB table " + t);
+        }
+    }
+
+    @Override
+    public boolean doInsert(DB db, Object threadstate) {
+        ThreadPartition partition = partitionOf(threadstate);
+        int keynum;
+        if (partition == null) {
+            keynum = keysequence.nextValue().intValue();
+        } else if (partition.hasNextInsert()) {
+            keynum = (int) partition.nextInsertKeynum();
+        } else {
+            return false;
+        }
+        Status status;
 
         GeoPoint gp = geopoints.get((int) keynum);
         String dbkey = gp.getId();
 
         int numOfRetries = 0;
         do {
-            status = db.insert(table, dbkey, gp);
+            status = db.insert(tableFor(keynum), dbkey, withFields(gp));
             if (null != status && status.isOk()) {
                 break;
             }
@@ -228,7 +761,50 @@ public class GeoPointWorkload extends Workload {
             }
         } while (true);
 
-        return null != status && status.isOk();
+        if (null != status && status.isOk()) {
+            if (partition != null) {
+                partition.acknowledgeInsert();
+            }
+            probeFreshness(db, tableFor(keynum), gp);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * For a sample of the inserts, measures the time from the insert acknowledgement until
+     * the point is returned by a distance scan around it, i.e. until the spatial index, the
+     * replica read from or the eventually consistent view contains it.
+     */
+    protected void probeFreshness(DB db, String pointTable, GeoPoint gp) {
+        if (freshnessproportion <= 0 || ThreadLocalRandom.current().nextDouble() >= freshnessproportion) {
+            return;
+        }
+        DB probe = db instanceof DBWrapper ? ((DBWrapper) db).getDB() : db;
+
+        long st = System.nanoTime();
+        long deadline = st + TimeUnit.MILLISECONDS.toNanos(freshnesstimeout);
+        while (true) {
+            ArrayList<GeoPoint> result = new ArrayList<>();
+            Status status = probe.scanByDistance(pointTable, gp.getLatitude(), gp.getLongitude(), FRESHNESS_RADIUS,
+                    Collections.emptySet(), result);
+            if (status == null || !status.isOk()) {
+                measurements.reportStatus("FRESHNESS", status == null ? Status.ERROR : status);
+                return;
+            }
+            for (GeoPoint found : result) {
+                if (gp.getId().equals(found.getId())) {
+                    measurements.measure("FRESHNESS", (int) ((System.nanoTime() - st) / 1000));
+                    measurements.reportStatus("FRESHNESS", Status.OK);
+                    return;
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                measurements.reportStatus("FRESHNESS", Status.NOT_FOUND);
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(freshnessinterval));
+        }
     }
 
     protected static DiscreteGenerator createOperationGenerator(final Properties p) {
@@ -236,17 +812,36 @@ public class GeoPointWorkload extends Workload {
             throw new IllegalArgumentException("Properties object cannot be null");
         }
 
+        final double readproportion = Double
+                .parseDouble(p.getProperty(READ_PROPORTION_PROPERTY, READ_PROPORTION_PROPERTY_DEFAULT));
+
         final double scanknnproportion = Double
                 .parseDouble(p.getProperty(SCAN_KNN_PROPORTION_PROPERTY, SCAN_KNN_PROPORTION_PROPERTY_DEFAULT));
 
         final double scanbydistanceproportion = Double.parseDouble(
                 p.getProperty(SCAN_BY_DISTANCE_PROPORTION_PROPERTY, SCAN_BY_DISTANCE_PROPORTION_PROPERTY_DEFAULT));
 
+        final double scanbydistancepagedproportion = Double.parseDouble(p.getProperty(
+                SCAN_BY_DISTANCE_PAGED_PROPORTION_PROPERTY, SCAN_BY_DISTANCE_PAGED_PROPORTION_PROPERTY_DEFAULT));
+
         final double scanbypolygonproportion = Double.parseDouble(
                 p.getProperty(SCAN_BY_POLYGON_PROPORTION_PROPERTY, SCAN_BY_POLYGON_PROPORTION_PROPERTY_DEFAULT));
 
+        final double scanbycorridorproportion = Double.parseDouble(
+                p.getProperty(SCAN_BY_CORRIDOR_PROPORTION_PROPERTY, SCAN_BY_CORRIDOR_PROPORTION_PROPERTY_DEFAULT));
+
+        final double countbydistanceproportion = Double.parseDouble(
+                p.getProperty(COUNT_BY_DISTANCE_PROPORTION_PROPERTY, COUNT_BY_DISTANCE_PROPORTION_PROPERTY_DEFAULT));
+
+        final double countbypolygonproportion = Double.parseDouble(
+                p.getProperty(COUNT_BY_POLYGON_PROPORTION_PROPERTY, COUNT_BY_POLYGON_PROPORTION_PROPERTY_DEFAULT));
+
         final DiscreteGenerator operationchooser = new DiscreteGenerator();
 
+        if (readproportion > 0) {
+            operationchooser.addValue(readproportion, "READ_POINT");
+        }
+
         if (scanknnproportion > 0) {
             operationchooser.addValue(scanknnproportion, "SCAN_KNN");
         }
@@ -255,14 +850,100 @@ public class GeoPointWorkload extends Workload {
             operationchooser.addValue(scanbydistanceproportion, "SCAN_BY_DISTANCE");
         }
 
+        if (scanbydistancepagedproportion > 0) {
+            operationchooser.addValue(scanbydistancepagedproportion, "SCAN_BY_DISTANCE_PAGED");
+        }
+
         if (scanbypolygonproportion > 0) {
             operationchooser.addValue(scanbypolygonproportion, "SCAN_BY_POLYGON");
         }
 
+        if (scanbycorridorproportion > 0) {
+            operationchooser.addValue(scanbycorridorproportion, "SCAN_BY_CORRIDOR");
+        }
+
+        if (countbydistanceproportion > 0) {
+            operationchooser.addValue(countbydistanceproportion, "COUNT_BY_DISTANCE");
+        }
+
+        if (countbypolygonproportion > 0) {
+            operationchooser.addValue(countbypolygonproportion, "COUNT_BY_POLYGON");
+        }
+
         return operationchooser;
     }
 
-    private long nextKeynum() {
+    /**
+     * Returns the record to insert for a dataset point, with freshly generated payload
+     * attributes. The dataset points themselves never hold a payload.
+     */
+    protected GeoPoint withFields(GeoPoint gp) {
+        if (fieldnames.length == 0) {
+            return gp;
+        }
+        GeoPoint record = new GeoPoint(gp.getId(), gp.getLatitude(), gp.getLongitude(), gp.getTimeOfRecord());
+        record.setFields(buildFields());
+        return record;
+    }
+
+    protected Map<String, ByteIterator> buildFields() {
+        Map<String, ByteIterator> fields = new HashMap<>();
+        for (int i = 0; i < fieldnames.length; i++) {
+            if (i < numericfieldcount) {
+                fields.put(fieldnames[i], new NumericByteIterator(ThreadLocalRandom.current().nextDouble(360)));
+            } else {
+                fields.put(fieldnames[i], new RandomByteIterator(fieldlengthgenerator.nextValue().longValue()));
+            }
+        }
+        return fields;
+    }
+
+    protected static NumberGenerator createFieldLengthGenerator(Properties p) throws WorkloadException {
+        int fieldlength = Integer.parseInt(p.getProperty(FIELD_LENGTH_PROPERTY, FIELD_LENGTH_PROPERTY_DEFAULT));
+        int minfieldlength = Integer.parseInt(
+                p.getProperty(MIN_FIELD_LENGTH_PROPERTY, MIN_FIELD_LENGTH_PROPERTY_DEFAULT));
+        String distribution = p.getProperty(FIELD_LENGTH_DISTRIBUTION_PROPERTY,
+                FIELD_LENGTH_DISTRIBUTION_PROPERTY_DEFAULT);
+
+        switch (distribution) {
+            case "constant":
+                return new ConstantIntegerGenerator(fieldlength);
+            case "uniform":
+                return new UniformLongGenerator(minfieldlength, fieldlength);
+            case "zipfian":
+                return new ZipfianGenerator(minfieldlength, fieldlength);
+            default:
+                throw new WorkloadException("Unknown " + FIELD_LENGTH_DISTRIBUTION_PROPERTY + " \"" + distribution
+                        + "\"");
+        }
+    }
+
+    /**
+     * Parses the scan projection, null meaning all attributes.
+     */
+    protected static Set<String> createScanFields(String scanfields) {
+        switch (scanfields) {
+            case "all":
+                return null;
+            case "none":
+                return Collections.emptySet();
+            default:
+                Set<String> names = new HashSet<>();
+                for (String name : scanfields.split(",")) {
+                    names.add(name.trim());
+                }
+                return names;
+        }
+    }
+
+    protected long nextKeynum(ThreadPartition partition) {
+        if (partition != null) {
+            return partition.nextKeynum();
+        }
+        return nextKeynum();
+    }
+
+    protected long nextKeynum() {
         long keynum;
         if (keychooser instanceof ExponentialGenerator) {
             do {
@@ -276,6 +957,113 @@ public class GeoPointWorkload extends Workload {
         return keynum;
     }
 
+    /**
+     * Returns the key numbers from insertstart on, ordered along a Hilbert curve over the
+     * bounding box of their points.
+     */
+    protected int[] createHilbertOrder(long start, int count) {
+        double south = Double.MAX_VALUE;
+        double north = -Double.MAX_VALUE;
+        double west = Double.MAX_VALUE;
+        double east = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            GeoPoint gp = geopoints.get((int) start + i);
+            south = Math.min(south, gp.getLatitude());
+            north = Math.max(north, gp.getLatitude());
+            west = Math.min(west, gp.getLongitude());
+            east = Math.max(east, gp.getLongitude());
+        }
+
+        long[] curve = new long[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            GeoPoint gp = geopoints.get((int) start + i);
+            curve[i] = GeoHilbert.index(gp.getLatitude(), gp.getLongitude(), south, north, west, east);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(curve[a], curve[b]));
+
+        int[] keynums = new int[count];
+        for (int i = 0; i < count; i++) {
+            keynums[i] = (int) start + order[i];
+        }
+        return keynums;
+    }
+
+    /**
+     * Returns the table (tenant) a point belongs to. The mapping only depends on
+     * the key number, so the load and the run phase agree on it.
+     */
+    protected String tableFor(long keynum) {
+        if (tables.length == 1) {
+            return tables[0];
+        }
+        double u = (double) Utils.fnvhash64(keynum) / Long.MAX_VALUE;
+        int index = Arrays.binarySearch(tablecdf, u);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return tables[Math.min(index, tables.length - 1)];
+    }
+
+    protected static String[] createTableNames(String table, int tablecount) {
+        if (tablecount == 1) {
+            return new String[] {table};
+        }
+        String[] names = new String[tablecount];
+        for (int i = 0; i < tablecount; i++) {
+            names[i] = table + "_" + i;
+        }
+        return names;
+    }
+
+    protected static double[] createTableCdf(int tablecount, String distribution) throws WorkloadException {
+        double[] weights = new double[tablecount];
+        double sum = 0;
+        for (int i = 0; i < tablecount; i++) {
+            switch (distribution) {
+                case "zipfian":
+                    weights[i] = 1.0 / Math.pow(i + 1, ZipfianGenerator.ZIPFIAN_CONSTANT);
+                    break;
+                case "uniform":
+                    weights[i] = 1.0;
+                    break;
+                default:
+                    throw new WorkloadException("Unknown " + TABLE_DISTRIBUTION_PROPERTY + " \"" + distribution + "\"");
+            }
+            sum += weights[i];
+        }
+        double[] cdf = new double[tablecount];
+        double acc = 0;
+        for (int i = 0; i < tablecount; i++) {
+            acc += weights[i];
+            cdf[i] = acc / sum;
+        }
+        return cdf;
+    }
+
+    /**
+     * Builds a route from the dataset points following keynum, which in the trajectory
+     * data are consecutive positions. Only the points of the table of keynum are taken,
+     * as the corridor is queried on that table; near the end of the dataset the route is
+     * completed with the points before keynum.
+     */
+    protected ArrayList<GeoPoint> generatePolyline(long keynum, int vertices) {
+        String table = tableFor(keynum);
+        ArrayList<GeoPoint> polyline = new ArrayList<>(vertices);
+        for (long i = keynum; i < geopoints.size() && polyline.size() < vertices; i++) {
+            if (tables.length == 1 || tableFor(i).equals(table)) {
+                polyline.add(geopoints.get((int) i));
+            }
+        }
+        for (long i = keynum - 1; i >= 0 && polyline.size() < vertices; i--) {
+            if (tables.length == 1 || tableFor(i).equals(table)) {
+                polyline.add(0, geopoints.get((int) i));
+            }
+        }
+        return polyline;
+    }
+
     public static ArrayList<GeoPoint> generateSquare(GeoPoint firstPoint, double distance) {
         double newLat = firstPoint.getLatitude() + (distance / 111.32);
         double newLong = firstPoint.getLongitude()
@@ -0,0 +1,31 @@
+package site.ycsb.geodata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One sample of the server side statistics of a store. Gauges are recorded as they
+ * are, counters as their increase since the previous sample. The names become
+ * measurement names, so they carry their unit, e.g. CACHE_USED_MB.
+ */
+public class GeoServerStats {
+
+    private final Map<String, Long> gauges = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    public void gauge(String name, long value) {
+        gauges.put(name, value);
+    }
+
+    public void counter(String name, long value) {
+        counters.put(name, value);
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+}
@@ -0,0 +1,291 @@
+package site.ycsb.geodata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import site.ycsb.DB;
+import site.ycsb.WorkloadException;
+import site.ycsb.generator.DiscreteGenerator;
+
+/**
+ * A map client workload. Each client thread plays one user session after the other:
+ * a session starts on a random dataset point and then walks a Markov chain of pan
+ * and zoom steps, each issuing a viewport query that overlaps the previous one,
+ * with think time between the steps.
+ *
+ * The load phase is the one of {@link GeoPointWorkload}.
+ */
+public class GeoViewportSessionWorkload extends GeoPointWorkload {
+
+    /** The number of viewport queries of a session. */
+    public static final String SESSION_LENGTH_PROPERTY = "viewport.sessionlength";
+    public static final String SESSION_LENGTH_PROPERTY_DEFAULT = "20";
+
+    /** The viewport width in km at the start of a session. */
+    public static final String INITIAL_SIZE_PROPERTY = "viewport.initialsize";
+    public static final String INITIAL_SIZE_PROPERTY_DEFAULT = "20";
+
+    /** The zoom range, as viewport widths in km. */
+    public static final String MIN_SIZE_PROPERTY = "viewport.minsize";
+    public static final String MAX_SIZE_PROPERTY = "viewport.maxsize";
+
+    public static final String MIN_SIZE_PROPERTY_DEFAULT = "1";
+    public static final String MAX_SIZE_PROPERTY_DEFAULT = "100";
+
+    /** The fraction of the viewport width a pan moves. */
+    public static final String PAN_FRACTION_PROPERTY = "viewport.panfraction";
+    public static final String PAN_FRACTION_PROPERTY_DEFAULT = "0.25";
+
+    /** The factor the viewport width changes by on a zoom step. */
+    public static final String ZOOM_FACTOR_PROPERTY = "viewport.zoomfactor";
+    public static final String ZOOM_FACTOR_PROPERTY_DEFAULT = "2";
+
+    /** The base proportions of the steps. */
+    public static final String PAN_PROPORTION_PROPERTY = "viewport.panproportion";
+    public static final String ZOOM_IN_PROPORTION_PROPERTY = "viewport.zoominproportion";
+    public static final String ZOOM_OUT_PROPORTION_PROPERTY = "viewport.zoomoutproportion";
+
+    public static final String PAN_PROPORTION_PROPERTY_DEFAULT = "0.6";
+    public static final String ZOOM_IN_PROPORTION_PROPERTY_DEFAULT = "0.2";
+    public static final String ZOOM_OUT_PROPORTION_PROPERTY_DEFAULT = "0.2";
+
+    /**
+     * The probability that a step repeats the previous one (panning on in the same
+     * direction or zooming further), which makes the steps a Markov chain.
+     */
+    public static final String STICKINESS_PROPERTY = "viewport.stickiness";
+    public static final String STICKINESS_PROPERTY_DEFAULT = "0.5";
+
+    /** The viewport shape, "box" or "polygon" (a box with cut corners). */
+    public static final String QUERY_TYPE_PROPERTY = "viewport.querytype";
+    public static final String QUERY_TYPE_PROPERTY_DEFAULT = "box";
+
+    /** The think time range in ms between two steps of a session. */
+    public static final String MIN_THINK_TIME_PROPERTY = "viewport.minthinktime";
+    public static final String MAX_THINK_TIME_PROPERTY = "viewport.maxthinktime";
+
+    public static final String MIN_THINK_TIME_PROPERTY_DEFAULT = "0";
+    public static final String MAX_THINK_TIME_PROPERTY_DEFAULT = "0";
+
+    /** Height over width of the viewport, a 16:10 screen. */
+    private static final double ASPECT_RATIO = 0.625;
+
+    private enum Step {
+        PAN, ZOOM_IN, ZOOM_OUT
+    }
+
+    /**
+     * The per thread state of the current session.
+     */
+    private static final class ViewportSession {
+        private ThreadPartition partition;
+        private String table;
+        private double latitude;
+        private double longitude;
+        private double width;
+        private int remaining;
+        private Step previous;
+        private double panAngle;
+        /** The think time this thread slept that its target schedule did not absorb yet. */
+        private long thinkDebtNs;
+    }
+
+    protected int sessionlength;
+    protected double initialsize;
+    protected double minsize;
+    protected double maxsize;
+    protected double panfraction;
+    protected double zoomfactor;
+    protected double stickiness;
+    protected boolean polygonviewport;
+    protected long minthinktime;
+    protected long maxthinktime;
+    protected DiscreteGenerator stepchooser;
+
+    @Override
+    public void init(Properties p) throws WorkloadException {
+        super.init(p);
+
+        sessionlength = Integer.parseInt(p.getProperty(SESSION_LENGTH_PROPERTY, SESSION_LENGTH_PROPERTY_DEFAULT));
+        initialsize = Double.parseDouble(p.getProperty(INITIAL_SIZE_PROPERTY, INITIAL_SIZE_PROPERTY_DEFAULT));
+        minsize = Double.parseDouble(p.getProperty(MIN_SIZE_PROPERTY, MIN_SIZE_PROPERTY_DEFAULT));
+        maxsize = Double.parseDouble(p.getProperty(MAX_SIZE_PROPERTY, MAX_SIZE_PROPERTY_DEFAULT));
+        panfraction = Double.parseDouble(p.getProperty(PAN_FRACTION_PROPERTY, PAN_FRACTION_PROPERTY_DEFAULT));
+        zoomfactor = Double.parseDouble(p.getProperty(ZOOM_FACTOR_PROPERTY, ZOOM_FACTOR_PROPERTY_DEFAULT));
+        stickiness = Double.parseDouble(p.getProperty(STICKINESS_PROPERTY, STICKINESS_PROPERTY_DEFAULT));
+        minthinktime = Long.parseLong(p.getProperty(MIN_THINK_TIME_PROPERTY, MIN_THINK_TIME_PROPERTY_DEFAULT));
+        maxthinktime = Long.parseLong(p.getProperty(MAX_THINK_TIME_PROPERTY, MAX_THINK_TIME_PROPERTY_DEFAULT));
+
+        String querytype = p.getProperty(QUERY_TYPE_PROPERTY, QUERY_TYPE_PROPERTY_DEFAULT);
+        if (!"box".equals(querytype) && !"polygon".equals(querytype)) {
+            throw new WorkloadException("Unknown " + QUERY_TYPE_PROPERTY + " \"" + querytype + "\"");
+        }
+        polygonviewport = "polygon".equals(querytype);
+
+        if (sessionlength < 1 || minsize <= 0 || minsize > maxsize || zoomfactor <= 1
+                || maxthinktime < minthinktime) {
+            throw new WorkloadException("Invalid viewport session configuration.");
+        }
+
+        stepchooser = new DiscreteGenerator();
+        addStep(p, PAN_PROPORTION_PROPERTY, PAN_PROPORTION_PROPERTY_DEFAULT, Step.PAN);
+        addStep(p, ZOOM_IN_PROPORTION_PROPERTY, ZOOM_IN_PROPORTION_PROPERTY_DEFAULT, Step.ZOOM_IN);
+        addStep(p, ZOOM_OUT_PROPORTION_PROPERTY, ZOOM_OUT_PROPORTION_PROPERTY_DEFAULT, Step.ZOOM_OUT);
+    }
+
+    private void addStep(Properties p, String property, String defaultValue, Step step) {
+        double proportion = Double.parseDouble(p.getProperty(property, defaultValue));
+        if (proportion > 0) {
+            stepchooser.addValue(proportion, step.name());
+        }
+    }
+
+    @Override
+    public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException {
+        ViewportSession session = new ViewportSession();
+        session.partition = (ThreadPartition) super.initThread(p, mythreadid, threadcount);
+        return session;
+    }
+
+    @Override
+    protected ThreadPartition partitionOf(Object threadstate) {
+        if (threadstate instanceof ViewportSession) {
+            return ((ViewportSession) threadstate).partition;
+        }
+        return super.partitionOf(threadstate);
+    }
+
+    @Override
+    public boolean doTransaction(DB db, Object threadstate) {
+        ViewportSession session = (ViewportSession) threadstate;
+
+        if (session.remaining <= 0) {
+            startSession(session);
+        } else {
+            if (!think(session)) {
+                return false;
+            }
+            nextStep(session);
+        }
+        session.remaining--;
+        excludeThinkTime(session);
+
+        db.scanByPolygon(session.table, viewport(session), scanfields, new ArrayList<GeoPoint>());
+        return true;
+    }
+
+    /**
+     * The steps of a session follow each other with think time in between, so they stay
+     * synchronous.
+     */
+    @Override
+    public CompletableFuture<Boolean> doTransactionAsync(DB db, Object threadstate) {
+        return CompletableFuture.completedFuture(doTransaction(db, threadstate));
+    }
+
+    private void startSession(ViewportSession session) {
+        long keynum = nextKeynum(session.partition);
+        GeoPoint gp = geopoints.get((int) keynum);
+
+        session.table = tableFor(keynum);
+        session.latitude = gp.getLatitude();
+        session.longitude = gp.getLongitude();
+        session.width = Math.max(minsize, Math.min(maxsize, initialsize));
+        session.remaining = sessionlength;
+        session.previous = null;
+    }
+
+    private void nextStep(ViewportSession session) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        Step step;
+        boolean repeat = session.previous != null && random.nextDouble() < stickiness;
+        if (repeat) {
+            step = session.previous;
+        } else {
+            step = Step.valueOf(stepchooser.nextString());
+        }
+
+        switch (step) {
+            case PAN:
+                if (!repeat) {
+                    session.panAngle = random.nextDouble(2 * Math.PI);
+                }
+                double distance = session.width * panfraction;
+                session.latitude += distance * Math.sin(session.panAngle) / GeoCorridor.KM_PER_DEGREE;
+                session.longitude += distance * Math.cos(session.panAngle)
+                        / GeoCorridor.kmPerDegreeLongitude(session.latitude);
+                break;
+            case ZOOM_IN:
+                session.width = Math.max(minsize, session.width / zoomfactor);
+                break;
+            case ZOOM_OUT:
+                session.width = Math.min(maxsize, session.width * zoomfactor);
+                break;
+            default:
+                break;
+        }
+        session.previous = step;
+    }
+
+    private boolean think(ViewportSession session) {
+        if (maxthinktime <= 0) {
+            return true;
+        }
+        long thinktime = ThreadLocalRandom.current().nextLong(minthinktime, maxthinktime + 1);
+        try {
+            TimeUnit.MILLISECONDS.sleep(thinktime);
+            session.thinkDebtNs += TimeUnit.MILLISECONDS.toNanos(thinktime);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Under a target the client thread measures from the start its schedule intended, and
+     * the think time puts the thread behind that schedule. The user thinking is not a
+     * delay of the store, so the intended start moves by the think time the thread is
+     * still behind by; the rest of the lag, e.g. from a stall of the store, stays in it.
+     */
+    private void excludeThinkTime(ViewportSession session) {
+        long intended = measurements.getIntendedStartTimeNs();
+        long lag = Math.max(0, System.nanoTime() - intended);
+        session.thinkDebtNs = Math.min(session.thinkDebtNs, lag);
+        measurements.advanceIntendedStartTimeNs(intended + session.thinkDebtNs);
+    }
+
+    private ArrayList<GeoPoint> viewport(ViewportSession session) {
+        double halfLat = session.width * ASPECT_RATIO / 2 / GeoCorridor.KM_PER_DEGREE;
+        double halfLon = session.width / 2 / GeoCorridor.kmPerDegreeLongitude(session.latitude);
+
+        double north = session.latitude + halfLat;
+        double south = session.latitude - halfLat;
+        double east = session.longitude + halfLon;
+        double west = session.longitude - halfLon;
+
+        if (!polygonviewport) {
+            GeoPoint first = vertex(south, west);
+            return new ArrayList<>(Arrays.asList(first, vertex(north, west), vertex(north, east),
+                    vertex(south, east), first));
+        }
+
+        // Cut a quarter off each corner.
+        double cutLat = halfLat / 2;
+        double cutLon = halfLon / 2;
+        GeoPoint first = vertex(south + cutLat, west);
+        return new ArrayList<>(Arrays.asList(first, vertex(north - cutLat, west), vertex(north, west + cutLon),
+                vertex(north, east - cutLon), vertex(north - cutLat, east), vertex(south + cutLat, east),
+                vertex(south, east - cutLon), vertex(south, west + cutLon), first));
+    }
+
+    private static GeoPoint vertex(double lat, double lgn) {
+        return new GeoPoint("", lat, lgn, new Date());
+    }
+}
@@ -0,0 +1,197 @@
+package site.ycsb.geodata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import site.ycsb.Client;
+import site.ycsb.WorkloadException;
+
+/**
+ * Writes the progress of a load to a local file, so a load that died can be resumed
+ * instead of started over. With a checkpoint every client thread loads a contiguous
+ * range of the keys (or of the Hilbert order) and inserts it in order; the checkpoint
+ * holds, per thread, the position up to which every insert was acknowledged. With
+ * load.resume the threads start from those positions. The inserts after a position may
+ * or may not have reached the database, so a resumed load upserts (load.upsert).
+ */
+public class LoadCheckpoint extends Thread {
+
+    /** The file the progress of the load is written to, none by default. */
+    public static final String FILE_PROPERTY = "load.checkpoint";
+
+    /** The ms between two checkpoints. */
+    public static final String INTERVAL_PROPERTY = "load.checkpoint.interval";
+    public static final String INTERVAL_PROPERTY_DEFAULT = "10000";
+
+    /** Whether to skip the ranges the checkpoint file records as loaded. */
+    public static final String RESUME_PROPERTY = "load.resume";
+    public static final String RESUME_PROPERTY_DEFAULT = "false";
+
+    /**
+     * Whether the bindings insert with an upsert, so inserting a point again replaces it.
+     * Defaults to load.resume.
+     */
+    public static final String UPSERT_PROPERTY = "load.upsert";
+
+    private static final String[] RANGE_PROPERTIES = {GeoPointWorkload.INSERT_START_PROPERTY,
+        GeoPointWorkload.INSERT_COUNT_PROPERTY, Client.THREAD_COUNT_PROPERTY,
+        GeoPointWorkload.THREAD_PARTITIONING_PROPERTY};
+
+    private final File file;
+    private final long intervalMs;
+    private final Properties ranges;
+    private final int[] resumed;
+    private final Properties previous = new Properties();
+    private final GeoPointWorkload.ThreadPartition[] partitions;
+
+    /**
+     * Returns whether the bindings should upsert.
+     */
+    public static boolean isUpsert(Properties p) {
+        return Boolean.parseBoolean(p.getProperty(UPSERT_PROPERTY,
+                p.getProperty(RESUME_PROPERTY, RESUME_PROPERTY_DEFAULT)));
+    }
+
+    /**
+     * Returns the checkpoint of a load, null if the properties ask for none.
+     */
+    static LoadCheckpoint create(Properties p, long insertstart, long insertcount) throws WorkloadException {
+        String file = p.getProperty(FILE_PROPERTY);
+        boolean resume = Boolean.parseBoolean(p.getProperty(RESUME_PROPERTY, RESUME_PROPERTY_DEFAULT));
+        if (file == null) {
+            if (resume) {
+                throw new WorkloadException(RESUME_PROPERTY + " needs the " + FILE_PROPERTY + " to resume from");
+            }
+            return null;
+        }
+        Properties ranges = new Properties();
+        ranges.setProperty(GeoPointWorkload.INSERT_START_PROPERTY, String.valueOf(insertstart));
+        ranges.setProperty(GeoPointWorkload.INSERT_COUNT_PROPERTY, String.valueOf(insertcount));
+        ranges.setProperty(Client.THREAD_COUNT_PROPERTY, p.getProperty(Client.THREAD_COUNT_PROPERTY, "1"));
+        ranges.setProperty(GeoPointWorkload.THREAD_PARTITIONING_PROPERTY,
+                p.getProperty(GeoPointWorkload.THREAD_PARTITIONING_PROPERTY,
+                        GeoPointWorkload.THREAD_PARTITIONING_PROPERTY_DEFAULT));
+        long intervalMs = Long.parseLong(p.getProperty(INTERVAL_PROPERTY, INTERVAL_PROPERTY_DEFAULT));
+        return new LoadCheckpoint(new File(file), intervalMs, ranges, resume);
+    }
+
+    private LoadCheckpoint(File file, long intervalMs, Properties ranges, boolean resume) throws WorkloadException {
+        super("LoadCheckpoint");
+        setDaemon(true);
+        this.file = file;
+        this.intervalMs = intervalMs;
+        this.ranges = ranges;
+        int threadcount = Integer.parseInt(ranges.getProperty(Client.THREAD_COUNT_PROPERTY));
+        partitions = new GeoPointWorkload.ThreadPartition[threadcount];
+        resumed = new int[threadcount];
+        Arrays.fill(resumed, -1);
+        if (resume && file.exists()) {
+            read();
+        } else if (resume) {
+            System.err.println("No load checkpoint " + file + ", loading from the start.");
+        }
+    }
+
+    private void read() throws WorkloadException {
+        Properties checkpoint = previous;
+        try (InputStream in = new FileInputStream(file)) {
+            checkpoint.load(in);
+        } catch (IOException e) {
+            throw new WorkloadException("Could not read the load checkpoint " + file, e);
+        }
+        // The positions are only meaningful for the same ranges of the same threads.
+        for (String key : RANGE_PROPERTIES) {
+            if (!ranges.getProperty(key).equals(checkpoint.getProperty(key))) {
+                throw new WorkloadException("The load checkpoint " + file + " was written with " + key + "="
+                        + checkpoint.getProperty(key) + ", not " + ranges.getProperty(key));
+            }
+        }
+        long loaded = 0;
+        for (int i = 0; i < resumed.length; i++) {
+            String position = checkpoint.getProperty("thread." + i);
+            if (position != null) {
+                resumed[i] = Integer.parseInt(position);
+                loaded += resumed[i] - Long.parseLong(checkpoint.getProperty("thread." + i + ".start"));
+            }
+        }
+        System.err.println("Resuming the load from " + file + ", " + loaded + " points were loaded.");
+    }
+
+    /**
+     * Returns whether the load resumes from a checkpoint, and so must keep the tables.
+     */
+    boolean isResumed() {
+        return !previous.isEmpty();
+    }
+
+    /**
+     * Registers the partition of a thread and moves it to its position in the checkpoint.
+     */
+    synchronized void register(int threadid, GeoPointWorkload.ThreadPartition partition) {
+        if (resumed[threadid] >= 0) {
+            partition.resumeAt(resumed[threadid]);
+        }
+        partitions[threadid] = partition;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                TimeUnit.MILLISECONDS.sleep(intervalMs);
+                write();
+            }
+        } catch (InterruptedException e) {
+            // finish() writes the last checkpoint.
+        }
+    }
+
+    /**
+     * Stops the periodic checkpoints and writes the final one.
+     */
+    void finish() {
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write();
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file and moves it over the last one, so a crash
+     * while writing leaves the last checkpoint intact.
+     */
+    private synchronized void write() {
+        // Threads that did not start yet keep the positions they are resumed from.
+        Properties checkpoint = new Properties();
+        checkpoint.putAll(previous);
+        checkpoint.putAll(ranges);
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i] != null) {
+                checkpoint.setProperty("thread." + i + ".start", String.valueOf(partitions[i].start()));
+                checkpoint.setProperty("thread." + i, String.valueOf(partitions[i].acknowledged()));
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                checkpoint.store(out, "Acknowledged load positions per client thread");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not write the load checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+}
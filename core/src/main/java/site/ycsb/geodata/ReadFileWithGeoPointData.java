@@ -31,7 +31,7 @@ public class ReadFileWithGeoPointData {
 
                 while (myReader.hasNextLine()) {
 
-                    gps.add(stringToGeoPoint(myReader.nextLine()));
+                    gps.add(stringToGeoPoint(myReader.nextLine(), counter));
                     counter++;
                     if (counter >= recordcount)
                         break;
@@ -45,7 +45,7 @@ public class ReadFileWithGeoPointData {
         return gps;
     }
 
-    private GeoPoint stringToGeoPoint(String content) {
+    private GeoPoint stringToGeoPoint(String content, int line) {
         GeoPoint gp = new GeoPoint();
 
         String data[] = content.split(",");
@@ -58,7 +58,8 @@ public class ReadFileWithGeoPointData {
             double latitude = Float.parseFloat(data[6]);
             double longitude = Float.parseFloat(data[7]);
 
-            gp.setId(id+ new Date().getTime());
+            // The line number keeps the id unique and stable between the load and run phases.
+            gp.setId(id + "-" + line);
             gp.setTimeOfRecord(date);
             gp.setLatitude((latitude));
             gp.setLongitude((longitude));
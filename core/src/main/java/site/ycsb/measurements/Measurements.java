@@ -17,11 +17,17 @@
 
 package site.ycsb.measurements;
 
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import site.ycsb.Status;
 import site.ycsb.measurements.exporter.MeasurementsExporter;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -49,6 +55,9 @@ public class Measurements {
   public static final String MEASUREMENT_TRACK_JVM_PROPERTY = "measurement.trackjvm";
   public static final String MEASUREMENT_TRACK_JVM_PROPERTY_DEFAULT = "false";
 
+  public static final String MEASUREMENT_TRACK_SERVER_PROPERTY = "measurement.trackserver";
+  public static final String MEASUREMENT_TRACK_SERVER_PROPERTY_DEFAULT = "false";
+
   private static Measurements singleton = null;
   private static Properties measurementproperties = null;
 
@@ -68,9 +77,13 @@ public class Measurements {
 
   private final ConcurrentHashMap<String, OneMeasurement> opToMesurementMap;
   private final ConcurrentHashMap<String, OneMeasurement> opToIntendedMesurementMap;
-  private final MeasurementType measurementType;
-  private final int measurementInterval;
-  private final Properties props;
+  private final ConcurrentHashMap<String, Map<String, Number>> metricToValueMap;
+  private final ConcurrentHashMap<String, Recorder> opToStepRecorderMap = new ConcurrentHashMap<>();
+  private volatile boolean recordSteps;
+  private volatile boolean warmup;
+  private MeasurementType measurementType;
+  private int measurementInterval;
+  private Properties props;
 
   /**
    * Create a new object with the specified properties.
@@ -78,7 +91,26 @@ public class Measurements {
   public Measurements(Properties props) {
     opToMesurementMap = new ConcurrentHashMap<>();
     opToIntendedMesurementMap = new ConcurrentHashMap<>();
+    metricToValueMap = new ConcurrentHashMap<>();
+
+    configure(props);
+  }
+
+  /**
+   * Drops all measurements and takes the given properties, for the next phase of a run
+   * that reuses this object. No operation may be measured meanwhile.
+   */
+  public synchronized void reset(Properties props) {
+    opToMesurementMap.clear();
+    opToIntendedMesurementMap.clear();
+    metricToValueMap.clear();
+    opToStepRecorderMap.clear();
+    recordSteps = false;
+    warmup = false;
+    configure(props);
+  }
 
+  private void configure(Properties props) {
     this.props = props;
 
     String mTypeString = this.props.getProperty(MEASUREMENT_TYPE_PROPERTY, MEASUREMENT_TYPE_PROPERTY_DEFAULT);
@@ -169,6 +201,21 @@ public class Measurements {
     tlIntendedStartTime.get().time = time;
   }
 
+  /**
+   * Moves the intended start time of the next operation of this thread forward to the
+   * given time, if the client thread set one, e.g. after the think time of a user. The
+   * wait the workload chose is then not counted as latency.
+   */
+  public void advanceIntendedStartTimeNs(long time) {
+    if (measurementInterval == 0) {
+      return;
+    }
+    StartTimeHolder holder = tlIntendedStartTime.get();
+    if (holder.time != 0 && holder.time < time) {
+      holder.time = time;
+    }
+  }
+
   public long getIntendedStartTimeNs() {
     if (measurementInterval == 0) {
       return 0L;
@@ -185,8 +232,11 @@ public class Measurements {
       return;
     }
     try {
-      OneMeasurement m = getOpMeasurement(operation);
+      OneMeasurement m = getOpMeasurement(phased(operation));
       m.measure(latency);
+      if (recordSteps && measurementInterval == 0) {
+        recordStep(phased(operation), latency);
+      }
     } catch (java.lang.ArrayIndexOutOfBoundsException e) {
       // This seems like a terribly hacky way to cover up for a bug in the measurement code
       System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
@@ -204,8 +254,11 @@ public class Measurements {
       return;
     }
     try {
-      OneMeasurement m = getOpIntendedMeasurement(operation);
+      OneMeasurement m = getOpIntendedMeasurement(phased(operation));
       m.measure(latency);
+      if (recordSteps) {
+        recordStep(phased(operation), latency);
+      }
     } catch (java.lang.ArrayIndexOutOfBoundsException e) {
       // This seems like a terribly hacky way to cover up for a bug in the measurement code
       System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
@@ -214,6 +267,18 @@ public class Measurements {
     }
   }
 
+  /**
+   * Sets whether the run is warming up. The samples of the warm-up are recorded under
+   * WARMUP-prefixed names, apart from the ones of the steady state.
+   */
+  public void setWarmup(boolean warmup) {
+    this.warmup = warmup;
+  }
+
+  private String phased(String operation) {
+    return warmup ? "WARMUP-" + operation : operation;
+  }
+
   private OneMeasurement getOpMeasurement(String operation) {
     OneMeasurement m = opToMesurementMap.get(operation);
     if (m == null) {
@@ -239,13 +304,48 @@ public class Measurements {
     return m;
   }
 
+  /**
+   * Starts recording the latencies of each operation per step as well, see
+   * {@link #takeStepHistograms()}. These are the intended latencies unless
+   * measurement.interval=op.
+   */
+  public void recordSteps() {
+    recordSteps = true;
+  }
+
+  private void recordStep(String operation, int latency) {
+    opToStepRecorderMap.computeIfAbsent(operation, k -> new Recorder(3)).recordValue(Math.max(0, latency));
+  }
+
+  /**
+   * Returns the latencies of each operation since the previous call, and starts
+   * the next step.
+   */
+  public Map<String, Histogram> takeStepHistograms() {
+    Map<String, Histogram> step = new TreeMap<>();
+    for (Map.Entry<String, Recorder> recorder : opToStepRecorderMap.entrySet()) {
+      step.put(recorder.getKey(), recorder.getValue().getIntervalHistogram());
+    }
+    return step;
+  }
+
+  /**
+   * Report a single value that is not a latency, e.g. a size, to be exported as is
+   * under the given metric. Values are exported in the order they are first reported.
+   */
+  public void reportValue(final String metric, final String measurement, final Number value) {
+    Map<String, Number> values = metricToValueMap.computeIfAbsent(metric,
+        k -> Collections.synchronizedMap(new LinkedHashMap<>()));
+    values.put(measurement, value);
+  }
+
   /**
    * Report a return code for a single DB operation.
    */
   public void reportStatus(final String operation, final Status status) {
     OneMeasurement m = measurementInterval == 1 ?
-        getOpIntendedMeasurement(operation) :
-        getOpMeasurement(operation);
+        getOpIntendedMeasurement(phased(operation)) :
+        getOpMeasurement(phased(operation));
     m.reportStatus(status);
   }
 
@@ -262,6 +362,17 @@ public class Measurements {
     for (OneMeasurement measurement : opToIntendedMesurementMap.values()) {
       measurement.exportMeasurements(exporter);
     }
+    for (Map.Entry<String, Map<String, Number>> metric : metricToValueMap.entrySet()) {
+      synchronized (metric.getValue()) {
+        for (Map.Entry<String, Number> value : metric.getValue().entrySet()) {
+          if (value.getValue() instanceof Double) {
+            exporter.write(metric.getKey(), value.getKey(), value.getValue().doubleValue());
+          } else {
+            exporter.write(metric.getKey(), value.getKey(), value.getValue().longValue());
+          }
+        }
+      }
+    }
   }
 
   /**
@@ -101,6 +101,17 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
     histogram.recordValue(latencyInMicros);
   }
 
+  /**
+   * Adds latencies recorded elsewhere, e.g. by another client process, to the total
+   * that is exported. Not to be mixed with {@link #measure(int)}.
+   */
+  public void add(Histogram latencies) {
+    if (totalHistogram == null) {
+      totalHistogram = new Histogram(3);
+    }
+    totalHistogram.add(latencies);
+  }
+
   /**
    * This is called from a main thread, on orderly termination.
    */
@@ -0,0 +1,207 @@
+package site.ycsb.measurements;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded log of the slowest operations, with their parameters, result count and
+ * optionally the query plan, to find out which queries make up the latency tail. An
+ * operation is slow when it takes longer than slowops.threshold.ms or than the
+ * slowops.percentile of the latencies of its type so far. Only the slowops.size slowest
+ * ones are kept and written at the end of the run.
+ */
+public final class SlowOpLog {
+
+  /** The latency in ms above which an operation is slow, 0 to not use a threshold. */
+  public static final String THRESHOLD_PROPERTY = "slowops.threshold.ms";
+  public static final String THRESHOLD_PROPERTY_DEFAULT = "0";
+
+  /** The latency percentile of its type above which an operation is slow, e.g. 99.9, 0 to not use one. */
+  public static final String PERCENTILE_PROPERTY = "slowops.percentile";
+  public static final String PERCENTILE_PROPERTY_DEFAULT = "0";
+
+  /** The number of slow operations kept. */
+  public static final String SIZE_PROPERTY = "slowops.size";
+  public static final String SIZE_PROPERTY_DEFAULT = "100";
+
+  /** Whether to fetch the query plan of the slow operations from the binding. */
+  public static final String EXPLAIN_PROPERTY = "slowops.explain";
+  public static final String EXPLAIN_PROPERTY_DEFAULT = "false";
+
+  /** The file the log is written to, stderr by default. */
+  public static final String FILE_PROPERTY = "slowops.file";
+
+  /** The latencies an operation type needs before its percentile is used. */
+  private static final int PERCENTILE_WARMUP = 1000;
+
+  /** How often, in operations, the percentile of a type is recomputed. */
+  private static final int PERCENTILE_REFRESH = 1000;
+
+  private static final long MAX_LATENCY_US = TimeUnit.HOURS.toMicros(1);
+
+  private static SlowOpLog singleton = null;
+  private static Properties slowopproperties = null;
+
+  public static void setProperties(Properties props) {
+    slowopproperties = props;
+  }
+
+  /**
+   * Return the singleton SlowOpLog object.
+   */
+  public static synchronized SlowOpLog getSlowOpLog() {
+    if (singleton == null) {
+      singleton = new SlowOpLog(slowopproperties == null ? new Properties() : slowopproperties);
+    }
+    return singleton;
+  }
+
+  /**
+   * One slow operation.
+   */
+  public static final class SlowOp {
+    private final String operation;
+    private final String parameters;
+    private final int results;
+    private final long latencyUs;
+    private final long timestamp;
+    private final String plan;
+
+    public SlowOp(String operation, String parameters, int results, long latencyUs, long timestamp, String plan) {
+      this.operation = operation;
+      this.parameters = parameters;
+      this.results = results;
+      this.latencyUs = latencyUs;
+      this.timestamp = timestamp;
+      this.plan = plan;
+    }
+  }
+
+  /**
+   * The latencies of one operation type and the percentile derived from them.
+   */
+  private static final class OpLatencies {
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(MAX_LATENCY_US, 3);
+    private final AtomicLong count = new AtomicLong();
+    private volatile long percentileUs = Long.MAX_VALUE;
+  }
+
+  private long thresholdUs;
+  private double percentile;
+  private int size;
+  private boolean explain;
+  private String file;
+
+  private final ConcurrentHashMap<String, OpLatencies> latencies = new ConcurrentHashMap<>();
+  private PriorityQueue<SlowOp> slowest;
+
+  private SlowOpLog(Properties props) {
+    configure(props);
+  }
+
+  private void configure(Properties props) {
+    thresholdUs = TimeUnit.MILLISECONDS.toMicros(
+        Long.parseLong(props.getProperty(THRESHOLD_PROPERTY, THRESHOLD_PROPERTY_DEFAULT)));
+    percentile = Double.parseDouble(props.getProperty(PERCENTILE_PROPERTY, PERCENTILE_PROPERTY_DEFAULT));
+    size = Integer.parseInt(props.getProperty(SIZE_PROPERTY, SIZE_PROPERTY_DEFAULT));
+    explain = Boolean.parseBoolean(props.getProperty(EXPLAIN_PROPERTY, EXPLAIN_PROPERTY_DEFAULT));
+    file = props.getProperty(FILE_PROPERTY);
+    slowest = new PriorityQueue<>(Math.max(1, size), Comparator.comparingLong(op -> op.latencyUs));
+  }
+
+  public boolean isEnabled() {
+    return size > 0 && (thresholdUs > 0 || percentile > 0);
+  }
+
+  public boolean isExplain() {
+    return explain;
+  }
+
+  /**
+   * Returns whether an operation of the given type and latency is slow, and with a
+   * percentile records the latency for the following operations.
+   */
+  public boolean isSlow(String operation, long latencyUs) {
+    boolean slow = thresholdUs > 0 && latencyUs > thresholdUs;
+    if (percentile > 0) {
+      OpLatencies op = latencies.computeIfAbsent(operation, k -> new OpLatencies());
+      slow |= latencyUs > op.percentileUs;
+      op.histogram.recordValue(Math.min(latencyUs, MAX_LATENCY_US));
+      long count = op.count.incrementAndGet();
+      if (count >= PERCENTILE_WARMUP && count % PERCENTILE_REFRESH == 0) {
+        op.percentileUs = op.histogram.getValueAtPercentile(percentile);
+      }
+    }
+    return slow;
+  }
+
+  /**
+   * Returns whether a slow operation of the given latency would be kept by {@link #add},
+   * so the caller fetches its plan only then. Once the log is full, an operation needs to
+   * be slower than the fastest one kept.
+   */
+  public synchronized boolean wouldKeep(long latencyUs) {
+    return slowest.size() < size || latencyUs > slowest.peek().latencyUs;
+  }
+
+  /**
+   * Adds a slow operation, dropping the fastest one kept once the log is full.
+   */
+  public synchronized void add(SlowOp op) {
+    slowest.add(op);
+    if (slowest.size() > size) {
+      slowest.poll();
+    }
+  }
+
+  /**
+   * Drops the kept operations and the latencies so far and takes the given properties,
+   * for the next phase of a run that reuses this object. No operation may be measured
+   * meanwhile.
+   */
+  public synchronized void reset(Properties props) {
+    latencies.clear();
+    configure(props);
+  }
+
+  /**
+   * Writes the kept operations, slowest first.
+   */
+  public synchronized void export() throws IOException {
+    if (!isEnabled()) {
+      return;
+    }
+    List<SlowOp> ops = new ArrayList<>(slowest);
+    ops.sort(Collections.reverseOrder(Comparator.comparingLong(op -> op.latencyUs)));
+
+    OutputStream out = file == null ? System.err : new FileOutputStream(file);
+    PrintStream print = new PrintStream(out, true, "UTF-8");
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+    print.println("[SLOW-OPS] " + ops.size() + " slowest operations");
+    for (SlowOp op : ops) {
+      print.println("[SLOW-OPS] " + format.format(new Date(op.timestamp)) + " " + op.operation + " "
+          + op.latencyUs + " us, " + op.results + " results, " + op.parameters);
+      if (op.plan != null) {
+        print.println(op.plan);
+      }
+    }
+    if (file != null) {
+      print.close();
+    }
+  }
+}
@@ -1,8 +1,31 @@
 package site.ycsb.db;
 
 public class GeoDefaultDBFlavor {
-    public String createScanKNNStatement(String table) {
-        StringBuilder scanKNN = new StringBuilder("SELECT * FROM ");
+    /**
+     * The columns returned by the scans. The payload column is left out when the scan
+     * projects no attributes, so those scans only transfer the coordinates.
+     */
+    public String selectColumns(boolean withFields) {
+        if (withFields) {
+            return "*";
+        }
+        return JdbcDBGeoClient.PRIMARY_KEY + ", " + JdbcDBGeoClient.LATITUDE_COLUMN + ", "
+                + JdbcDBGeoClient.LONGITUDE_COLUMN + ", " + JdbcDBGeoClient.TIME_OF_RECORD_COLUMN;
+    }
+
+    public String createReadStatement(String table) {
+        StringBuilder read = new StringBuilder("SELECT * FROM ");
+        read.append(table);
+        read.append(" WHERE ");
+        read.append(JdbcDBGeoClient.PRIMARY_KEY);
+        read.append(" = ?");
+        return read.toString();
+    }
+
+    public String createScanKNNStatement(String table, boolean withFields) {
+        StringBuilder scanKNN = new StringBuilder("SELECT ");
+        scanKNN.append(selectColumns(withFields));
+        scanKNN.append(" FROM ");
         scanKNN.append(table);
         scanKNN.append(" ORDER BY ST_SetSRID(ST_MakePoint(");
         scanKNN.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
@@ -18,8 +41,10 @@ public class GeoDefaultDBFlavor {
         return scanKNN.toString();
     }
 
-    public String createScanDistanceStatement(String table) {
-        StringBuilder scanDistance = new StringBuilder("SELECT * FROM ");
+    public String createScanDistanceStatement(String table, boolean withFields) {
+        StringBuilder scanDistance = new StringBuilder("SELECT ");
+        scanDistance.append(selectColumns(withFields));
+        scanDistance.append(" FROM ");
         scanDistance.append(table);
         scanDistance.append(" WHERE ST_DWithin(ST_SetSRID(ST_MakePoint(");
         scanDistance.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
@@ -33,8 +58,36 @@ public class GeoDefaultDBFlavor {
         return scanDistance.toString();
     }
 
-    public String createScanPolygonStatement(String table) {
-        StringBuilder scanPolygon = new StringBuilder("SELECT * FROM ");
+    /**
+     * Keyset pagination on (distance, id): each page continues after the last row of the
+     * previous one, so the database never skips over the earlier pages.
+     */
+    public String createScanDistancePageStatement(String table, boolean withFields) {
+        String point = "ST_SetSRID(ST_MakePoint(" + JdbcDBGeoClient.LONGITUDE_COLUMN + ", "
+                + JdbcDBGeoClient.LATITUDE_COLUMN + "), " + JdbcDBGeoClient.SRID + ")";
+        String center = "ST_SetSRID(ST_MakePoint(?, ?), " + JdbcDBGeoClient.SRID + ")";
+
+        StringBuilder scanDistancePage = new StringBuilder("SELECT ");
+        scanDistancePage.append(selectColumns(withFields));
+        scanDistancePage.append(", ST_Distance(").append(point).append(", ").append(center).append(") AS ");
+        scanDistancePage.append(JdbcDBGeoClient.DISTANCE_COLUMN);
+        scanDistancePage.append(" FROM ");
+        scanDistancePage.append(table);
+        scanDistancePage.append(" WHERE ST_DWithin(").append(point).append(", ").append(center).append(", ?)");
+        scanDistancePage.append(" AND (ST_Distance(").append(point).append(", ").append(center).append("), ");
+        scanDistancePage.append(JdbcDBGeoClient.PRIMARY_KEY);
+        scanDistancePage.append(") > (?, ?) ORDER BY ");
+        scanDistancePage.append(JdbcDBGeoClient.DISTANCE_COLUMN);
+        scanDistancePage.append(", ");
+        scanDistancePage.append(JdbcDBGeoClient.PRIMARY_KEY);
+        scanDistancePage.append(" LIMIT ?");
+        return scanDistancePage.toString();
+    }
+
+    public String createScanPolygonStatement(String table, boolean withFields) {
+        StringBuilder scanPolygon = new StringBuilder("SELECT ");
+        scanPolygon.append(selectColumns(withFields));
+        scanPolygon.append(" FROM ");
         scanPolygon.append(table);
         scanPolygon.append(" WHERE ST_Within(ST_SetSRID(ST_MakePoint(");
         scanPolygon.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
@@ -48,15 +101,198 @@ public class GeoDefaultDBFlavor {
         return scanPolygon.toString();
     }
 
-    public String createInsertStatement(String table) {
+    public String createScanCorridorStatement(String table, boolean withFields) {
+        StringBuilder scanCorridor = new StringBuilder("SELECT ");
+        scanCorridor.append(selectColumns(withFields));
+        scanCorridor.append(" FROM ");
+        scanCorridor.append(table);
+        scanCorridor.append(" WHERE ST_DWithin(ST_SetSRID(ST_MakePoint(");
+        scanCorridor.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
+        scanCorridor.append(", ");
+        scanCorridor.append(JdbcDBGeoClient.LATITUDE_COLUMN);
+        scanCorridor.append("), ");
+        scanCorridor.append(JdbcDBGeoClient.SRID);
+        scanCorridor.append("), ST_GeomFromText(?, ");
+        scanCorridor.append(JdbcDBGeoClient.SRID);
+        scanCorridor.append("), ?)");
+        return scanCorridor.toString();
+    }
+
+    public String createCountDistanceStatement(String table) {
+        StringBuilder countDistance = new StringBuilder("SELECT COUNT(*) FROM ");
+        countDistance.append(table);
+        countDistance.append(" WHERE ST_DWithin(ST_SetSRID(ST_MakePoint(");
+        countDistance.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
+        countDistance.append(", ");
+        countDistance.append(JdbcDBGeoClient.LATITUDE_COLUMN);
+        countDistance.append("), ");
+        countDistance.append(JdbcDBGeoClient.SRID);
+        countDistance.append("), ST_SetSRID(ST_MakePoint(?, ?), ");
+        countDistance.append(JdbcDBGeoClient.SRID);
+        countDistance.append("), ?)");
+        return countDistance.toString();
+    }
+
+    public String createCountPolygonStatement(String table) {
+        StringBuilder countPolygon = new StringBuilder("SELECT COUNT(*) FROM ");
+        countPolygon.append(table);
+        countPolygon.append(" WHERE ST_Within(ST_SetSRID(ST_MakePoint(");
+        countPolygon.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
+        countPolygon.append(", ");
+        countPolygon.append(JdbcDBGeoClient.LATITUDE_COLUMN);
+        countPolygon.append("), ");
+        countPolygon.append(JdbcDBGeoClient.SRID);
+        countPolygon.append("), ST_GeomFromText(?, ");
+        countPolygon.append(JdbcDBGeoClient.SRID);
+        countPolygon.append("))");
+        return countPolygon.toString();
+    }
+
+    /**
+     * The spatial index matches the point expression used by the scan statements,
+     * so the planner can use it for the KNN ordering and the distance/polygon filters.
+     */
+    public String createSpatialIndexStatement(String table) {
+        StringBuilder index = new StringBuilder("CREATE INDEX ");
+        index.append(table);
+        index.append("_GEOM_IDX ON ");
+        index.append(table);
+        index.append(" USING GIST (ST_SetSRID(ST_MakePoint(");
+        index.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
+        index.append(", ");
+        index.append(JdbcDBGeoClient.LATITUDE_COLUMN);
+        index.append("), ");
+        index.append(JdbcDBGeoClient.SRID);
+        index.append("))");
+        return index.toString();
+    }
+
+    /**
+     * The point count, the table size and the index size; the two sizes add up to
+     * pg_total_relation_size. The count is the planner's reltuples, which the ANALYZE of
+     * finishLoad refreshes, so the footprint does not scan the table.
+     */
+    public String createFootprintStatement(String table) {
+        StringBuilder footprint = new StringBuilder("SELECT GREATEST(reltuples, 0)::bigint, ");
+        footprint.append("pg_table_size(oid), pg_indexes_size(oid) FROM pg_class WHERE oid = '");
+        footprint.append(table);
+        footprint.append("'::regclass");
+        return footprint.toString();
+    }
+
+    public String createExplainStatement(String query) {
+        return "EXPLAIN (ANALYZE, BUFFERS) " + query;
+    }
+
+    public String createDatabaseStatsStatement() {
+        return "SELECT * FROM pg_stat_database WHERE datname = current_database()";
+    }
+
+    public String createBgWriterStatsStatement() {
+        return "SELECT * FROM pg_stat_bgwriter";
+    }
+
+    /**
+     * The geofence regions of a table live in a companion table; an insert trigger
+     * matches each new point against them and sends one notification per region.
+     */
+    public String fencesTable(String table) {
+        return table + "_FENCES";
+    }
+
+    /** LISTEN folds the unquoted channel name to lower case, so pg_notify must use it too. */
+    public String fenceChannel(String table) {
+        return (table + "_fences").toLowerCase();
+    }
+
+    public String createFencesTableStatement(String table) {
+        StringBuilder fences = new StringBuilder("CREATE TABLE ");
+        fences.append(fencesTable(table));
+        fences.append(" (");
+        fences.append(JdbcDBGeoClient.PRIMARY_KEY);
+        fences.append(" VARCHAR PRIMARY KEY, REGION geometry)");
+        return fences.toString();
+    }
+
+    public String createFenceTriggerFunctionStatement(String table) {
+        StringBuilder function = new StringBuilder("CREATE OR REPLACE FUNCTION ");
+        function.append(table);
+        function.append("_NOTIFY_FENCES() RETURNS trigger AS $$ BEGIN PERFORM pg_notify('");
+        function.append(fenceChannel(table));
+        function.append("', f.");
+        function.append(JdbcDBGeoClient.PRIMARY_KEY);
+        function.append(" || ' ' || NEW.");
+        function.append(JdbcDBGeoClient.PRIMARY_KEY);
+        function.append(") FROM ");
+        function.append(fencesTable(table));
+        function.append(" f WHERE ST_Within(ST_SetSRID(ST_MakePoint(NEW.");
+        function.append(JdbcDBGeoClient.LONGITUDE_COLUMN);
+        function.append(", NEW.");
+        function.append(JdbcDBGeoClient.LATITUDE_COLUMN);
+        function.append("), ");
+        function.append(JdbcDBGeoClient.SRID);
+        function.append("), f.REGION); RETURN NEW; END; $$ LANGUAGE plpgsql");
+        return function.toString();
+    }
+
+    public String createFenceTriggerStatement(String table) {
+        StringBuilder trigger = new StringBuilder("CREATE TRIGGER ");
+        trigger.append(table);
+        trigger.append("_FENCES_TRG AFTER INSERT ON ");
+        trigger.append(table);
+        trigger.append(" FOR EACH ROW EXECUTE PROCEDURE ");
+        trigger.append(table);
+        trigger.append("_NOTIFY_FENCES()");
+        return trigger.toString();
+    }
+
+    public String createInsertFenceStatement(String table) {
+        StringBuilder insert = new StringBuilder("INSERT INTO ");
+        insert.append(fencesTable(table));
+        insert.append(" (");
+        insert.append(JdbcDBGeoClient.PRIMARY_KEY);
+        insert.append(", REGION) VALUES(?, ST_GeomFromText(?, ");
+        insert.append(JdbcDBGeoClient.SRID);
+        insert.append(")) ON CONFLICT (");
+        insert.append(JdbcDBGeoClient.PRIMARY_KEY);
+        insert.append(") DO UPDATE SET REGION = EXCLUDED.REGION");
+        return insert.toString();
+    }
+
+    public String createDeleteFenceStatement(String table) {
+        StringBuilder delete = new StringBuilder("DELETE FROM ");
+        delete.append(fencesTable(table));
+        delete.append(" WHERE ");
+        delete.append(JdbcDBGeoClient.PRIMARY_KEY);
+        delete.append(" = ?");
+        return delete.toString();
+    }
+
+    /**
+     * The insert of a point. As an upsert, inserting a point again replaces the row, so a
+     * resumed load can repeat the inserts after its checkpoint.
+     */
+    public String createInsertStatement(String table, boolean upsert) {
         StringBuilder insert = new StringBuilder("INSERT INTO ")
                 .append(table)
                 .append(" (")
                 .append(JdbcDBGeoClient.PRIMARY_KEY).append(",")
                 .append(JdbcDBGeoClient.LONGITUDE_COLUMN).append(",")
                 .append(JdbcDBGeoClient.LATITUDE_COLUMN).append(",")
-                .append(JdbcDBGeoClient.TIME_OF_RECORD_COLUMN).append(")")
-                .append(" VALUES(?,?,?,?)");
+                .append(JdbcDBGeoClient.TIME_OF_RECORD_COLUMN).append(",")
+                .append(JdbcDBGeoClient.FIELDS_COLUMN).append(")")
+                .append(" VALUES(?,?,?,?,CAST(? AS JSONB))");
+        if (upsert) {
+            insert.append(" ON CONFLICT (").append(JdbcDBGeoClient.PRIMARY_KEY).append(") DO UPDATE SET ")
+                    .append(JdbcDBGeoClient.LONGITUDE_COLUMN).append(" = EXCLUDED.")
+                    .append(JdbcDBGeoClient.LONGITUDE_COLUMN).append(", ")
+                    .append(JdbcDBGeoClient.LATITUDE_COLUMN).append(" = EXCLUDED.")
+                    .append(JdbcDBGeoClient.LATITUDE_COLUMN).append(", ")
+                    .append(JdbcDBGeoClient.TIME_OF_RECORD_COLUMN).append(" = EXCLUDED.")
+                    .append(JdbcDBGeoClient.TIME_OF_RECORD_COLUMN).append(", ")
+                    .append(JdbcDBGeoClient.FIELDS_COLUMN).append(" = EXCLUDED.")
+                    .append(JdbcDBGeoClient.FIELDS_COLUMN);
+        }
         return insert.toString();
     }
 }
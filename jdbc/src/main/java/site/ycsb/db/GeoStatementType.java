@@ -0,0 +1,74 @@
+package site.ycsb.db;
+
+/**
+ * The statement type for the prepared statements cached by {@link JdbcDBGeoClient}.
+ * Statements embed the table name and the selected columns, so they are cached per
+ * type, table and projection.
+ */
+public class GeoStatementType {
+
+    enum Type {
+        INSERT(1), SCAN(2), SCAN_KNN(3),
+        SCAN_DISTANCE(4), SCAN_POLYGON(5), READ(6), SCAN_CORRIDOR(7), SCAN_DISTANCE_PAGE(8),
+        COUNT_DISTANCE(9), COUNT_POLYGON(10);
+
+        private final int internalType;
+
+        private Type(int type) {
+            internalType = type;
+        }
+
+        int getHashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + internalType;
+            return result;
+        }
+    }
+
+    private final Type type;
+    private final String tableName;
+    private final boolean withFields;
+
+    public GeoStatementType(Type type, String tableName) {
+        this(type, tableName, true);
+    }
+
+    public GeoStatementType(Type type, String tableName, boolean withFields) {
+        this.type = type;
+        this.tableName = tableName;
+        this.withFields = withFields;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((type == null) ? 0 : type.getHashCode());
+        result = prime * result + ((tableName == null) ? 0 : tableName.hashCode());
+        result = prime * result + (withFields ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        GeoStatementType other = (GeoStatementType) obj;
+        if (type != other.type || withFields != other.withFields) {
+            return false;
+        }
+        if (tableName == null) {
+            return other.tableName == null;
+        }
+        return tableName.equals(other.tableName);
+    }
+}
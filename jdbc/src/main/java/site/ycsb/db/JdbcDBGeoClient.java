@@ -1,10 +1,15 @@
 package site.ycsb.db;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -13,12 +18,26 @@ import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
 
 import site.ycsb.ByteIterator;
 import site.ycsb.DB;
 import site.ycsb.DBException;
 import site.ycsb.Status;
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoFenceListener;
+import site.ycsb.geodata.GeoFenceSubscription;
+import site.ycsb.geodata.GeoFootprint;
+import site.ycsb.geodata.GeoPage;
+import site.ycsb.geodata.GeoPayload;
 import site.ycsb.geodata.GeoPoint;
+import site.ycsb.geodata.GeoServerStats;
+import site.ycsb.geodata.LoadCheckpoint;
 
 public class JdbcDBGeoClient extends DB {
 
@@ -34,33 +53,40 @@ public class JdbcDBGeoClient extends DB {
     /** The password to use for establishing the connection. */
     public static final String CONNECTION_PASSWD = "db.passwd";
 
+    /**
+     * Whether reset installs the geofence table and insert trigger used by subscribe.
+     * Off by default, the trigger adds work to every insert.
+     */
+    public static final String GEOFENCES = "db.geofences";
+
     public static final String PRIMARY_KEY = "ID";
     public static final String LONGITUDE_COLUMN = "LONGITUDE";
     public static final String LATITUDE_COLUMN = "LATITUDE";
     public static final String TIME_OF_RECORD_COLUMN = "TIME_OF_RECORD";
+    /** The payload attributes of a point, as one JSON document. */
+    public static final String FIELDS_COLUMN = "FIELDS";
+    /** The distance to the center computed by the paginated distance scan. */
+    public static final String DISTANCE_COLUMN = "DISTANCE";
 
     // Spatial Reference System Identifier
     public static final String SRID = "4326";
 
-    enum Type {
-        INSERT(1), SCAN(2), SCAN_KNN(3),
-        SCAN_DISTANCE(4), SCAN_POLYGON(5);
-
-        private final int internalType;
-
-        private Type(int type) {
-            internalType = type;
-        }
-    }
-
     GeoDefaultDBFlavor geoDBFlavor;
 
     private Connection conn;
     private boolean initialized = false;
     private Properties props;
     private static final String DEFAULT_PROP = "";
-    ConcurrentMap<Type, PreparedStatement> cachedStatements;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    ConcurrentMap<GeoStatementType, PreparedStatement> cachedStatements;
     long numRowsInBatch = 0;
+    private boolean geofences;
+    private boolean upsert;
+    private int queryTimeoutSeconds;
+    private final Map<String, GeoFenceSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    /** The statement of the last query, its parameters still bound, for explainLast. */
+    private PreparedStatement lastStatement;
 
     public JdbcDBGeoClient() {
         geoDBFlavor = new GeoDefaultDBFlavor();
@@ -87,7 +113,12 @@ public class JdbcDBGeoClient extends DB {
             conn = DriverManager.getConnection(url, user, passwd);
             conn.setAutoCommit(true);
 
-            cachedStatements = new ConcurrentHashMap<Type, PreparedStatement>();
+            cachedStatements = new ConcurrentHashMap<GeoStatementType, PreparedStatement>();
+            geofences = Boolean.parseBoolean(props.getProperty(GEOFENCES, "false"));
+            upsert = LoadCheckpoint.isUpsert(props);
+            // JDBC query timeouts are whole seconds, the wrapper enforces the exact timeout.
+            long opTimeoutMs = Long.parseLong(props.getProperty(OP_TIMEOUT_PROPERTY, OP_TIMEOUT_PROPERTY_DEFAULT));
+            queryTimeoutSeconds = (int) TimeUnit.MILLISECONDS.toSeconds(opTimeoutMs + 999);
         } catch (ClassNotFoundException e) {
             System.err.println("Error in initializing the JDBS driver: " + e);
             throw new DBException(e);
@@ -104,6 +135,11 @@ public class JdbcDBGeoClient extends DB {
 
     @Override
     public void cleanup() throws DBException {
+        for (GeoFenceSubscription subscription : subscriptions.values()) {
+            subscription.close();
+        }
+        subscriptions.clear();
+
         try {
             conn.close();
         } catch (SQLException e) {
@@ -124,12 +160,27 @@ public class JdbcDBGeoClient extends DB {
                     "ID VARCHAR PRIMARY KEY," +
                     "TIME_OF_RECORD DATE," +
                     "LATITUDE FLOAT," +
-                    "LONGITUDE FLOAT" +
+                    "LONGITUDE FLOAT," +
+                    "FIELDS JSONB" +
                     ")";
 
             stmt = conn.prepareStatement(createTableQuery);
             stmt.execute();
-            
+
+            stmt = conn.prepareStatement("DROP TABLE IF EXISTS " + geoDBFlavor.fencesTable(table));
+            stmt.execute();
+
+            if (geofences) {
+                stmt = conn.prepareStatement(geoDBFlavor.createFencesTableStatement(table));
+                stmt.execute();
+
+                stmt = conn.prepareStatement(geoDBFlavor.createFenceTriggerFunctionStatement(table));
+                stmt.execute();
+
+                stmt = conn.prepareStatement(geoDBFlavor.createFenceTriggerStatement(table));
+                stmt.execute();
+            }
+
             return Status.OK;
         } catch (SQLException e) {
             System.err.println("Error in processing reset of table " + table + ": " + e);
@@ -138,14 +189,155 @@ public class JdbcDBGeoClient extends DB {
     }
 
     @Override
-    public Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> result) {
+    public Status createSpatialIndex(String table) {
+        try {
+            PreparedStatement stmt = conn.prepareStatement(geoDBFlavor.createSpatialIndexStatement(table));
+            stmt.execute();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing spatial index creation of table " + table + ": " + e);
+            return Status.ERROR;
+        }
+    }
+
+    /**
+     * Refreshes the planner statistics, which are stale after a bulk load.
+     */
+    @Override
+    public Status finishLoad(String table) {
+        try {
+            PreparedStatement stmt = conn.prepareStatement("ANALYZE " + table);
+            stmt.execute();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing analyze of table " + table + ": " + e);
+            return Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status footprint(String table, GeoFootprint result) {
+        try (PreparedStatement stmt = conn.prepareStatement(geoDBFlavor.createFootprintStatement(table));
+             ResultSet resultSet = stmt.executeQuery()) {
+            resultSet.next();
+            result.setPoints(resultSet.getLong(1));
+            result.setDataSize(resultSet.getLong(2));
+            result.setIndexSize(resultSet.getLong(3));
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing footprint of table " + table + ": " + e);
+            return Status.ERROR;
+        }
+    }
+
+    /**
+     * Samples pg_stat_database and pg_stat_bgwriter. Every integer column is taken, as
+     * they differ between server versions; all but the backend count are counters.
+     */
+    @Override
+    public Status serverStats(GeoServerStats result) {
         try {
-            PreparedStatement stmt = cachedStatements.get(Type.SCAN_KNN);
+            readStats(geoDBFlavor.createDatabaseStatsStatement(), "DB_", result);
+            readStats(geoDBFlavor.createBgWriterStatsStatement(), "BGWRITER_", result);
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing server stats: " + e);
+            return Status.ERROR;
+        }
+    }
+
+    private void readStats(String query, String prefix, GeoServerStats result) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet resultSet = stmt.executeQuery()) {
+            if (!resultSet.next()) {
+                return;
+            }
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                int type = metaData.getColumnType(i);
+                if (type != Types.BIGINT && type != Types.INTEGER && type != Types.SMALLINT) {
+                    continue;
+                }
+                String name = prefix + metaData.getColumnName(i).toUpperCase();
+                if ("numbackends".equals(metaData.getColumnName(i))) {
+                    result.gauge(name, resultSet.getLong(i));
+                } else if (!"datid".equals(metaData.getColumnName(i))) {
+                    result.counter(name, resultSet.getLong(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the last query again under EXPLAIN (ANALYZE, BUFFERS). The PostgreSQL driver
+     * prints a prepared statement with its bound parameters.
+     */
+    @Override
+    public Status explainLast(StringBuilder plan) {
+        if (lastStatement == null) {
+            return Status.NOT_FOUND;
+        }
+        try {
+            Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery(geoDBFlavor.createExplainStatement(lastStatement.toString()));
+            while (resultSet.next()) {
+                plan.append(resultSet.getString(1)).append('\n');
+            }
+
+            resultSet.close();
+            stmt.close();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing explain: " + e);
+            return Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status readPoint(String table, String key, GeoPoint result) {
+        try {
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.READ, table);
+            PreparedStatement stmt = cachedStatements.get(statementType);
 
             if (stmt == null) {
-                String query = geoDBFlavor.createScanKNNStatement(table);
-                PreparedStatement ps = conn.prepareStatement(query);
-                cachedStatements.putIfAbsent(Type.SCAN_KNN, ps);
+                String query = geoDBFlavor.createReadStatement(table);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
+                stmt = ps;
+            }
+
+            stmt.setString(1, key);
+
+            lastStatement = stmt;
+            ResultSet resultSet = stmt.executeQuery();
+
+            if (!resultSet.next()) {
+                resultSet.close();
+                return Status.NOT_FOUND;
+            }
+
+            readGeoPoint(resultSet, null, result);
+
+            resultSet.close();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing read of table " + table + ": " + e);
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+            ArrayList<GeoPoint> result) {
+        try {
+            boolean withFields = fields == null || !fields.isEmpty();
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.SCAN_KNN, table, withFields);
+            PreparedStatement stmt = cachedStatements.get(statementType);
+
+            if (stmt == null) {
+                String query = geoDBFlavor.createScanKNNStatement(table, withFields);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
                 stmt = ps;
             }
 
@@ -153,14 +345,12 @@ public class JdbcDBGeoClient extends DB {
             stmt.setDouble(2, lat);
             stmt.setInt(3, k);
 
+            lastStatement = stmt;
             ResultSet resultSet = stmt.executeQuery();
 
             while (resultSet.next()) {
                 GeoPoint gp = new GeoPoint();
-                gp.setId(resultSet.getString(PRIMARY_KEY));
-                gp.setLatitude(resultSet.getDouble(LATITUDE_COLUMN));
-                gp.setLongitude(resultSet.getDouble(LONGITUDE_COLUMN));
-                gp.setTimeOfRecord(resultSet.getTimestamp(TIME_OF_RECORD_COLUMN));
+                readGeoPoint(resultSet, fields, gp);
 
                 result.add(gp);
             }
@@ -169,20 +359,23 @@ public class JdbcDBGeoClient extends DB {
             return Status.OK;
         } catch (SQLException e) {
             System.err.println("Error in processing scanKNN of table " + table + ": " + e);
-            return Status.ERROR;
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
         }
     }
 
     @Override
     public Status scanByDistance(String table, double lat, double lgn, double maxDistance,
-            ArrayList<GeoPoint> result) {
+            Set<String> fields, ArrayList<GeoPoint> result) {
         try {
-            PreparedStatement stmt = cachedStatements.get(Type.SCAN_DISTANCE);
+            boolean withFields = fields == null || !fields.isEmpty();
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.SCAN_DISTANCE, table,
+                    withFields);
+            PreparedStatement stmt = cachedStatements.get(statementType);
 
             if (stmt == null) {
-                String query = geoDBFlavor.createScanDistanceStatement(table);
-                PreparedStatement ps = conn.prepareStatement(query);
-                cachedStatements.putIfAbsent(Type.SCAN_DISTANCE, ps);
+                String query = geoDBFlavor.createScanDistanceStatement(table, withFields);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
                 stmt = ps;
             }
 
@@ -192,14 +385,12 @@ public class JdbcDBGeoClient extends DB {
             stmt.setDouble(2, lat);
             stmt.setDouble(3, (maxDistanceInDegrees));
 
+            lastStatement = stmt;
             ResultSet resultSet = stmt.executeQuery();
 
             while (resultSet.next()) {
                 GeoPoint gp = new GeoPoint();
-                gp.setId(resultSet.getString(PRIMARY_KEY));
-                gp.setLatitude(resultSet.getDouble(LATITUDE_COLUMN));
-                gp.setLongitude(resultSet.getDouble(LONGITUDE_COLUMN));
-                gp.setTimeOfRecord(resultSet.getTimestamp(TIME_OF_RECORD_COLUMN));
+                readGeoPoint(resultSet, fields, gp);
 
                 result.add(gp);
             }
@@ -208,44 +399,101 @@ public class JdbcDBGeoClient extends DB {
             return Status.OK;
         } catch (SQLException e) {
             System.err.println("Error in processing scan distance of table " + table + ": " + e);
-            return Status.ERROR;
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
         }
     }
 
     @Override
-    public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices,
-            ArrayList<GeoPoint> result) {
+    public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+            String continuation, Set<String> fields, GeoPage page) {
         try {
-            PreparedStatement stmt = cachedStatements.get(Type.SCAN_POLYGON);
+            boolean withFields = fields == null || !fields.isEmpty();
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.SCAN_DISTANCE_PAGE, table,
+                    withFields);
+            PreparedStatement stmt = cachedStatements.get(statementType);
 
             if (stmt == null) {
-                String query = geoDBFlavor.createScanPolygonStatement(table);
-                PreparedStatement ps = conn.prepareStatement(query);
-                cachedStatements.putIfAbsent(Type.SCAN_POLYGON, ps);
+                String query = geoDBFlavor.createScanDistancePageStatement(table, withFields);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
                 stmt = ps;
             }
 
-            String polygon = "POLYGON((";
+            // The continuation is the distance and the id of the last row of the previous page.
+            double lastDistance = -1;
+            String lastId = "";
+            if (continuation != null) {
+                int separator = continuation.indexOf(' ');
+                if (separator < 0) {
+                    return Status.BAD_REQUEST;
+                }
+                lastDistance = Double.parseDouble(continuation.substring(0, separator));
+                lastId = continuation.substring(separator + 1);
+            }
 
-            for (GeoPoint gp : polygonVertices) {
-                String latitude = Double.toString(gp.getLatitude());
-                String longitude = Double.toString(gp.getLongitude());
+            double maxDistanceInDegrees = maxDistance / 111.32;
 
-                polygon += longitude + " " + latitude + ",";
+            stmt.setDouble(1, lgn);
+            stmt.setDouble(2, lat);
+            stmt.setDouble(3, lgn);
+            stmt.setDouble(4, lat);
+            stmt.setDouble(5, maxDistanceInDegrees);
+            stmt.setDouble(6, lgn);
+            stmt.setDouble(7, lat);
+            stmt.setDouble(8, lastDistance);
+            stmt.setString(9, lastId);
+            // One row more than the page tells whether another page follows.
+            stmt.setInt(10, pageSize + 1);
+
+            lastStatement = stmt;
+            ResultSet resultSet = stmt.executeQuery();
+
+            String next = null;
+            while (resultSet.next()) {
+                if (page.getPoints().size() == pageSize) {
+                    GeoPoint last = page.getPoints().get(pageSize - 1);
+                    next = lastDistance + " " + last.getId();
+                    break;
+                }
+                GeoPoint gp = new GeoPoint();
+                readGeoPoint(resultSet, fields, gp);
+                lastDistance = resultSet.getDouble(DISTANCE_COLUMN);
+
+                page.getPoints().add(gp);
             }
+            page.setContinuation(next);
+
+            resultSet.close();
+            return Status.OK;
+        } catch (SQLException | NumberFormatException e) {
+            System.err.println("Error in processing scan distance page of table " + table + ": " + e);
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices,
+            Set<String> fields, ArrayList<GeoPoint> result) {
+        try {
+            boolean withFields = fields == null || !fields.isEmpty();
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.SCAN_POLYGON, table,
+                    withFields);
+            PreparedStatement stmt = cachedStatements.get(statementType);
 
-            polygon = polygon.substring(0, polygon.length() - 1);
-            polygon += "))";
+            if (stmt == null) {
+                String query = geoDBFlavor.createScanPolygonStatement(table, withFields);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
+                stmt = ps;
+            }
 
-            stmt.setString(1, polygon);
+            stmt.setString(1, polygonText(polygonVertices));
+            lastStatement = stmt;
             ResultSet resultSet = stmt.executeQuery();
 
             while (resultSet.next()) {
                 GeoPoint gp = new GeoPoint();
-                gp.setId(resultSet.getString(PRIMARY_KEY));
-                gp.setLatitude(resultSet.getDouble(LATITUDE_COLUMN));
-                gp.setLongitude(resultSet.getDouble(LONGITUDE_COLUMN));
-                gp.setTimeOfRecord(resultSet.getTimestamp(TIME_OF_RECORD_COLUMN));
+                readGeoPoint(resultSet, fields, gp);
 
                 result.add(gp);
             }
@@ -254,6 +502,190 @@ public class JdbcDBGeoClient extends DB {
             return Status.OK;
         } catch (SQLException e) {
             System.err.println("Error in processing scann polygon of table " + table + ": " + e);
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm,
+            Set<String> fields, ArrayList<GeoPoint> result) {
+        try {
+            boolean withFields = fields == null || !fields.isEmpty();
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.SCAN_CORRIDOR, table,
+                    withFields);
+            PreparedStatement stmt = cachedStatements.get(statementType);
+
+            if (stmt == null) {
+                String query = geoDBFlavor.createScanCorridorStatement(table, withFields);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
+                stmt = ps;
+            }
+
+            StringBuilder lineString = new StringBuilder("LINESTRING(");
+            for (int i = 0; i < polyline.size(); i++) {
+                if (i > 0) {
+                    lineString.append(",");
+                }
+                lineString.append(polyline.get(i).getLongitude()).append(" ").append(polyline.get(i).getLatitude());
+            }
+            lineString.append(")");
+
+            double bufferInDegrees = bufferKm / 111.32;
+
+            stmt.setString(1, lineString.toString());
+            stmt.setDouble(2, bufferInDegrees);
+
+            lastStatement = stmt;
+            ResultSet resultSet = stmt.executeQuery();
+
+            while (resultSet.next()) {
+                GeoPoint gp = new GeoPoint();
+                readGeoPoint(resultSet, fields, gp);
+
+                result.add(gp);
+            }
+
+            resultSet.close();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing scan corridor of table " + table + ": " + e);
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount result) {
+        try {
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.COUNT_DISTANCE, table);
+            PreparedStatement stmt = cachedStatements.get(statementType);
+
+            if (stmt == null) {
+                String query = geoDBFlavor.createCountDistanceStatement(table);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
+                stmt = ps;
+            }
+
+            double maxDistanceInDegrees = maxDistance / 111.32;
+
+            stmt.setDouble(1, lgn);
+            stmt.setDouble(2, lat);
+            stmt.setDouble(3, maxDistanceInDegrees);
+
+            lastStatement = stmt;
+            ResultSet resultSet = stmt.executeQuery();
+            resultSet.next();
+            result.setCount(resultSet.getLong(1));
+
+            resultSet.close();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing count distance of table " + table + ": " + e);
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
+        try {
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.COUNT_POLYGON, table);
+            PreparedStatement stmt = cachedStatements.get(statementType);
+
+            if (stmt == null) {
+                String query = geoDBFlavor.createCountPolygonStatement(table);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
+                stmt = ps;
+            }
+
+            stmt.setString(1, polygonText(polygonVertices));
+
+            lastStatement = stmt;
+            ResultSet resultSet = stmt.executeQuery();
+            resultSet.next();
+            result.setCount(resultSet.getLong(1));
+
+            resultSet.close();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing count polygon of table " + table + ": " + e);
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status subscribe(String table, String subscriptionId, ArrayList<GeoPoint> region,
+            GeoFenceListener listener) {
+        if (!geofences) {
+            System.err.println("Geofences are not installed, set " + GEOFENCES + "=true for the load phase.");
+            return Status.NOT_IMPLEMENTED;
+        }
+        try {
+            // Notifications are delivered per connection, so each subscription listens on its own.
+            Connection listenConn = DriverManager.getConnection(props.getProperty(CONNECTION_URL, DEFAULT_PROP),
+                    props.getProperty(CONNECTION_USER, DEFAULT_PROP),
+                    props.getProperty(CONNECTION_PASSWD, DEFAULT_PROP));
+            listenConn.setAutoCommit(true);
+
+            Statement listen = listenConn.createStatement();
+            listen.execute("LISTEN " + geoDBFlavor.fenceChannel(table));
+            listen.close();
+
+            PreparedStatement stmt = conn.prepareStatement(geoDBFlavor.createInsertFenceStatement(table));
+            stmt.setString(1, subscriptionId);
+            stmt.setString(2, polygonText(region));
+            stmt.executeUpdate();
+            stmt.close();
+
+            PGConnection pgConn = listenConn.unwrap(PGConnection.class);
+            GeoFenceSubscription subscription = new GeoFenceSubscription("jdbc-" + subscriptionId) {
+                @Override
+                protected void poll() throws SQLException {
+                    PGNotification[] notifications = pgConn.getNotifications(100);
+                    if (notifications == null) {
+                        return;
+                    }
+                    // The payload is "<fence id> <point key>", all fences of the table share the channel.
+                    for (PGNotification notification : notifications) {
+                        String[] payload = notification.getParameter().split(" ", 2);
+                        if (payload.length == 2 && payload[0].equals(subscriptionId)) {
+                            listener.onEnter(subscriptionId, payload[1]);
+                        }
+                    }
+                }
+
+                @Override
+                protected void onClose() throws SQLException {
+                    listenConn.close();
+                }
+            };
+            subscriptions.put(subscriptionId, subscription);
+            subscription.start();
+
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing subscribe to table " + table + ": " + e);
+            return Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status unsubscribe(String table, String subscriptionId) {
+        GeoFenceSubscription subscription = subscriptions.remove(subscriptionId);
+        if (subscription == null) {
+            return Status.NOT_FOUND;
+        }
+        subscription.close();
+
+        try {
+            PreparedStatement stmt = conn.prepareStatement(geoDBFlavor.createDeleteFenceStatement(table));
+            stmt.setString(1, subscriptionId);
+            stmt.executeUpdate();
+            stmt.close();
+            return Status.OK;
+        } catch (SQLException e) {
+            System.err.println("Error in processing unsubscribe from table " + table + ": " + e);
             return Status.ERROR;
         }
     }
@@ -261,12 +693,13 @@ public class JdbcDBGeoClient extends DB {
     @Override
     public Status insert(String table, String key, GeoPoint gp) {
         try {
-            PreparedStatement stmt = cachedStatements.get(Type.INSERT);
+            GeoStatementType statementType = new GeoStatementType(GeoStatementType.Type.INSERT, table);
+            PreparedStatement stmt = cachedStatements.get(statementType);
 
             if (stmt == null) {
-                String query = geoDBFlavor.createInsertStatement(table);
-                PreparedStatement ps = conn.prepareStatement(query);
-                cachedStatements.putIfAbsent(Type.INSERT, ps);
+                String query = geoDBFlavor.createInsertStatement(table, upsert);
+                PreparedStatement ps = prepare(query);
+                cachedStatements.putIfAbsent(statementType, ps);
                 stmt = ps;
             }
 
@@ -274,6 +707,7 @@ public class JdbcDBGeoClient extends DB {
             stmt.setDouble(2, gp.getLongitude());
             stmt.setDouble(3, gp.getLatitude());
             stmt.setDate(4, new java.sql.Date(gp.getTimeOfRecord().getTime()));
+            stmt.setString(5, fieldsToJson(gp.getFields()));
 
             // Normal update
             int result = stmt.executeUpdate();
@@ -286,8 +720,84 @@ public class JdbcDBGeoClient extends DB {
             return Status.UNEXPECTED_STATE;
         } catch (SQLException e) {
             System.err.println("Error in processing insert to table: " + table + e);
-            return Status.ERROR;
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    /**
+     * Prepares the statement of an operation, which the driver cancels after geo.optimeout.ms.
+     */
+    private PreparedStatement prepare(String query) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(query);
+        ps.setQueryTimeout(queryTimeoutSeconds);
+        return ps;
+    }
+
+    /**
+     * Whether the driver cancelled the statement for its query timeout. PostgreSQL reports
+     * it as query_canceled rather than with a SQLTimeoutException.
+     */
+    private static boolean timedOut(Exception e) {
+        return e instanceof SQLTimeoutException
+                || (e instanceof SQLException && "57014".equals(((SQLException) e).getSQLState()));
+    }
+
+    /**
+     * Reads the current row into gp, with the payload attributes selected by fields.
+     */
+    private static void readGeoPoint(ResultSet resultSet, Set<String> fields, GeoPoint gp) throws SQLException {
+        gp.setId(resultSet.getString(PRIMARY_KEY));
+        gp.setLatitude(resultSet.getDouble(LATITUDE_COLUMN));
+        gp.setLongitude(resultSet.getDouble(LONGITUDE_COLUMN));
+        gp.setTimeOfRecord(resultSet.getTimestamp(TIME_OF_RECORD_COLUMN));
+
+        if (fields != null && fields.isEmpty()) {
+            return;
         }
+        String json = resultSet.getString(FIELDS_COLUMN);
+        if (json == null) {
+            return;
+        }
+        try {
+            Map<String, Object> values = MAPPER.readValue(json, new TypeReference<Map<String, Object>>() { });
+            for (Map.Entry<String, Object> value : values.entrySet()) {
+                if (GeoPayload.isProjected(fields, value.getKey())) {
+                    gp.getFields().put(value.getKey(), GeoPayload.fromValue(value.getValue()));
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("Invalid payload of " + gp.getId(), e);
+        }
+    }
+
+    private static String fieldsToJson(Map<String, ByteIterator> fields) throws SQLException {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, ByteIterator> field : fields.entrySet()) {
+            values.put(field.getKey(), GeoPayload.toValue(field.getValue()));
+        }
+        try {
+            return MAPPER.writeValueAsString(values);
+        } catch (IOException e) {
+            throw new SQLException("Could not encode the payload", e);
+        }
+    }
+
+    private static String polygonText(ArrayList<GeoPoint> polygonVertices) {
+        String polygon = "POLYGON((";
+
+        for (GeoPoint gp : polygonVertices) {
+            String latitude = Double.toString(gp.getLatitude());
+            String longitude = Double.toString(gp.getLongitude());
+
+            polygon += longitude + " " + latitude + ",";
+        }
+
+        polygon = polygon.substring(0, polygon.length() - 1);
+        polygon += "))";
+        return polygon;
     }
 
     @Override
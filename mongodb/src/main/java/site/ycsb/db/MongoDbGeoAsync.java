@@ -0,0 +1,173 @@
+package site.ycsb.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.ReplaceOptions;
+
+import site.ycsb.Status;
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoPoint;
+
+/**
+ * Runs the asynchronous operations of the {@link MongoDbGeoClient} instances on the async
+ * driver, which sends them over its own connection pool without a thread per operation.
+ * The operations use the same documents and filters as the synchronous ones; a reply
+ * completes the future of its operation on a thread of the driver.
+ */
+final class MongoDbGeoAsync {
+
+    private final MongoClient client;
+    private final MongoDatabase database;
+    private final boolean upsert;
+    private final long opTimeoutMs;
+
+    MongoDbGeoAsync(String url, String databaseName, ReadPreference readPreference, WriteConcern writeConcern,
+            boolean upsert, long opTimeoutMs) {
+        this.client = MongoClients.create(url);
+        this.database = client.getDatabase(databaseName)
+                .withReadPreference(readPreference)
+                .withWriteConcern(writeConcern);
+        this.upsert = upsert;
+        this.opTimeoutMs = opTimeoutMs;
+    }
+
+    void close() {
+        client.close();
+    }
+
+    /**
+     * Starts an operation and returns its status once the driver replied. A failure to start
+     * it, e.g. on a polygon the driver rejects, fails the operation right away.
+     */
+    private static <T> CompletableFuture<Status> run(Consumer<SingleResultCallback<T>> start,
+            Function<T, Status> complete) {
+        CompletableFuture<Status> future = new CompletableFuture<>();
+        try {
+            start.accept((reply, error) -> {
+                if (error != null) {
+                    System.err.println(error.toString());
+                    future.complete(MongoDbGeoClient.timedOut(error) ? Status.TIMEOUT : Status.ERROR);
+                    return;
+                }
+                try {
+                    future.complete(complete.apply(reply));
+                } catch (RuntimeException e) {
+                    System.err.println(e.toString());
+                    future.complete(Status.ERROR);
+                }
+            });
+        } catch (RuntimeException e) {
+            System.err.println(e.toString());
+            future.complete(Status.ERROR);
+        }
+        return future;
+    }
+
+    /**
+     * Finds the documents of a query, which the server aborts after geo.optimeout.ms.
+     */
+    private FindIterable<Document> find(String table, Bson filter, Set<String> fields) {
+        return database.getCollection(table).find(filter).projection(MongoDbGeoClient.projection(fields))
+                .maxTime(opTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads all documents of a query into the result.
+     */
+    private static CompletableFuture<Status> scan(Supplier<FindIterable<Document>> docs,
+            ArrayList<GeoPoint> results) {
+        return MongoDbGeoAsync.<List<Document>>run(callback -> docs.get().into(new ArrayList<>(), callback),
+                found -> {
+                    for (Document doc : found) {
+                        GeoPoint geoPoint = new GeoPoint();
+                        MongoDbGeoClient.readGeoPoint(doc, geoPoint);
+
+                        results.add(geoPoint);
+                    }
+                    return Status.OK;
+                });
+    }
+
+    /**
+     * Counts the documents of a query, which the server aborts after geo.optimeout.ms.
+     */
+    private CompletableFuture<Status> count(String table, Supplier<Bson> filter, GeoCount result) {
+        return MongoDbGeoAsync.<Long>run(callback -> database.getCollection(table).countDocuments(filter.get(),
+                new CountOptions().maxTime(opTimeoutMs, TimeUnit.MILLISECONDS), callback), count -> {
+                    result.setCount(count);
+                    return Status.OK;
+                });
+    }
+
+    CompletableFuture<Status> insert(String table, String key, GeoPoint gp) {
+        return MongoDbGeoAsync.<Void>run(callback -> {
+            MongoCollection<Document> collection = database.getCollection(table);
+            Document toInsert = MongoDbGeoClient.toDocument(key, gp);
+            if (upsert) {
+                collection.replaceOne(MongoDbGeoClient.keyFilter(key), toInsert, new ReplaceOptions().upsert(true),
+                        (updated, error) -> callback.onResult(null, error));
+            } else {
+                collection.insertOne(toInsert, callback);
+            }
+        }, inserted -> Status.OK);
+    }
+
+    CompletableFuture<Status> readPoint(String table, String key, GeoPoint result) {
+        return MongoDbGeoAsync.<Document>run(callback -> find(table, MongoDbGeoClient.keyFilter(key), null)
+                .first(callback), doc -> {
+                    if (doc == null) {
+                        return Status.NOT_FOUND;
+                    }
+                    MongoDbGeoClient.readGeoPoint(doc, result);
+                    return Status.OK;
+                });
+    }
+
+    CompletableFuture<Status> scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+            ArrayList<GeoPoint> results) {
+        return scan(() -> find(table, MongoDbGeoClient.knnFilter(lat, lgn), fields).limit(k), results);
+    }
+
+    CompletableFuture<Status> scanByDistance(String table, double lat, double lgn, double maxDistance,
+            Set<String> fields, ArrayList<GeoPoint> results) {
+        return scan(() -> find(table, MongoDbGeoClient.distanceFilter(lat, lgn, maxDistance), fields), results);
+    }
+
+    CompletableFuture<Status> scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices,
+            Set<String> fields, ArrayList<GeoPoint> results) {
+        return scan(() -> find(table, MongoDbGeoClient.polygonFilter(polygonVertices), fields), results);
+    }
+
+    CompletableFuture<Status> scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm,
+            Set<String> fields, ArrayList<GeoPoint> results) {
+        return scan(() -> find(table, MongoDbGeoClient.corridorFilter(polyline, bufferKm), fields), results);
+    }
+
+    CompletableFuture<Status> countByDistance(String table, double lat, double lgn, double maxDistance,
+            GeoCount result) {
+        return count(table, () -> MongoDbGeoClient.countDistanceFilter(lat, lgn, maxDistance), result);
+    }
+
+    CompletableFuture<Status> countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
+        return count(table, () -> MongoDbGeoClient.polygonFilter(polygonVertices), result);
+    }
+}
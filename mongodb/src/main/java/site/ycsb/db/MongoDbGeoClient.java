@@ -3,34 +3,61 @@ package site.ycsb.db;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoSocketReadTimeoutException;
 import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.geojson.MultiPolygon;
 import com.mongodb.client.model.geojson.Point;
 import com.mongodb.client.model.geojson.Polygon;
+import com.mongodb.client.model.geojson.PolygonCoordinates;
 import com.mongodb.client.model.geojson.Position;
 
 import site.ycsb.ByteIterator;
 import site.ycsb.DB;
 import site.ycsb.DBException;
 import site.ycsb.Status;
+import site.ycsb.geodata.GeoCorridor;
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoFenceListener;
+import site.ycsb.geodata.GeoFenceSubscription;
+import site.ycsb.geodata.GeoFootprint;
+import site.ycsb.geodata.GeoPage;
+import site.ycsb.geodata.GeoPayload;
 import site.ycsb.geodata.GeoPoint;
+import site.ycsb.geodata.GeoServerStats;
+import site.ycsb.geodata.LoadCheckpoint;
 
 public class MongoDbGeoClient extends DB {
 
@@ -38,6 +65,10 @@ public class MongoDbGeoClient extends DB {
     public static final String TIME_OF_RECORD_COLUMN = "TIME_OF_RECORD";
     public static final String LOCATION_COLUMN = "LOCATION";
 
+    /** The columns of a document that are not payload attributes. */
+    private static final Set<String> POINT_COLUMNS = new HashSet<>(
+            Arrays.asList("_id", PRIMARY_KEY, LOCATION_COLUMN, TIME_OF_RECORD_COLUMN));
+
     /** Used to include a field in a response. */
     private static final Integer INCLUDE = Integer.valueOf(1);
     private static final AtomicInteger INIT_COUNT = new AtomicInteger(0);
@@ -48,23 +79,60 @@ public class MongoDbGeoClient extends DB {
     /** A singleton Mongo instance. */
     private static MongoClient mongoClient;
 
+    /** The connection string of the Mongo instance, for the async client. */
+    private static String mongoUrl;
+
+    /** The client of the asynchronous operations, created by the first one. */
+    private static MongoDbGeoAsync asyncClient;
+
     /** The default read preference for the test. */
     private static ReadPreference readPreference;
 
     /** The default write concern for the test. */
     private static WriteConcern writeConcern;
 
+    /** Whether inserts replace an existing point, see {@link LoadCheckpoint#UPSERT_PROPERTY}. */
+    private static boolean upsert;
+
+    /** The server-side limit of the queries, see {@link #OP_TIMEOUT_PROPERTY}; 0 for none. */
+    private static long opTimeoutMs;
+
     /** The bulk inserts pending for the thread. */
     private final List<Document> bulkInserts = new ArrayList<Document>();
 
+    /** The open cursors of the paginated scans of this instance, by continuation token. */
+    private final Map<String, MongoCursor<Document>> pageCursors = new HashMap<>();
+    private long pageCursorSequence;
+
+    /** The change streams of the geofence subscriptions of this instance. */
+    private final Map<String, GeoFenceSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    /** The collection, filter and limit of the last query, for explainLast. */
+    private String lastTable;
+    private Bson lastFilter;
+    private int lastLimit;
+
     /**
      * Cleanup any state for this DB. Called once per DB instance; there is one DB
      * instance per client thread.
      */
     @Override
     public void cleanup() throws DBException {
+        for (GeoFenceSubscription subscription : subscriptions.values()) {
+            subscription.close();
+        }
+        subscriptions.clear();
+
+        for (MongoCursor<Document> cursor : pageCursors.values()) {
+            cursor.close();
+        }
+        pageCursors.clear();
+
         if (INIT_COUNT.decrementAndGet() == 0) {
             try {
+                if (asyncClient != null) {
+                    asyncClient.close();
+                }
                 mongoClient.close();
             } catch (Exception e1) {
                 System.err.println("Could not close MongoDB connection pool: " + e1.toString());
@@ -73,6 +141,7 @@ public class MongoDbGeoClient extends DB {
             } finally {
                 database = null;
                 mongoClient = null;
+                asyncClient = null;
             }
         }
     }
@@ -90,6 +159,8 @@ public class MongoDbGeoClient extends DB {
             }
 
             Properties props = getProperties();
+            upsert = LoadCheckpoint.isUpsert(props);
+            opTimeoutMs = Long.parseLong(props.getProperty(OP_TIMEOUT_PROPERTY, OP_TIMEOUT_PROPERTY_DEFAULT));
 
             // Just use the standard connection format URL
             // http://docs.mongodb.org/manual/reference/connection-string/
@@ -129,6 +200,7 @@ public class MongoDbGeoClient extends DB {
                 writeConcern = uri.getOptions().getWriteConcern();
 
                 mongoClient = new MongoClient(uri);
+                mongoUrl = url;
                 database = mongoClient.getDatabase(databaseName)
                         .withReadPreference(readPreference)
                         .withWriteConcern(writeConcern);
@@ -147,9 +219,10 @@ public class MongoDbGeoClient extends DB {
     public Status reset(String table) {
         try {
             MongoCollection<Document> collection = database.getCollection(table);
-            collection.deleteMany(new Document());
-            
-            collection.createIndex(new Document(LOCATION_COLUMN, "2dsphere"));
+            // Dropping the collection also drops a spatial index left by an earlier load.
+            collection.drop();
+
+            collection.createIndex(new Document(PRIMARY_KEY, INCLUDE), new IndexOptions().unique(true));
             return Status.OK;
         } catch (Exception e) {
             System.err.println("Exception while trying bulk reset with " + bulkInserts.size());
@@ -159,82 +232,232 @@ public class MongoDbGeoClient extends DB {
     }
 
     @Override
-    public Status insert(String table, String key, GeoPoint gp) {
+    public Status createSpatialIndex(String table) {
         try {
             MongoCollection<Document> collection = database.getCollection(table);
+            collection.createIndex(new Document(LOCATION_COLUMN, "2dsphere"));
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println("Exception while trying to create the spatial index of " + table);
+            e.printStackTrace();
+            return Status.ERROR;
+        }
+    }
 
-            Position position = new Position(gp.getLongitude(), gp.getLatitude());
-            Point point = new Point(position);
+    /**
+     * Reads collStats. The data size is the uncompressed one, which is what the
+     * WiredTiger cache holds, and the index size covers all indexes of the collection.
+     */
+    @Override
+    public Status footprint(String table, GeoFootprint result) {
+        try {
+            Document stats = database.runCommand(new Document("collStats", table));
+            result.setPoints(((Number) stats.get("count")).longValue());
+            result.setDataSize(((Number) stats.get("size")).longValue());
+            result.setIndexSize(((Number) stats.get("totalIndexSize")).longValue());
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println("Exception while trying to read the footprint of " + table);
+            e.printStackTrace();
+            return Status.ERROR;
+        }
+    }
 
-            Document toInsert = new Document(PRIMARY_KEY, key)
-                    .append(LOCATION_COLUMN, point)
-                    .append(TIME_OF_RECORD_COLUMN, gp.getTimeOfRecord());
+    private void remember(String table, Bson filter, int limit) {
+        lastTable = table;
+        lastFilter = filter;
+        lastLimit = limit;
+    }
 
-            collection.insertOne(toInsert);
+    /**
+     * Runs the last query again under explain with executionStats and returns the winning
+     * plan and the execution stats. Counts are explained as a find with the same filter.
+     */
+    @Override
+    public Status explainLast(StringBuilder plan) {
+        if (lastFilter == null) {
+            return Status.NOT_FOUND;
+        }
+        try {
+            BsonDocument find = new BsonDocument("find", new BsonString(lastTable))
+                    .append("filter", lastFilter.toBsonDocument(BsonDocument.class, database.getCodecRegistry()));
+            if (lastLimit > 0) {
+                find.append("limit", new BsonInt32(lastLimit));
+            }
+            Document explain = database.runCommand(new Document("explain", find)
+                    .append("verbosity", "executionStats"));
 
+            Document winningPlan = subDocument(explain, "queryPlanner", "winningPlan");
+            Document executionStats = subDocument(explain, "executionStats");
+            plan.append(winningPlan == null ? "{}" : winningPlan.toJson()).append('\n');
+            plan.append(executionStats == null ? "{}" : executionStats.toJson()).append('\n');
             return Status.OK;
         } catch (Exception e) {
-            System.err.println("Exception while trying bulk insert with " + bulkInserts.size());
+            System.err.println("Exception while trying to explain the last query on " + lastTable);
             e.printStackTrace();
             return Status.ERROR;
         }
     }
 
+    /**
+     * Samples serverStatus: the WiredTiger cache fill and checkpoints, the read and write
+     * tickets in use (under queues.execution from 7.0 on), connections and opcounters.
+     */
     @Override
-    public Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> results) {
+    public Status serverStats(GeoServerStats result) {
         try {
+            Document status = database.runCommand(new Document("serverStatus", 1));
+            Document cache = subDocument(status, "wiredTiger", "cache");
+            Document transaction = subDocument(status, "wiredTiger", "transaction");
+            Document tickets = subDocument(status, "wiredTiger", "concurrentTransactions");
+            if (tickets == null) {
+                tickets = subDocument(status, "queues", "execution");
+            }
 
+            gauge(result, "CACHE_USED_MB", cache, "bytes currently in the cache", 1024 * 1024);
+            gauge(result, "CACHE_DIRTY_MB", cache, "tracked dirty bytes in the cache", 1024 * 1024);
+            gauge(result, "CHECKPOINT_RUNNING", transaction, "transaction checkpoint currently running", 1);
+            gauge(result, "READ_TICKETS_OUT", subDocument(tickets, "read"), "out", 1);
+            gauge(result, "WRITE_TICKETS_OUT", subDocument(tickets, "write"), "out", 1);
+            gauge(result, "CONNECTIONS", subDocument(status, "connections"), "current", 1);
+            counter(result, "CACHE_PAGES_READ", cache, "pages read into cache");
+            counter(result, "CACHE_PAGES_WRITTEN", cache, "pages written from cache");
+            counter(result, "CHECKPOINTS", transaction, "transaction checkpoints");
+            counter(result, "OP_INSERT", subDocument(status, "opcounters"), "insert");
+            counter(result, "OP_QUERY", subDocument(status, "opcounters"), "query");
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println("Exception while trying to read the server status");
+            e.printStackTrace();
+            return Status.ERROR;
+        }
+    }
+
+    private static Document subDocument(Document document, String... path) {
+        for (String name : path) {
+            if (document == null || !(document.get(name) instanceof Document)) {
+                return null;
+            }
+            document = (Document) document.get(name);
+        }
+        return document;
+    }
+
+    private static void gauge(GeoServerStats result, String name, Document document, String field, long unit) {
+        if (document != null && document.get(field) instanceof Number) {
+            result.gauge(name, ((Number) document.get(field)).longValue() / unit);
+        }
+    }
+
+    /**
+     * Finds the documents of a query, which the server aborts after geo.optimeout.ms.
+     */
+    private static FindIterable<Document> find(MongoCollection<Document> collection, Bson filter) {
+        return collection.find(filter).maxTime(opTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts the documents of a query, which the server aborts after geo.optimeout.ms.
+     */
+    private static long count(MongoCollection<Document> collection, Bson filter) {
+        return collection.countDocuments(filter, new CountOptions().maxTime(opTimeoutMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Whether the server aborted the query for its time limit, or the driver gave up on
+     * the answer.
+     */
+    static boolean timedOut(Throwable e) {
+        return e instanceof MongoExecutionTimeoutException || e instanceof MongoSocketReadTimeoutException;
+    }
+
+    private static void counter(GeoServerStats result, String name, Document document, String field) {
+        if (document != null && document.get(field) instanceof Number) {
+            result.counter(name, ((Number) document.get(field)).longValue());
+        }
+    }
+
+    @Override
+    public Status insert(String table, String key, GeoPoint gp) {
+        try {
             MongoCollection<Document> collection = database.getCollection(table);
 
-            Document query = new Document(LOCATION_COLUMN, new Document("$near", new Document("$geometry",
-                    new Document("type", "Point").append("coordinates", Arrays.asList(lgn, lat)))));
+            Document toInsert = toDocument(key, gp);
 
-            FindIterable<Document> docs = collection.find(query).limit(k);
+            if (upsert) {
+                collection.replaceOne(keyFilter(key), toInsert, new ReplaceOptions().upsert(true));
+            } else {
+                collection.insertOne(toInsert);
+            }
 
-            for (Document result : docs) {
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println("Exception while trying bulk insert with " + bulkInserts.size());
+            e.printStackTrace();
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status readPoint(String table, String key, GeoPoint result) {
+        try {
+            MongoCollection<Document> collection = database.getCollection(table);
+
+            remember(table, keyFilter(key), 1);
+            Document doc = find(collection, keyFilter(key)).first();
+            if (doc == null) {
+                return Status.NOT_FOUND;
+            }
+
+            readGeoPoint(doc, result);
+
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println(e.toString());
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+            ArrayList<GeoPoint> results) {
+        try {
+
+            MongoCollection<Document> collection = database.getCollection(table);
+
+            Bson query = knnFilter(lat, lgn);
 
-                String resultId = result.getString(PRIMARY_KEY);
-                Document locationDoc = result.get(LOCATION_COLUMN, Document.class);
-                List<Double> coordinates = locationDoc.getList("coordinates", Double.class);
+            remember(table, query, k);
+            FindIterable<Document> docs = find(collection, query).projection(projection(fields)).limit(k);
+
+            for (Document result : docs) {
 
                 GeoPoint geoPoint = new GeoPoint();
-                geoPoint.setId(resultId);
-                geoPoint.setLongitude(coordinates.get(0));
-                geoPoint.setLatitude(coordinates.get(1));
-                geoPoint.setTimeOfRecord(result.getDate(TIME_OF_RECORD_COLUMN));
+                readGeoPoint(result, geoPoint);
 
                 results.add(geoPoint);
             }
             return Status.OK;
         } catch (Exception e) {
             System.err.println(e.toString());
-            return Status.ERROR;
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
         }
     }
 
     @Override
     public Status scanByDistance(String table, double lat, double lgn, double maxDistance,
-            ArrayList<GeoPoint> results) {
+            Set<String> fields, ArrayList<GeoPoint> results) {
         try {
             MongoCollection<Document> collection = database.getCollection(table);
-            Document point = new Document("type", "Point").append("coordinates", Arrays.asList(lgn, lat));
+            Bson filter = distanceFilter(lat, lgn, maxDistance);
 
-            double distanceInMeters = maxDistance * 1000;
-            Bson filter = Filters.near(LOCATION_COLUMN, point, (distanceInMeters), null);
-
-            FindIterable<Document> docs = collection.find(filter);
+            remember(table, filter, 0);
+            FindIterable<Document> docs = find(collection, filter).projection(projection(fields));
 
             for (Document result : docs) {
 
-                String resultId = result.getString(PRIMARY_KEY);
-                Document locationDoc = result.get(LOCATION_COLUMN, Document.class);
-                List<Double> coordinates = locationDoc.getList("coordinates", Double.class);
-
                 GeoPoint geoPoint = new GeoPoint();
-                geoPoint.setId(resultId);
-                geoPoint.setLongitude(coordinates.get(0));
-                geoPoint.setLatitude(coordinates.get(1));
-                geoPoint.setTimeOfRecord(result.getDate(TIME_OF_RECORD_COLUMN));
+                readGeoPoint(result, geoPoint);
 
                 results.add(geoPoint);
             }
@@ -242,38 +465,312 @@ public class MongoDbGeoClient extends DB {
             return Status.OK;
         } catch (Exception e) {
             System.err.println(e.toString());
-            return Status.ERROR;
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+            String continuation, Set<String> fields, GeoPage page) {
+        try {
+            MongoCursor<Document> cursor;
+            if (continuation == null) {
+                MongoCollection<Document> collection = database.getCollection(table);
+                Bson filter = distanceFilter(lat, lgn, maxDistance);
+
+                // The server cursor returns one page per batch, later pages are fetched with getMore.
+                remember(table, filter, 0);
+                cursor = find(collection, filter).projection(projection(fields)).batchSize(pageSize).iterator();
+            } else {
+                cursor = pageCursors.remove(continuation);
+                if (cursor == null) {
+                    return Status.BAD_REQUEST;
+                }
+            }
+
+            while (page.getPoints().size() < pageSize && cursor.hasNext()) {
+                GeoPoint geoPoint = new GeoPoint();
+                readGeoPoint(cursor.next(), geoPoint);
+
+                page.getPoints().add(geoPoint);
+            }
+
+            // Asking the cursor for more would already fetch the next batch, so a full page
+            // keeps the cursor open even if it turns out to be the last one.
+            if (page.getPoints().size() == pageSize) {
+                String next = Long.toString(++pageCursorSequence);
+                pageCursors.put(next, cursor);
+                page.setContinuation(next);
+            } else {
+                cursor.close();
+                page.setContinuation(null);
+            }
+
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println(e.toString());
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
         }
     }
 
     @Override
     public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices,
-            ArrayList<GeoPoint> results) {
+            Set<String> fields, ArrayList<GeoPoint> results) {
         try {
             MongoCollection<Document> collection = database.getCollection(table);
-            List<Position> ps = polygonVertices.stream().map(gp -> new Position(gp.getLongitude(), gp.getLatitude()))
-                    .collect(Collectors.toList());
-
-            Polygon polygon = new Polygon(ps);
-            Bson filter = Filters.geoWithin(LOCATION_COLUMN, polygon);
+            Bson filter = polygonFilter(polygonVertices);
 
-            List<Document> docs = collection.find(filter).into(new ArrayList<>());
+            remember(table, filter, 0);
+            List<Document> docs = find(collection, filter).projection(projection(fields)).into(new ArrayList<>());
 
             for (Document result : docs) {
 
-                String resultId = result.getString(PRIMARY_KEY);
-                Document locationDoc = result.get(LOCATION_COLUMN, Document.class);
-                List<Double> coordinates = locationDoc.getList("coordinates", Double.class);
+                GeoPoint geoPoint = new GeoPoint();
+                readGeoPoint(result, geoPoint);
+
+                results.add(geoPoint);
+            }
+
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println(e.toString());
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm,
+            Set<String> fields, ArrayList<GeoPoint> results) {
+        try {
+            MongoCollection<Document> collection = database.getCollection(table);
+            Bson filter = corridorFilter(polyline, bufferKm);
+
+            remember(table, filter, 0);
+            for (Document result : find(collection, filter).projection(projection(fields))) {
 
                 GeoPoint geoPoint = new GeoPoint();
-                geoPoint.setId(resultId);
-                geoPoint.setLongitude(coordinates.get(0));
-                geoPoint.setLatitude(coordinates.get(1));
-                geoPoint.setTimeOfRecord(result.getDate(TIME_OF_RECORD_COLUMN));
+                readGeoPoint(result, geoPoint);
 
                 results.add(geoPoint);
             }
 
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println(e.toString());
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount result) {
+        try {
+            MongoCollection<Document> collection = database.getCollection(table);
+            Bson filter = countDistanceFilter(lat, lgn, maxDistance);
+
+            remember(table, filter, 0);
+            result.setCount(count(collection, filter));
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println(e.toString());
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    @Override
+    public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
+        try {
+            MongoCollection<Document> collection = database.getCollection(table);
+            Bson filter = polygonFilter(polygonVertices);
+
+            remember(table, filter, 0);
+            result.setCount(count(collection, filter));
+            return Status.OK;
+        } catch (Exception e) {
+            System.err.println(e.toString());
+            return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+        }
+    }
+
+    /*
+     * The documents and filters of the operations, shared with the asynchronous ones.
+     */
+
+    static Document toDocument(String key, GeoPoint gp) {
+        Document doc = new Document(PRIMARY_KEY, key)
+                .append(LOCATION_COLUMN, new Point(new Position(gp.getLongitude(), gp.getLatitude())))
+                .append(TIME_OF_RECORD_COLUMN, gp.getTimeOfRecord());
+        for (Map.Entry<String, ByteIterator> field : gp.getFields().entrySet()) {
+            doc.append(field.getKey(), GeoPayload.toValue(field.getValue()));
+        }
+        return doc;
+    }
+
+    static Bson keyFilter(String key) {
+        return Filters.eq(PRIMARY_KEY, key);
+    }
+
+    static Bson knnFilter(double lat, double lgn) {
+        return new Document(LOCATION_COLUMN, new Document("$near", new Document("$geometry",
+                new Document("type", "Point").append("coordinates", Arrays.asList(lgn, lat)))));
+    }
+
+    static Bson distanceFilter(double lat, double lgn, double maxDistance) {
+        Document point = new Document("type", "Point").append("coordinates", Arrays.asList(lgn, lat));
+
+        double distanceInMeters = maxDistance * 1000;
+        return Filters.near(LOCATION_COLUMN, point, (distanceInMeters), null);
+    }
+
+    static Bson polygonFilter(ArrayList<GeoPoint> polygonVertices) {
+        List<Position> ps = polygonVertices.stream().map(gp -> new Position(gp.getLongitude(), gp.getLatitude()))
+                .collect(Collectors.toList());
+
+        return Filters.geoWithin(LOCATION_COLUMN, new Polygon(ps));
+    }
+
+    static Bson corridorFilter(ArrayList<GeoPoint> polyline, double bufferKm) {
+        // The buffered polyline is the union of one rectangle per segment.
+        List<PolygonCoordinates> rectangles = new ArrayList<>();
+        for (int i = 0; i < polyline.size() - 1; i++) {
+            List<Position> ps = GeoCorridor.segmentRectangle(polyline.get(i), polyline.get(i + 1), bufferKm)
+                    .stream().map(gp -> new Position(gp.getLongitude(), gp.getLatitude()))
+                    .collect(Collectors.toList());
+            rectangles.add(new PolygonCoordinates(ps));
+        }
+
+        return Filters.geoIntersects(LOCATION_COLUMN, new MultiPolygon(rectangles));
+    }
+
+    static Bson countDistanceFilter(double lat, double lgn, double maxDistance) {
+        // $near sorts and cannot be counted, $centerSphere selects the same points unsorted.
+        double radiusInRadians = maxDistance / 6378.1;
+        return Filters.geoWithinCenterSphere(LOCATION_COLUMN, lgn, lat, radiusInRadians);
+    }
+
+    /**
+     * The projection of a scan: the whole document, or the point columns plus the named attributes.
+     */
+    static Bson projection(Set<String> fields) {
+        if (fields == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>(fields);
+        names.add(PRIMARY_KEY);
+        names.add(LOCATION_COLUMN);
+        names.add(TIME_OF_RECORD_COLUMN);
+        return Projections.include(names);
+    }
+
+    static void readGeoPoint(Document doc, GeoPoint gp) {
+        Document locationDoc = doc.get(LOCATION_COLUMN, Document.class);
+        List<Double> coordinates = locationDoc.getList("coordinates", Double.class);
+
+        gp.setId(doc.getString(PRIMARY_KEY));
+        gp.setLongitude(coordinates.get(0));
+        gp.setLatitude(coordinates.get(1));
+        gp.setTimeOfRecord(doc.getDate(TIME_OF_RECORD_COLUMN));
+
+        for (Map.Entry<String, Object> value : doc.entrySet()) {
+            if (!POINT_COLUMNS.contains(value.getKey())) {
+                gp.getFields().put(value.getKey(), GeoPayload.fromValue(value.getValue()));
+            }
+        }
+    }
+
+    /*
+     * The asynchronous operations run on the async driver, see MongoDbGeoAsync, on a client
+     * of their own that shares the connection string of the synchronous one.
+     */
+
+    private static MongoDbGeoAsync async() {
+        synchronized (INCLUDE) {
+            if (asyncClient == null) {
+                asyncClient = new MongoDbGeoAsync(mongoUrl, databaseName, readPreference, writeConcern, upsert,
+                        opTimeoutMs);
+            }
+            return asyncClient;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Status> insertAsync(String table, String key, GeoPoint gp) {
+        return async().insert(table, key, gp);
+    }
+
+    @Override
+    public CompletableFuture<Status> readPointAsync(String table, String key, GeoPoint result) {
+        return async().readPoint(table, key, result);
+    }
+
+    @Override
+    public CompletableFuture<Status> scanKNNAsync(String table, double lat, double lgn, int k, Set<String> fields,
+            ArrayList<GeoPoint> result) {
+        return async().scanKNN(table, lat, lgn, k, fields, result);
+    }
+
+    @Override
+    public CompletableFuture<Status> scanByDistanceAsync(String table, double lat, double lgn, double maxDistance,
+            Set<String> fields, ArrayList<GeoPoint> result) {
+        return async().scanByDistance(table, lat, lgn, maxDistance, fields, result);
+    }
+
+    @Override
+    public CompletableFuture<Status> scanByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+            Set<String> fields, ArrayList<GeoPoint> result) {
+        return async().scanByPolygon(table, polygonVertices, fields, result);
+    }
+
+    @Override
+    public CompletableFuture<Status> scanByCorridorAsync(String table, ArrayList<GeoPoint> polyline,
+            double bufferKm, Set<String> fields, ArrayList<GeoPoint> result) {
+        return async().scanByCorridor(table, polyline, bufferKm, fields, result);
+    }
+
+    @Override
+    public CompletableFuture<Status> countByDistanceAsync(String table, double lat, double lgn, double maxDistance,
+            GeoCount result) {
+        return async().countByDistance(table, lat, lgn, maxDistance, result);
+    }
+
+    @Override
+    public CompletableFuture<Status> countByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+            GeoCount result) {
+        return async().countByPolygon(table, polygonVertices, result);
+    }
+
+    @Override
+    public Status subscribe(String table, String subscriptionId, ArrayList<GeoPoint> region,
+            GeoFenceListener listener) {
+        try {
+            MongoCollection<Document> collection = database.getCollection(table);
+            List<Position> ps = region.stream().map(gp -> new Position(gp.getLongitude(), gp.getLatitude()))
+                    .collect(Collectors.toList());
+
+            // Change streams need a replica set; the server evaluates the region on each insert.
+            List<Bson> pipeline = Arrays.asList(Aggregates.match(Filters.and(
+                    Filters.eq("operationType", "insert"),
+                    Filters.geoWithin("fullDocument." + LOCATION_COLUMN, new Polygon(ps)))));
+
+            MongoCursor<ChangeStreamDocument<Document>> cursor = collection.watch(pipeline)
+                    .maxAwaitTime(100, TimeUnit.MILLISECONDS).iterator();
+
+            GeoFenceSubscription subscription = new GeoFenceSubscription("mongodb-" + subscriptionId) {
+                @Override
+                protected void poll() {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null && change.getFullDocument() != null) {
+                        listener.onEnter(subscriptionId, change.getFullDocument().getString(PRIMARY_KEY));
+                    }
+                }
+
+                @Override
+                protected void onClose() {
+                    cursor.close();
+                }
+            };
+            subscriptions.put(subscriptionId, subscription);
+            subscription.start();
+
             return Status.OK;
         } catch (Exception e) {
             System.err.println(e.toString());
@@ -281,6 +778,16 @@ public class MongoDbGeoClient extends DB {
         }
     }
 
+    @Override
+    public Status unsubscribe(String table, String subscriptionId) {
+        GeoFenceSubscription subscription = subscriptions.remove(subscriptionId);
+        if (subscription == null) {
+            return Status.NOT_FOUND;
+        }
+        subscription.close();
+        return Status.OK;
+    }
+
     @Override
     public Status insert(String table, String key, Map<String, ByteIterator> values) {
         return Status.ERROR;
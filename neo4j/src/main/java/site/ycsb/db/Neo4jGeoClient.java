@@ -4,15 +4,26 @@ import site.ycsb.ByteIterator;
 import site.ycsb.DB;
 import site.ycsb.DBException;
 import site.ycsb.Status;
+import site.ycsb.geodata.GeoCorridor;
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoFootprint;
+import site.ycsb.geodata.GeoPage;
+import site.ycsb.geodata.GeoPayload;
 import site.ycsb.geodata.GeoPoint;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import org.neo4j.driver.*;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.exceptions.Neo4jException;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.ResultSummary;
 
 /**
  * Neo4j client for YCSB framework.
@@ -28,10 +39,13 @@ public class Neo4jGeoClient extends DB {
   public static final String DEFAULT_PASSWORD = "neo4j.password";
   public static final String DEFAULT_PROP_PASSWORD = "12345678";
 
-  private static final Lock insertLock = new ReentrantLock();
-  private static final Lock polygonLock = new ReentrantLock();
-  private static final Lock distanceLock = new ReentrantLock();
-  private static final Lock knnLock = new ReentrantLock();
+  /*
+   * Locks rather than monitors, which would pin a virtual thread while it waits. The
+   * queries run concurrently on the sessions of the instances; only the inserts into the
+   * same spatial layer are serialized, as concurrent updates of its R-tree deadlock.
+   */
+  private static final Lock driverLock = new ReentrantLock();
+  private static final Map<String, Lock> LAYER_LOCKS = new ConcurrentHashMap<>();
 
   /**
    * Default path used to create the database directory, if no arguments are
@@ -43,8 +57,33 @@ public class Neo4jGeoClient extends DB {
   public static final String LATITUDE_COLUMN = "latitude";
   public static final String TIME_OF_RECORD_COLUMN = "time_of_record";
 
-  private static Driver driver;
-  private static final ThreadLocal<Session> sessionHolder = new ThreadLocal<>();
+  private static final Set<String> POINT_PROPERTIES = new HashSet<>(
+      Arrays.asList(PRIMARY_KEY, LONGITUDE_COLUMN, LATITUDE_COLUMN, TIME_OF_RECORD_COLUMN));
+
+  /**
+   * Whether the spatial layer of a table exists, i.e. whether inserts must add their
+   * node to it. Looked up once per table and kept up to date by reset and
+   * createSpatialIndex.
+   */
+  private static final Map<String, Boolean> LAYERS = new ConcurrentHashMap<>();
+
+  /** The number of nodes createSpatialIndex adds to the layer per transaction. */
+  private static final int INDEX_BATCH_SIZE = 10000;
+
+  /** The last query of this instance, for explainLast. */
+  private Query lastQuery;
+
+  private static volatile Driver driver;
+
+  /**
+   * The session of this instance. It is not kept per thread, as a thread may use more
+   * than one instance, and the operations of an instance may run on another thread
+   * than its init.
+   */
+  private Session session;
+
+  /** The configuration of the transactions of the operations, with the timeout of geo.optimeout.ms. */
+  private TransactionConfig txConfig = TransactionConfig.empty();
 
   /** Integer used to keep track of current threads. */
   private static final AtomicInteger INIT_COUNT = new AtomicInteger(0);
@@ -59,7 +98,9 @@ public class Neo4jGeoClient extends DB {
     INIT_COUNT.incrementAndGet();
 
     if (driver == null) {
-      synchronized (Neo4jGeoClient.class) {
+      // A lock rather than a monitor, which would pin a virtual thread while the driver connects.
+      driverLock.lock();
+      try {
         if (driver == null) {
           Properties props = getProperties();
 
@@ -69,18 +110,31 @@ public class Neo4jGeoClient extends DB {
 
           driver = GraphDatabase.driver(host, AuthTokens.basic(db, password));
         }
+      } finally {
+        driverLock.unlock();
       }
     }
-    sessionHolder.set(driver.session());
+    session = driver.session();
+
+    long opTimeoutMs = Long.parseLong(getProperties().getProperty(OP_TIMEOUT_PROPERTY, OP_TIMEOUT_PROPERTY_DEFAULT));
+    if (opTimeoutMs > 0) {
+      txConfig = TransactionConfig.builder().withTimeout(Duration.ofMillis(opTimeoutMs)).build();
+    }
+  }
+
+  /**
+   * Whether the server terminated the transaction for its timeout.
+   */
+  private static boolean timedOut(Exception e) {
+    return e instanceof Neo4jException && ((Neo4jException) e).code() != null
+        && ((Neo4jException) e).code().contains("TransactionTimedOut");
   }
 
   @Override
   public void cleanup() throws DBException {
-    Session session = sessionHolder.get();
-
     if (session != null) {
       session.close();
-      sessionHolder.remove();
+      session = null;
     }
 
     // Check if all threads have completed their work
@@ -94,13 +148,22 @@ public class Neo4jGeoClient extends DB {
     Transaction tx = null;
 
     try {
-      Session session = sessionHolder.get();
+      // Every table has its own label and its own spatial layer.
+      if (hasLayer(session, table)) {
+        session.run("CALL spatial.removeLayer($layer)", Values.parameters("layer", table)).consume();
+      }
+
+      LAYERS.put(table, false);
+
       tx = session.beginTransaction();
-      tx.run("MATCH (n) DETACH DELETE n;");
-      tx.run("CALL spatial.addPointLayer('geom');");
+      tx.run("MATCH (n:" + label(table) + ") DETACH DELETE n;");
 
       tx.commit();
 
+      // Schema changes cannot share a transaction with data writes.
+      session.run("CREATE CONSTRAINT IF NOT EXISTS ON (p:" + label(table) + ") ASSERT p."
+          + PRIMARY_KEY + " IS UNIQUE").consume();
+
       return Status.OK;
     } catch (Exception e) {
 
@@ -109,15 +172,78 @@ public class Neo4jGeoClient extends DB {
     }
   }
 
+  /**
+   * Creates the spatial layer of the table and adds the nodes loaded so far to it.
+   */
+  @Override
+  public Status createSpatialIndex(String table) {
+    try {
+      session.run("CALL spatial.addPointLayer($layer)", Values.parameters("layer", table)).consume();
+      // The nodes are added in batches of their own transactions, so the heap never holds
+      // the whole label at once.
+      Record batches = session.run("CALL apoc.periodic.iterate("
+          + "'MATCH (n:" + label(table) + ") RETURN n', "
+          + "'WITH collect(n) AS nodes CALL spatial.addNodes($layer, nodes) YIELD count RETURN count', "
+          + "{batchSize: $batchSize, params: {layer: $layer}}) YIELD failedBatches, errorMessages "
+          + "RETURN failedBatches, errorMessages",
+          Values.parameters("layer", table, "batchSize", INDEX_BATCH_SIZE)).single();
+      if (batches.get("failedBatches").asLong() > 0) {
+        System.err.println("Failed to add the nodes to the spatial layer: " + batches.get("errorMessages"));
+        return Status.ERROR;
+      }
+      LAYERS.put(table, true);
+
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Failed to create the spatial layer: " + e.getMessage());
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * Reads the store sizes through APOC. They are those of the whole database, not of
+   * the table's label, and the spatial layer is kept in the graph, so the index size
+   * is the rest of the store beyond the node, relationship and property stores.
+   */
+  @Override
+  public Status footprint(String table, GeoFootprint result) {
+    try {
+      result.setPoints(session.run("MATCH (n:" + label(table) + ") RETURN count(n) AS count")
+          .single().get("count").asLong());
+
+      Record store = session.run("CALL apoc.monitor.store()").single();
+      long data = store.get("nodeStoreSize").asLong() + store.get("relStoreSize").asLong()
+          + store.get("propStoreSize").asLong() + store.get("stringStoreSize").asLong()
+          + store.get("arrayStoreSize").asLong();
+      result.setDataSize(data);
+      result.setIndexSize(store.get("totalStoreSize").asLong() - store.get("logSize").asLong() - data);
+
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Failed to read the store sizes (APOC is required): " + e.getMessage());
+      return Status.ERROR;
+    }
+  }
+
   @Override
   public Status insert(String table, String key, GeoPoint values) {
     Transaction tx = null;
+    Lock layerLock = null;
     try {
-      Session session = sessionHolder.get();
-      tx = session.beginTransaction();
+      boolean indexed = LAYERS.computeIfAbsent(table, t -> hasLayer(session, t));
+      if (indexed) {
+        Lock lock = LAYER_LOCKS.computeIfAbsent(table, t -> new ReentrantLock());
+        lock.lock();
+        layerLock = lock;
+      }
+      tx = session.beginTransaction(txConfig);
+
+      Map<String, Object> fields = new HashMap<>();
+      for (Map.Entry<String, ByteIterator> field : values.getFields().entrySet()) {
+        fields.put(field.getKey(), GeoPayload.toValue(field.getValue()));
+      }
 
-      insertLock.lock();
-      StringBuilder cypherQuery = new StringBuilder("CREATE (n:Point {")
+      StringBuilder cypherQuery = new StringBuilder("CREATE (n:Point:").append(label(table)).append(" {")
           .append(PRIMARY_KEY).append(": ")
           .append("$").append(PRIMARY_KEY).append(",")
           .append(LONGITUDE_COLUMN).append(": ")
@@ -126,16 +252,21 @@ public class Neo4jGeoClient extends DB {
           .append("$").append(LATITUDE_COLUMN).append(",")
           .append(TIME_OF_RECORD_COLUMN).append(": ")
           .append("$").append(TIME_OF_RECORD_COLUMN)
-          .append("})")
-          .append("WITH n ")
-          .append("CALL spatial.addNode('geom',n) YIELD node ")
-          .append("RETURN node");
+          .append("}) ")
+          .append("SET n += $fields ");
+      if (indexed) {
+        cypherQuery.append("WITH n ")
+            .append("CALL spatial.addNode($layer,n) YIELD node ")
+            .append("RETURN node");
+      }
 
       Value parameters = Values.parameters(
           PRIMARY_KEY, values.getId(),
           LONGITUDE_COLUMN, values.getLongitude(),
           LATITUDE_COLUMN, values.getLatitude(),
-          TIME_OF_RECORD_COLUMN, values.getTimeOfRecord().getTime());
+          TIME_OF_RECORD_COLUMN, values.getTimeOfRecord().getTime(),
+          "fields", fields,
+          "layer", table);
 
       tx.run(cypherQuery.toString(), parameters);
       tx.commit();
@@ -149,28 +280,67 @@ public class Neo4jGeoClient extends DB {
         }
       }
       System.err.println("Failed to insert data: " + e.getMessage());
-      return Status.ERROR;
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
     } finally {
-      insertLock.unlock();
+      if (layerLock != null) {
+        layerLock.unlock();
+      }
     }
   }
 
   @Override
-  public Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> results) {
-
+  public Status readPoint(String table, String key, GeoPoint result) {
     Transaction tx = null;
     try {
-      Session session = sessionHolder.get();
-      tx = session.beginTransaction();
+      tx = session.beginTransaction(txConfig);
+
+      StringBuilder cypherQuery = new StringBuilder("MATCH (p:").append(label(table)).append(" {")
+          .append(PRIMARY_KEY).append(": $").append(PRIMARY_KEY).append("}) RETURN ")
+          .append("p.").append(PRIMARY_KEY).append(",")
+          .append("p.").append(LATITUDE_COLUMN).append(",")
+          .append("p.").append(LONGITUDE_COLUMN).append(",")
+          .append("p.").append(TIME_OF_RECORD_COLUMN)
+          .append(fieldsProjection(null));
+
+      Result queryResult = tx.run(remember(cypherQuery.toString(), Values.parameters(PRIMARY_KEY, key)));
+
+      if (!queryResult.hasNext()) {
+        tx.commit();
+        return Status.NOT_FOUND;
+      }
+
+      readGeoPoint(queryResult.next(), result);
+
+      tx.commit();
+      return Status.OK;
+    } catch (Exception e) {
+      if (tx != null && tx.isOpen()) {
+        try {
+          tx.rollback();
+        } catch (Exception rollbackException) {
+          System.err.println("Failed to rollback transaction: " + rollbackException.getMessage());
+        }
+      }
+      System.err.println("Error occurred during the execution of the read query: " + e.getMessage());
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+      ArrayList<GeoPoint> results) {
 
-      knnLock.lock();
+    Transaction tx = null;
+    try {
+      tx = session.beginTransaction(txConfig);
 
-      StringBuilder cypherQuery = new StringBuilder("MATCH (p:Point) ")
+      StringBuilder cypherQuery = new StringBuilder("MATCH (p:").append(label(table)).append(") ")
           .append("WHERE p.id IS NOT NULL AND p.time_of_record IS NOT NULL RETURN ")
           .append("p.").append(PRIMARY_KEY).append(",")
           .append("p.").append(LATITUDE_COLUMN).append(",")
           .append("p.").append(LONGITUDE_COLUMN).append(",")
           .append("p.").append(TIME_OF_RECORD_COLUMN)
+          .append(fieldsProjection(fields))
           .append(" ORDER BY point.distance(")
           .append("point({latitude: ")
           .append("p.").append(LATITUDE_COLUMN).append(",")
@@ -184,18 +354,15 @@ public class Neo4jGeoClient extends DB {
 
       Value parameters = Values.parameters(LATITUDE_COLUMN, lat, LONGITUDE_COLUMN, lgn, "k", k);
 
-      Result result = tx.run(cypherQuery.toString(), parameters);
+      Result result = tx.run(remember(cypherQuery.toString(), parameters));
 
       List<Record> records = result.list();
 
       for (Record record : records) {
-        String id = record.get("p." + PRIMARY_KEY).asString();
-        double latitude = record.get("p." + LATITUDE_COLUMN).asDouble();
-        double longitude = record.get("p." + LONGITUDE_COLUMN).asDouble();
-        long time = record.get("p." + TIME_OF_RECORD_COLUMN).asLong();
-        Date date = new Date(time);
+        GeoPoint gp = new GeoPoint();
+        readGeoPoint(record, gp);
 
-        results.add(new GeoPoint(id, latitude, longitude, date));
+        results.add(gp);
       }
 
       tx.commit();
@@ -209,25 +376,21 @@ public class Neo4jGeoClient extends DB {
         }
       }
       System.err.println("Error occurred during the execution of the KNN query: " + e.getMessage());
-      return Status.ERROR;
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
 
-    } finally {
-      knnLock.unlock();
     }
   }
 
   @Override
-  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, ArrayList<GeoPoint> results) {
+  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, Set<String> fields,
+      ArrayList<GeoPoint> results) {
     Transaction tx = null;
     try {
-      Session session = sessionHolder.get();
-      tx = session.beginTransaction();
+      tx = session.beginTransaction(txConfig);
 
       double maxDistanceInKM = maxDistance * 1000;
 
-      distanceLock.lock();
-
-      StringBuilder cypherQuery = new StringBuilder("MATCH (p:Point) ")
+      StringBuilder cypherQuery = new StringBuilder("MATCH (p:").append(label(table)).append(") ")
           .append("WHERE p.id IS NOT NULL AND p.time_of_record IS NOT NULL AND ")
           .append("point.distance(")
           .append("point({latitude: ")
@@ -243,23 +406,20 @@ public class Neo4jGeoClient extends DB {
           .append("p.").append(PRIMARY_KEY).append(",")
           .append("p.").append(LATITUDE_COLUMN).append(",")
           .append("p.").append(LONGITUDE_COLUMN).append(",")
-          .append("p.").append(TIME_OF_RECORD_COLUMN);
+          .append("p.").append(TIME_OF_RECORD_COLUMN)
+          .append(fieldsProjection(fields));
 
       Value parameters = Values.parameters(LATITUDE_COLUMN, lat, LONGITUDE_COLUMN, lgn, "maxDistance",
           maxDistanceInKM);
 
-      Result result = tx.run(cypherQuery.toString(), parameters);
+      Result result = tx.run(remember(cypherQuery.toString(), parameters));
 
       // Processamento dos resultados
       while (result.hasNext()) {
-        Record record = result.next();
-        String id = record.get("p." + PRIMARY_KEY).asString();
-        double latitude = record.get("p." + LATITUDE_COLUMN).asDouble();
-        double longitude = record.get("p." + LONGITUDE_COLUMN).asDouble();
-        long time = record.get("p." + TIME_OF_RECORD_COLUMN).asLong();
-        Date date = new Date(time);
+        GeoPoint gp = new GeoPoint();
+        readGeoPoint(result.next(), gp);
 
-        results.add(new GeoPoint(id, latitude, longitude, date));
+        results.add(gp);
       }
 
       tx.commit();
@@ -274,18 +434,86 @@ public class Neo4jGeoClient extends DB {
         }
       }
       System.err.println("Error occurred during the execution of the Distance query: " + e.getMessage());
-      return Status.ERROR;
-    } finally {
-      distanceLock.unlock();
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
     }
   }
 
   @Override
-  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, ArrayList<GeoPoint> results) {
+  public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+      String continuation, Set<String> fields, GeoPage page) {
     Transaction tx = null;
     try {
-      Session session = sessionHolder.get();
-      tx = session.beginTransaction();
+      tx = session.beginTransaction(txConfig);
+
+      double maxDistanceInKM = maxDistance * 1000;
+
+      // The continuation is the number of points of the previous pages.
+      long skip = 0;
+      if (continuation != null) {
+        skip = Long.parseLong(continuation);
+      }
+
+      StringBuilder cypherQuery = new StringBuilder("MATCH (p:").append(label(table)).append(") ")
+          .append("WITH p, point.distance(")
+          .append("point({latitude: ")
+          .append("p.").append(LATITUDE_COLUMN).append(",")
+          .append("longitude: ")
+          .append("p.").append(LONGITUDE_COLUMN).append("}),")
+          .append("point({latitude: ")
+          .append("$").append(LATITUDE_COLUMN).append(",")
+          .append("longitude: ")
+          .append("$").append(LONGITUDE_COLUMN).append("})) AS distance ")
+          .append("WHERE p.id IS NOT NULL AND p.time_of_record IS NOT NULL AND distance <= $maxDistance ")
+          .append("RETURN ")
+          .append("p.").append(PRIMARY_KEY).append(",")
+          .append("p.").append(LATITUDE_COLUMN).append(",")
+          .append("p.").append(LONGITUDE_COLUMN).append(",")
+          .append("p.").append(TIME_OF_RECORD_COLUMN)
+          .append(fieldsProjection(fields))
+          .append(" ORDER BY distance, p.").append(PRIMARY_KEY)
+          .append(" SKIP $skip LIMIT $limit");
+
+      // One point more than the page tells whether another page follows.
+      Value parameters = Values.parameters(LATITUDE_COLUMN, lat, LONGITUDE_COLUMN, lgn, "maxDistance",
+          maxDistanceInKM, "skip", skip, "limit", pageSize + 1);
+
+      Result result = tx.run(remember(cypherQuery.toString(), parameters));
+
+      page.setContinuation(null);
+      while (result.hasNext()) {
+        Record record = result.next();
+        if (page.getPoints().size() == pageSize) {
+          page.setContinuation(Long.toString(skip + pageSize));
+          break;
+        }
+        GeoPoint gp = new GeoPoint();
+        readGeoPoint(record, gp);
+
+        page.getPoints().add(gp);
+      }
+
+      tx.commit();
+
+      return Status.OK;
+    } catch (Exception e) {
+      if (tx != null && tx.isOpen()) {
+        try {
+          tx.rollback();
+        } catch (Exception rollbackException) {
+          System.err.println("Failed to rollback transaction: " + rollbackException.getMessage());
+        }
+      }
+      System.err.println("Error occurred during the execution of the Distance page query: " + e.getMessage());
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, Set<String> fields,
+      ArrayList<GeoPoint> results) {
+    Transaction tx = null;
+    try {
+      tx = session.beginTransaction(txConfig);
 
       List<String> coodenateList = polygonVertices.stream()
           .map((GeoPoint point) -> point.getLongitude() + " " + point.getLatitude())
@@ -293,29 +521,23 @@ public class Neo4jGeoClient extends DB {
 
       String coodenates = String.join(",", coodenateList);
 
-      polygonLock.lock();
-
       StringBuilder cypherQuery = new StringBuilder("WITH 'POLYGON((")
           .append(coodenates).append("))' as polygon ")
-          .append("CALL spatial.intersects('geom',polygon) YIELD node AS p ")
+          .append("CALL spatial.intersects($layer,polygon) YIELD node AS p ")
           .append("WHERE p.id IS NOT NULL AND p.time_of_record IS NOT NULL RETURN ")
           .append("p.").append(PRIMARY_KEY).append(",")
           .append("p.").append(LATITUDE_COLUMN).append(",")
           .append("p.").append(LONGITUDE_COLUMN).append(",")
-          .append("p.").append(TIME_OF_RECORD_COLUMN);
+          .append("p.").append(TIME_OF_RECORD_COLUMN)
+          .append(fieldsProjection(fields));
 
-      Result result = tx.run(cypherQuery.toString());
+      Result result = tx.run(remember(cypherQuery.toString(), Values.parameters("layer", table)));
 
       while (result.hasNext()) {
-        Record record = result.next();
+        GeoPoint gp = new GeoPoint();
+        readGeoPoint(result.next(), gp);
 
-        String id = record.get("p." + PRIMARY_KEY).asString();
-        double latitude = record.get("p." + LATITUDE_COLUMN).asDouble();
-        double longitude = record.get("p." + LONGITUDE_COLUMN).asDouble();
-        long time = record.get("p." + TIME_OF_RECORD_COLUMN).asLong();
-        Date date = new Date(time);
-
-        results.add(new GeoPoint(id, latitude, longitude, date));
+        results.add(gp);
       }
 
       tx.commit();
@@ -331,13 +553,224 @@ public class Neo4jGeoClient extends DB {
       }
 
       System.err.println("Error occurred during the execution of the polygon query: " + e.getMessage());
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+
+    }
+  }
+
+  @Override
+  public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm, Set<String> fields,
+      ArrayList<GeoPoint> results) {
+    Transaction tx = null;
+    try {
+      tx = session.beginTransaction(txConfig);
+
+      // The buffered polyline is the union of one rectangle per segment.
+      List<String> rectangles = new ArrayList<>();
+      for (int i = 0; i < polyline.size() - 1; i++) {
+        List<String> coodenateList = GeoCorridor.segmentRectangle(polyline.get(i), polyline.get(i + 1), bufferKm)
+            .stream()
+            .map((GeoPoint point) -> point.getLongitude() + " " + point.getLatitude())
+            .collect(Collectors.toList());
+        rectangles.add("((" + String.join(",", coodenateList) + "))");
+      }
+
+      StringBuilder cypherQuery = new StringBuilder("WITH 'MULTIPOLYGON(")
+          .append(String.join(",", rectangles)).append(")' as polygon ")
+          .append("CALL spatial.intersects($layer,polygon) YIELD node AS p ")
+          .append("WHERE p.id IS NOT NULL AND p.time_of_record IS NOT NULL RETURN ")
+          .append("p.").append(PRIMARY_KEY).append(",")
+          .append("p.").append(LATITUDE_COLUMN).append(",")
+          .append("p.").append(LONGITUDE_COLUMN).append(",")
+          .append("p.").append(TIME_OF_RECORD_COLUMN)
+          .append(fieldsProjection(fields));
+
+      Result result = tx.run(remember(cypherQuery.toString(), Values.parameters("layer", table)));
+
+      while (result.hasNext()) {
+        GeoPoint gp = new GeoPoint();
+        readGeoPoint(result.next(), gp);
+
+        results.add(gp);
+      }
+
+      tx.commit();
+      return Status.OK;
+
+    } catch (Exception e) {
+      if (tx != null && tx.isOpen()) {
+        try {
+          tx.rollback();
+        } catch (Exception rollbackException) {
+          System.err.println("Failed to rollback transaction: " + rollbackException.getMessage());
+        }
+      }
+
+      System.err.println("Error occurred during the execution of the corridor query: " + e.getMessage());
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+
+    }
+  }
+
+  @Override
+  public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount count) {
+    Transaction tx = null;
+    try {
+      tx = session.beginTransaction(txConfig);
+
+      double maxDistanceInKM = maxDistance * 1000;
+
+      StringBuilder cypherQuery = new StringBuilder("MATCH (p:").append(label(table)).append(") ")
+          .append("WHERE p.id IS NOT NULL AND p.time_of_record IS NOT NULL AND ")
+          .append("point.distance(")
+          .append("point({latitude: ")
+          .append("p.").append(LATITUDE_COLUMN).append(",")
+          .append("longitude: ")
+          .append("p.").append(LONGITUDE_COLUMN).append("}),")
+          .append("point({latitude: ")
+          .append("$").append(LATITUDE_COLUMN).append(",")
+          .append("longitude: ")
+          .append("$").append(LONGITUDE_COLUMN).append("})) ")
+          .append("<= $maxDistance ")
+          .append("RETURN count(p) AS count");
+
+      Value parameters = Values.parameters(LATITUDE_COLUMN, lat, LONGITUDE_COLUMN, lgn, "maxDistance",
+          maxDistanceInKM);
+
+      count.setCount(tx.run(remember(cypherQuery.toString(), parameters)).single().get("count").asLong());
+
+      tx.commit();
+      return Status.OK;
+    } catch (Exception e) {
+      if (tx != null && tx.isOpen()) {
+        try {
+          tx.rollback();
+        } catch (Exception rollbackException) {
+          System.err.println("Failed to rollback transaction: " + rollbackException.getMessage());
+        }
+      }
+      System.err.println("Error occurred during the execution of the Distance count query: " + e.getMessage());
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount count) {
+    Transaction tx = null;
+    try {
+      tx = session.beginTransaction(txConfig);
+
+      List<String> coodenateList = polygonVertices.stream()
+          .map((GeoPoint point) -> point.getLongitude() + " " + point.getLatitude())
+          .collect(Collectors.toList());
+
+      String coodenates = String.join(",", coodenateList);
+
+      StringBuilder cypherQuery = new StringBuilder("WITH 'POLYGON((")
+          .append(coodenates).append("))' as polygon ")
+          .append("CALL spatial.intersects($layer,polygon) YIELD node AS p ")
+          .append("WHERE p.id IS NOT NULL AND p.time_of_record IS NOT NULL ")
+          .append("RETURN count(p) AS count");
+
+      count.setCount(tx.run(remember(cypherQuery.toString(), Values.parameters("layer", table))).single().get("count")
+          .asLong());
+
+      tx.commit();
+      return Status.OK;
+    } catch (Exception e) {
+      if (tx != null && tx.isOpen()) {
+        try {
+          tx.rollback();
+        } catch (Exception rollbackException) {
+          System.err.println("Failed to rollback transaction: " + rollbackException.getMessage());
+        }
+      }
+      System.err.println("Error occurred during the execution of the polygon count query: " + e.getMessage());
+      return timedOut(e) ? Status.TIMEOUT : Status.ERROR;
+    }
+  }
+
+  /**
+   * Returns the projection of the payload attributes for the RETURN clause of a scan.
+   */
+  private static String fieldsProjection(Set<String> fields) {
+    if (fields == null) {
+      return ", properties(p) AS fields";
+    }
+    if (fields.isEmpty()) {
+      return "";
+    }
+    return fields.stream().map(name -> ".`" + name.replace("`", "``") + "`")
+        .collect(Collectors.joining(",", ", p{", "} AS fields"));
+  }
+
+  private static void readGeoPoint(Record record, GeoPoint gp) {
+    gp.setId(record.get("p." + PRIMARY_KEY).asString());
+    gp.setLatitude(record.get("p." + LATITUDE_COLUMN).asDouble());
+    gp.setLongitude(record.get("p." + LONGITUDE_COLUMN).asDouble());
+    gp.setTimeOfRecord(new Date(record.get("p." + TIME_OF_RECORD_COLUMN).asLong()));
+
+    if (!record.containsKey("fields")) {
+      return;
+    }
+    for (Map.Entry<String, Object> value : record.get("fields").asMap().entrySet()) {
+      // properties(p) also holds the point columns and whatever the spatial layer adds.
+      if (!POINT_PROPERTIES.contains(value.getKey())
+          && (value.getValue() instanceof String || value.getValue() instanceof Number)) {
+        gp.getFields().put(value.getKey(), GeoPayload.fromValue(value.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Table names are used as node labels, quoted so any table name is valid.
+   */
+  private static String label(String table) {
+    return "`" + table.replace("`", "``") + "`";
+  }
+
+  private Query remember(String text, Value parameters) {
+    lastQuery = new Query(text, parameters);
+    return lastQuery;
+  }
+
+  /**
+   * Runs the last query again under PROFILE and returns its operator tree with the
+   * rows and db hits of every operator.
+   */
+  @Override
+  public Status explainLast(StringBuilder plan) {
+    if (lastQuery == null) {
+      return Status.NOT_FOUND;
+    }
+    try {
+      ResultSummary summary = session.run("PROFILE " + lastQuery.text(), lastQuery.parameters()).consume();
+      appendPlan(plan, summary.profile(), 0);
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Failed to profile the last query: " + e.getMessage());
       return Status.ERROR;
+    }
+  }
 
-    } finally {
-      polygonLock.unlock();
+  private static void appendPlan(StringBuilder plan, ProfiledPlan operator, int depth) {
+    for (int i = 0; i < depth; i++) {
+      plan.append("  ");
+    }
+    plan.append(operator.operatorType())
+        .append(" rows=").append(operator.records())
+        .append(" dbHits=").append(operator.dbHits())
+        .append('\n');
+    for (ProfiledPlan child : operator.children()) {
+      appendPlan(plan, child, depth + 1);
     }
   }
 
+  private static boolean hasLayer(Session session, String layer) {
+    return session.run("CALL spatial.layers() YIELD name WHERE name = $layer RETURN name",
+        Values.parameters("layer", layer)).hasNext();
+  }
+
   @Override
   public Status read(String label, String key, Set<String> fields, Map<String, ByteIterator> result) {
     return Status.ERROR;
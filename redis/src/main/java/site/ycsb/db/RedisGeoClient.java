@@ -3,28 +3,49 @@ package site.ycsb.db;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import redis.clients.jedis.BasicCommands;
 import redis.clients.jedis.GeoCoordinate;
 import redis.clients.jedis.GeoRadiusResponse;
 import redis.clients.jedis.GeoUnit;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCommands;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
 import redis.clients.jedis.exceptions.JedisException;
 import redis.clients.jedis.params.geo.GeoRadiusParam;
+import redis.clients.util.SafeEncoder;
 import site.ycsb.ByteIterator;
 import site.ycsb.DB;
 import site.ycsb.DBException;
 import site.ycsb.Status;
+import site.ycsb.StringByteIterator;
+import site.ycsb.geodata.GeoCorridor;
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoDBAbstarct;
+import site.ycsb.geodata.GeoFenceListener;
+import site.ycsb.geodata.GeoFenceSubscription;
+import site.ycsb.geodata.GeoFootprint;
+import site.ycsb.geodata.GeoPage;
+import site.ycsb.geodata.GeoPayload;
 import site.ycsb.geodata.GeoPoint;
+import site.ycsb.geodata.GeoServerStats;
 
 public class RedisGeoClient extends DB {
 
@@ -40,7 +61,49 @@ public class RedisGeoClient extends DB {
   public static final String PORT_PROPERTY = "redis.port";
   public static final String PASSWORD_PROPERTY = "redis.password";
 
+  /** The keyspace notifications of the point hashes, the only events that carry the point key. */
+  private static final String KEYSPACE_PATTERN = "__keyspace@*__:*";
+
+  /** The number of members a ZSCAN page asks for. */
+  private static final int SCAN_BATCH = 1000;
+
+  /** The exact size of a key; without SAMPLES 0 the size of an aggregate is sampled. */
+  private static final String MEMORY_USAGE_SCRIPT = "return redis.call('MEMORY', 'USAGE', KEYS[1], 'SAMPLES', '0')";
+
+  /** The keyspace events the geofences need: keyspace notifications of hash commands. */
+  private static final String NOTIFY_EVENTS = "Kh";
+
+  /** The number of clients of this JVM with a fence subscriber, and the setting they replaced. */
+  private static int fenceClients;
+  private static String savedNotifyEvents;
+
+  /**
+   * A subscribed region: the listener is told of the points inserted into it.
+   */
+  private static final class Fence {
+    private final ArrayList<GeoPoint> region;
+    private final GeoFenceListener listener;
+
+    private Fence(ArrayList<GeoPoint> region, GeoFenceListener listener) {
+      this.region = region;
+      this.listener = listener;
+    }
+  }
+
+  /** The subscribed regions of this client, by table and subscription id. */
+  private final Map<String, Map<String, Fence>> fences = new ConcurrentHashMap<>();
+
+  /** The one keyspace subscriber of all the regions of this client, started by the first. */
+  private GeoFenceSubscription fenceSubscriber;
+
+  /** The connection of the asynchronous operations, opened by the first one. */
+  private RedisGeoPipeline pipeline;
+
   public void init() throws DBException {
+    jedis = connect();
+  }
+
+  private Jedis connect() {
     Properties props = getProperties();
     int port;
 
@@ -52,17 +115,45 @@ public class RedisGeoClient extends DB {
     }
     String host = props.getProperty(HOST_PROPERTY);
 
-    jedis = new Jedis(host, port);
-    ((Jedis) jedis).connect();
+    // The socket timeout bounds every command; a subscription lifts it for itself.
+    int opTimeoutMs = Integer.parseInt(props.getProperty(GeoDBAbstarct.OP_TIMEOUT_PROPERTY,
+        GeoDBAbstarct.OP_TIMEOUT_PROPERTY_DEFAULT));
+    Jedis connection = new Jedis(host, port, opTimeoutMs > 0 ? opTimeoutMs : Protocol.DEFAULT_TIMEOUT);
+    connection.connect();
 
     String password = props.getProperty(PASSWORD_PROPERTY);
     if (password != null) {
-      ((BasicCommands) jedis).auth(password);
+      ((BasicCommands) connection).auth(password);
     }
+    return connection;
+  }
 
+  /**
+   * Whether the command ran into the socket timeout. The reply may still arrive and would
+   * be read as the reply of the next command, so the connection is replaced.
+   */
+  private boolean timedOut(JedisException e) {
+    if (!(e.getCause() instanceof SocketTimeoutException)) {
+      return false;
+    }
+    try {
+      ((Closeable) jedis).close();
+    } catch (IOException closing) {
+      // The connection is dropped anyway.
+    }
+    jedis = connect();
+    return true;
   }
 
   public void cleanup() throws DBException {
+    fences.clear();
+    stopFenceSubscriber();
+
+    if (pipeline != null) {
+      pipeline.close();
+      pipeline = null;
+    }
+
     try {
       ((Closeable) jedis).close();
     } catch (IOException e) {
@@ -73,8 +164,24 @@ public class RedisGeoClient extends DB {
   @Override
   public Status reset(String table) {
     try {
-    
-      ((BasicCommands) jedis).flushDB();
+      // Each table owns one geo set (its spatial index) plus one hash per point. The
+      // hashes are deleted a page of the geo set at a time, with one DEL per page.
+      String geoKey = geoKey(table);
+      ScanParams params = new ScanParams().count(SCAN_BATCH);
+      String cursor = ScanParams.SCAN_POINTER_START;
+      do {
+        ScanResult<Tuple> page = jedis.zscan(geoKey, cursor, params);
+        List<Tuple> members = page.getResult();
+        if (!members.isEmpty()) {
+          String[] keys = new String[members.size()];
+          for (int i = 0; i < keys.length; i++) {
+            keys[i] = members.get(i).getElement();
+          }
+          ((Jedis) jedis).del(keys);
+        }
+        cursor = page.getStringCursor();
+      } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+      jedis.del(geoKey);
       return Status.OK;
 
     } catch (JedisException e) {
@@ -85,15 +192,122 @@ public class RedisGeoClient extends DB {
     }
   }
 
+  /**
+   * The geo set is the spatial index and is written by every insert, so there is
+   * nothing to build separately.
+   */
+  @Override
+  public Status createSpatialIndex(String table) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  /**
+   * The index size is the MEMORY USAGE of the geo set and the data size the sum over
+   * the point hashes. Jedis has no MEMORY command, so it runs as a script on one key.
+   */
+  @Override
+  public Status footprint(String table, GeoFootprint result) {
+    try {
+      String geoKey = geoKey(table);
+      result.setPoints(jedis.zcard(geoKey));
+      result.setIndexSize(memoryUsage(geoKey));
+      result.setDataSize(membersMemoryUsage(geoKey));
+      return Status.OK;
+
+    } catch (JedisException e) {
+      System.err.println("Error in processing footprint of table " + table + ": " + e.getMessage());
+
+      return Status.ERROR;
+    }
+  }
+
+  private long memoryUsage(String key) {
+    Object bytes = ((Jedis) jedis).eval(MEMORY_USAGE_SCRIPT, 1, key);
+    return bytes == null ? 0 : (Long) bytes;
+  }
+
+  /**
+   * Sums the sizes of the point hashes of a geo set a ZSCAN page at a time, with the
+   * sizes of a page read in one pipeline. The server only runs one short script per
+   * key, which gets the key in KEYS as a cluster needs.
+   */
+  private long membersMemoryUsage(String geoKey) {
+    Jedis connection = (Jedis) jedis;
+    byte[] sha = SafeEncoder.encode(connection.scriptLoad(MEMORY_USAGE_SCRIPT));
+    ScanParams params = new ScanParams().count(SCAN_BATCH);
+    String cursor = ScanParams.SCAN_POINTER_START;
+    long total = 0;
+    do {
+      ScanResult<Tuple> page = connection.zscan(geoKey, cursor, params);
+      Pipeline batch = connection.pipelined();
+      List<Response<Object>> sizes = new ArrayList<>(page.getResult().size());
+      for (Tuple member : page.getResult()) {
+        sizes.add(batch.evalsha(sha, 1, member.getBinaryElement()));
+      }
+      batch.sync();
+      for (Response<Object> size : sizes) {
+        Object bytes = size.get();
+        total += bytes == null ? 0 : (Long) bytes;
+      }
+      cursor = page.getStringCursor();
+    } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    return total;
+  }
+
+  /**
+   * Samples INFO: memory, persistence (background saves and AOF rewrites fork the
+   * server) and the command and eviction counters.
+   */
+  @Override
+  public Status serverStats(GeoServerStats result) {
+    try {
+      Map<String, String> info = new HashMap<>();
+      for (String line : ((Jedis) jedis).info().split("\r?\n")) {
+        int colon = line.indexOf(':');
+        if (colon > 0 && !line.startsWith("#")) {
+          info.put(line.substring(0, colon), line.substring(colon + 1));
+        }
+      }
+
+      result.gauge("USED_MEMORY_MB", parseLong(info, "used_memory") / (1024 * 1024));
+      result.gauge("USED_MEMORY_RSS_MB", parseLong(info, "used_memory_rss") / (1024 * 1024));
+      result.gauge("CONNECTED_CLIENTS", parseLong(info, "connected_clients"));
+      result.gauge("RDB_BGSAVE_IN_PROGRESS", parseLong(info, "rdb_bgsave_in_progress"));
+      result.gauge("AOF_REWRITE_IN_PROGRESS", parseLong(info, "aof_rewrite_in_progress"));
+      result.counter("COMMANDS", parseLong(info, "total_commands_processed"));
+      result.counter("EXPIRED_KEYS", parseLong(info, "expired_keys"));
+      result.counter("EVICTED_KEYS", parseLong(info, "evicted_keys"));
+      return Status.OK;
+
+    } catch (JedisException e) {
+      System.err.println("Error in processing server stats: " + e.getMessage());
+
+      return Status.ERROR;
+    }
+  }
+
+  private static long parseLong(Map<String, String> info, String name) {
+    String value = info.get(name);
+    return value == null ? 0 : Long.parseLong(value.trim());
+  }
+
   @Override
   public Status insert(String table, String key, GeoPoint gp) {
     try {
-      Long qttRecords = jedis.geoadd(LOCATION_COLUMN, gp.getLongitude(), gp.getLatitude(), key);
+      Long qttRecords = jedis.geoadd(geoKey(table), gp.getLongitude(), gp.getLatitude(), key);
       if (qttRecords != null && qttRecords >= 1) {
 
         Long result = jedis.hsetnx(key, TIME_OF_RECORD_COLUMN, GeoUtils.dateToString(gp.getTimeOfRecord()));
 
         if (result == 1) {
+          // The payload attributes share the hash with the time of record.
+          if (!gp.getFields().isEmpty()) {
+            Map<String, String> fields = new HashMap<>();
+            for (Map.Entry<String, ByteIterator> field : gp.getFields().entrySet()) {
+              fields.put(field.getKey(), String.valueOf(GeoPayload.toValue(field.getValue())));
+            }
+            jedis.hmset(key, fields);
+          }
           return Status.OK;
         }
       }
@@ -103,20 +317,49 @@ public class RedisGeoClient extends DB {
     } catch (JedisException e) {
       // Tratar exceção ao interagir com o Redis
       System.err.println("Error in processing insert of table " + table + ": " + e.getMessage());
-
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
       return Status.ERROR;
     }
   }
 
   @Override
-  public Status scanKNN(String table, double lat, double lgn, int k, ArrayList<GeoPoint> result) {
+  public Status readPoint(String table, String key, GeoPoint result) {
+    try {
+      List<GeoCoordinate> positions = jedis.geopos(geoKey(table), key);
+      if (positions == null || positions.isEmpty() || positions.get(0) == null) {
+        return Status.NOT_FOUND;
+      }
+
+      GeoCoordinate gc = positions.get(0);
+
+      result.setId(key);
+      result.setLongitude(gc.getLongitude());
+      result.setLatitude(gc.getLatitude());
+      readHash(key, null, result);
+
+      return Status.OK;
+
+    } catch (JedisException e) {
+      System.err.println("Error in processing read of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
+    }
+    return Status.ERROR;
+  }
+
+  @Override
+  public Status scanKNN(String table, double lat, double lgn, int k, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     try {
       // Perform the KNN query using georadius with the specified center, radius, and
       // count
       GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withCoord().sortAscending().count(k);
       GeoCoordinate center = new GeoCoordinate(lgn, lat);
 
-      List<GeoRadiusResponse> results = jedis.georadius(LOCATION_COLUMN, center.getLongitude(),
+      List<GeoRadiusResponse> results = jedis.georadius(geoKey(table), center.getLongitude(),
           center.getLatitude(), Double.MAX_VALUE, GeoUnit.KM, param);
 
       // Iterar sobre os resultados
@@ -124,14 +367,12 @@ public class RedisGeoClient extends DB {
         String id = point.getMemberByString();
         GeoCoordinate gc = point.getCoordinate();
 
-        Date time = GeoUtils.stringtoDate(jedis.hget(id, TIME_OF_RECORD_COLUMN));
-
         GeoPoint gp = new GeoPoint();
 
         gp.setId(id);
         gp.setLongitude(gc.getLongitude());
         gp.setLatitude(gc.getLatitude());
-        gp.setTimeOfRecord(time);
+        readHash(id, fields, gp);
 
         result.add(gp);
       }
@@ -141,33 +382,34 @@ public class RedisGeoClient extends DB {
     } catch (JedisException e) {
       // Tratar exceção ao interagir com o Redis
       System.err.println("Error in processing scan knn of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
     }
     return Status.ERROR;
   }
 
   @Override
-  public Status scanByDistance(String table, double lat, double lgn, double maxDistance,
+  public Status scanByDistance(String table, double lat, double lgn, double maxDistance, Set<String> fields,
       ArrayList<GeoPoint> result) {
     try {
 
       // Perform the KNN query using georadius with the specified center, radius, and
       // count
       GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withDist().withCoord();
-      List<GeoRadiusResponse> results = jedis.georadius(LOCATION_COLUMN, lgn, lat, maxDistance, GeoUnit.KM, param);
+      List<GeoRadiusResponse> results = jedis.georadius(geoKey(table), lgn, lat, maxDistance, GeoUnit.KM, param);
 
       // Iterar sobre os resultados
       for (GeoRadiusResponse point : results) {
         String id = point.getMemberByString();
         GeoCoordinate gc = point.getCoordinate();
 
-        Date time = GeoUtils.stringtoDate(jedis.hget(id, TIME_OF_RECORD_COLUMN));
-
         GeoPoint gp = new GeoPoint();
 
         gp.setId(id);
         gp.setLongitude(gc.getLongitude());
         gp.setLatitude(gc.getLatitude());
-        gp.setTimeOfRecord(time);
+        readHash(id, fields, gp);
 
         result.add(gp);
       }
@@ -177,19 +419,71 @@ public class RedisGeoClient extends DB {
     } catch (JedisException e) {
       // Tratar exceção ao interagir com o Redis
       System.err.println("Error in processing scan distance of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
     }
     return Status.ERROR;
   }
 
   @Override
-  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, ArrayList<GeoPoint> result) {
+  public Status scanByDistancePage(String table, double lat, double lgn, double maxDistance, int pageSize,
+      String continuation, Set<String> fields, GeoPage page) {
+    try {
+      // The continuation is the offset of the page. GEORADIUS has no offset, so the
+      // query returns the sorted members up to the end of the page plus one.
+      int offset = 0;
+      if (continuation != null) {
+        offset = Integer.parseInt(continuation);
+      }
+
+      GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withCoord().sortAscending()
+          .count(offset + pageSize + 1);
+      List<GeoRadiusResponse> results = jedis.georadius(geoKey(table), lgn, lat, maxDistance, GeoUnit.KM, param);
+
+      for (int i = offset; i < Math.min(results.size(), offset + pageSize); i++) {
+        GeoRadiusResponse point = results.get(i);
+        String id = point.getMemberByString();
+        GeoCoordinate gc = point.getCoordinate();
+
+        GeoPoint gp = new GeoPoint();
+
+        gp.setId(id);
+        gp.setLongitude(gc.getLongitude());
+        gp.setLatitude(gc.getLatitude());
+        readHash(id, fields, gp);
+
+        page.getPoints().add(gp);
+      }
+
+      if (results.size() > offset + pageSize) {
+        page.setContinuation(Integer.toString(offset + pageSize));
+      } else {
+        page.setContinuation(null);
+      }
+      return Status.OK;
+
+    } catch (NumberFormatException e) {
+      return Status.BAD_REQUEST;
+    } catch (JedisException e) {
+      System.err.println("Error in processing scan distance page of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
+    }
+    return Status.ERROR;
+  }
+
+  @Override
+  public Status scanByPolygon(String table, ArrayList<GeoPoint> polygonVertices, Set<String> fields,
+      ArrayList<GeoPoint> result) {
     try {
 
       double maxDistance = GeoUtils.calculateMaxDistanceInKM(polygonVertices);
 
       // Obter todos os pontos dentro do polígono usando o comando GEORADIUS
       GeoRadiusParam geoRadiusParam = GeoRadiusParam.geoRadiusParam().withCoord().sortAscending();
-      List<GeoRadiusResponse> results = jedis.georadius(LOCATION_COLUMN, polygonVertices.get(0).getLongitude(),
+      List<GeoRadiusResponse> results = jedis.georadius(geoKey(table), polygonVertices.get(0).getLongitude(),
           polygonVertices.get(0).getLatitude(), maxDistance, GeoUnit.KM, geoRadiusParam);
 
       ArrayList<String> uniqueIdentifiers = new ArrayList<>();
@@ -207,14 +501,12 @@ public class RedisGeoClient extends DB {
 
         if (GeoUtils.isCoordinateInsidePolygon(gc.getLongitude(), gc.getLatitude(), polygonVertices)) {
 
-          Date time = GeoUtils.stringtoDate(jedis.hget(id, TIME_OF_RECORD_COLUMN));
-
           GeoPoint gp = new GeoPoint();
 
           gp.setId(id);
           gp.setLongitude(gc.getLongitude());
           gp.setLatitude(gc.getLatitude());
-          gp.setTimeOfRecord(time);
+          readHash(id, fields, gp);
 
           result.add(gp);
         }
@@ -224,10 +516,384 @@ public class RedisGeoClient extends DB {
     } catch (JedisException e) {
       // Tratar exceção ao interagir com o Redis
       System.err.println("Error in processing scan distance of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
+    }
+    return Status.ERROR;
+  }
+
+  @Override
+  public Status countByDistance(String table, double lat, double lgn, double maxDistance, GeoCount result) {
+    try {
+      // Without WITHCOORD the reply is the bare members, and no hash is read.
+      List<GeoRadiusResponse> results = jedis.georadius(geoKey(table), lgn, lat, maxDistance, GeoUnit.KM);
+      result.setCount(results.size());
+      return Status.OK;
+
+    } catch (JedisException e) {
+      System.err.println("Error in processing count distance of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
+    }
+    return Status.ERROR;
+  }
+
+  @Override
+  public Status countByPolygon(String table, ArrayList<GeoPoint> polygonVertices, GeoCount result) {
+    try {
+      double maxDistance = GeoUtils.calculateMaxDistanceInKM(polygonVertices);
+
+      // The polygon is filtered on the client, so the coordinates are still needed, but no hash is read.
+      GeoRadiusParam geoRadiusParam = GeoRadiusParam.geoRadiusParam().withCoord();
+      List<GeoRadiusResponse> results = jedis.georadius(geoKey(table), polygonVertices.get(0).getLongitude(),
+          polygonVertices.get(0).getLatitude(), maxDistance, GeoUnit.KM, geoRadiusParam);
+
+      long count = 0;
+      for (GeoRadiusResponse point : results) {
+        GeoCoordinate gc = point.getCoordinate();
+        if (GeoUtils.isCoordinateInsidePolygon(gc.getLongitude(), gc.getLatitude(), polygonVertices)) {
+          count++;
+        }
+      }
+      result.setCount(count);
+      return Status.OK;
+
+    } catch (JedisException e) {
+      System.err.println("Error in processing count polygon of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
+    }
+    return Status.ERROR;
+  }
+
+  private RedisGeoPipeline pipeline() {
+    if (pipeline == null) {
+      pipeline = new RedisGeoPipeline(this::connect);
+    }
+    return pipeline;
+  }
+
+  /*
+   * The asynchronous operations are pipelined on a connection of their own, see
+   * RedisGeoPipeline. They run the same commands as the synchronous ones.
+   */
+
+  @Override
+  public CompletableFuture<Status> insertAsync(String table, String key, GeoPoint gp) {
+    Map<String, String> fields = new HashMap<>();
+    for (Map.Entry<String, ByteIterator> field : gp.getFields().entrySet()) {
+      fields.put(field.getKey(), String.valueOf(GeoPayload.toValue(field.getValue())));
+    }
+    return pipeline().submit(new RedisGeoPipeline.InsertOperation(geoKey(table), key, gp.getLongitude(),
+        gp.getLatitude(), GeoUtils.dateToString(gp.getTimeOfRecord()), fields));
+  }
+
+  @Override
+  public CompletableFuture<Status> readPointAsync(String table, String key, GeoPoint result) {
+    return pipeline().submit(new RedisGeoPipeline.ReadOperation(geoKey(table), key, result));
+  }
+
+  @Override
+  public CompletableFuture<Status> scanKNNAsync(String table, double lat, double lgn, int k, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withCoord().sortAscending().count(k);
+    RedisGeoPipeline.Query query = new RedisGeoPipeline.Query(geoKey(table), lgn, lat, Double.MAX_VALUE, param,
+        member -> true);
+    return pipeline().submit(new RedisGeoPipeline.ScanOperation(Collections.singletonList(query), fields, result));
+  }
+
+  @Override
+  public CompletableFuture<Status> scanByDistanceAsync(String table, double lat, double lgn, double maxDistance,
+      Set<String> fields, ArrayList<GeoPoint> result) {
+    GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withDist().withCoord();
+    RedisGeoPipeline.Query query = new RedisGeoPipeline.Query(geoKey(table), lgn, lat, maxDistance, param,
+        member -> true);
+    return pipeline().submit(new RedisGeoPipeline.ScanOperation(Collections.singletonList(query), fields, result));
+  }
+
+  @Override
+  public CompletableFuture<Status> scanByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+      Set<String> fields, ArrayList<GeoPoint> result) {
+    RedisGeoPipeline.Query query = polygonQuery(table, polygonVertices,
+        GeoRadiusParam.geoRadiusParam().withCoord().sortAscending());
+    return pipeline().submit(new RedisGeoPipeline.ScanOperation(Collections.singletonList(query), fields, result));
+  }
+
+  @Override
+  public CompletableFuture<Status> scanByCorridorAsync(String table, ArrayList<GeoPoint> polyline, double bufferKm,
+      Set<String> fields, ArrayList<GeoPoint> result) {
+    GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withCoord();
+    List<RedisGeoPipeline.Query> queries = new ArrayList<>();
+
+    for (int i = 0; i < Math.max(1, polyline.size() - 1); i++) {
+      GeoPoint a = polyline.get(i);
+      GeoPoint b = polyline.get(Math.min(i + 1, polyline.size() - 1));
+      double midLat = (a.getLatitude() + b.getLatitude()) / 2;
+      double midLgn = (a.getLongitude() + b.getLongitude()) / 2;
+      double radius = GeoCorridor.distanceToSegmentKm(midLat, midLgn, a, a) + bufferKm;
+
+      queries.add(new RedisGeoPipeline.Query(geoKey(table), midLgn, midLat, radius, param, member ->
+          GeoCorridor.distanceToSegmentKm(member.getCoordinate().getLatitude(),
+              member.getCoordinate().getLongitude(), a, b) <= bufferKm));
+    }
+    return pipeline().submit(new RedisGeoPipeline.ScanOperation(queries, fields, result));
+  }
+
+  @Override
+  public CompletableFuture<Status> countByDistanceAsync(String table, double lat, double lgn, double maxDistance,
+      GeoCount result) {
+    RedisGeoPipeline.Query query = new RedisGeoPipeline.Query(geoKey(table), lgn, lat, maxDistance, null,
+        member -> true);
+    return pipeline().submit(new RedisGeoPipeline.CountOperation(query, result));
+  }
+
+  @Override
+  public CompletableFuture<Status> countByPolygonAsync(String table, ArrayList<GeoPoint> polygonVertices,
+      GeoCount result) {
+    RedisGeoPipeline.Query query = polygonQuery(table, polygonVertices, GeoRadiusParam.geoRadiusParam().withCoord());
+    return pipeline().submit(new RedisGeoPipeline.CountOperation(query, result));
+  }
+
+  /**
+   * The circle around the first vertex that covers the polygon, keeping the members inside it.
+   */
+  private static RedisGeoPipeline.Query polygonQuery(String table, ArrayList<GeoPoint> polygonVertices,
+      GeoRadiusParam param) {
+    double maxDistance = GeoUtils.calculateMaxDistanceInKM(polygonVertices);
+    return new RedisGeoPipeline.Query(geoKey(table), polygonVertices.get(0).getLongitude(),
+        polygonVertices.get(0).getLatitude(), maxDistance, param, member -> GeoUtils.isCoordinateInsidePolygon(
+            member.getCoordinate().getLongitude(), member.getCoordinate().getLatitude(), polygonVertices));
+  }
+
+  /**
+   * Reads the time of record and the projected payload attributes from the hash of a point.
+   */
+  private void readHash(String key, Set<String> fields, GeoPoint gp) {
+    if (fields == null) {
+      for (Map.Entry<String, String> value : jedis.hgetAll(key).entrySet()) {
+        if (TIME_OF_RECORD_COLUMN.equals(value.getKey())) {
+          gp.setTimeOfRecord(GeoUtils.stringtoDate(value.getValue()));
+        } else {
+          gp.getFields().put(value.getKey(), new StringByteIterator(value.getValue()));
+        }
+      }
+      return;
+    }
+
+    List<String> names = new ArrayList<>(fields);
+    names.add(0, TIME_OF_RECORD_COLUMN);
+    List<String> values = jedis.hmget(key, names.toArray(new String[0]));
+
+    gp.setTimeOfRecord(GeoUtils.stringtoDate(values.get(0)));
+    for (int i = 1; i < names.size(); i++) {
+      if (values.get(i) != null) {
+        gp.getFields().put(names.get(i), new StringByteIterator(values.get(i)));
+      }
+    }
+  }
+
+  /**
+   * The geo set holding the points of a table.
+   */
+  private static String geoKey(String table) {
+    return table + ":" + LOCATION_COLUMN;
+  }
+
+  @Override
+  public Status scanByCorridor(String table, ArrayList<GeoPoint> polyline, double bufferKm, Set<String> fields,
+      ArrayList<GeoPoint> result) {
+    try {
+      // There is no corridor command, so cover each segment with the smallest circle
+      // around its midpoint, then keep the members actually within the buffer.
+      GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withCoord();
+      Set<String> seen = new HashSet<>();
+
+      for (int i = 0; i < Math.max(1, polyline.size() - 1); i++) {
+        GeoPoint a = polyline.get(i);
+        GeoPoint b = polyline.get(Math.min(i + 1, polyline.size() - 1));
+        double midLat = (a.getLatitude() + b.getLatitude()) / 2;
+        double midLgn = (a.getLongitude() + b.getLongitude()) / 2;
+        double radius = GeoCorridor.distanceToSegmentKm(midLat, midLgn, a, a) + bufferKm;
+
+        List<GeoRadiusResponse> results = jedis.georadius(geoKey(table), midLgn, midLat, radius, GeoUnit.KM,
+            param);
+
+        for (GeoRadiusResponse point : results) {
+          String id = point.getMemberByString();
+          GeoCoordinate gc = point.getCoordinate();
+
+          if (seen.contains(id)
+              || GeoCorridor.distanceToSegmentKm(gc.getLatitude(), gc.getLongitude(), a, b) > bufferKm) {
+            continue;
+          }
+          seen.add(id);
+
+          GeoPoint gp = new GeoPoint();
+
+          gp.setId(id);
+          gp.setLongitude(gc.getLongitude());
+          gp.setLatitude(gc.getLatitude());
+          readHash(id, fields, gp);
+
+          result.add(gp);
+        }
+      }
+      return Status.OK;
+
+    } catch (JedisException e) {
+      System.err.println("Error in processing scan corridor of table " + table + ": " + e.getMessage());
+      if (timedOut(e)) {
+        return Status.TIMEOUT;
+      }
     }
     return Status.ERROR;
   }
 
+  @Override
+  public Status subscribe(String table, String subscriptionId, ArrayList<GeoPoint> region,
+      GeoFenceListener listener) {
+    try {
+      startFenceSubscriber();
+      fences.computeIfAbsent(table, k -> new ConcurrentHashMap<>()).put(subscriptionId, new Fence(region, listener));
+      return Status.OK;
+
+    } catch (JedisException e) {
+      System.err.println("Error in processing subscribe to table " + table + ": " + e.getMessage());
+    }
+    return Status.ERROR;
+  }
+
+  @Override
+  public Status unsubscribe(String table, String subscriptionId) {
+    Map<String, Fence> tableFences = fences.get(table);
+    if (tableFences == null || tableFences.remove(subscriptionId) == null) {
+      return Status.NOT_FOUND;
+    }
+    return Status.OK;
+  }
+
+  /**
+   * Starts the keyspace subscriber shared by all the regions of this client. The event of
+   * a point hash only carries its key, so its position is looked up once per table with
+   * regions, on a second connection as a subscribed one cannot run commands, and matched
+   * against all the regions of that table. A broken connection is replaced on the next
+   * poll.
+   */
+  private synchronized void startFenceSubscriber() {
+    if (fenceSubscriber != null) {
+      return;
+    }
+    enableKeyspaceEvents();
+    fenceSubscriber = new GeoFenceSubscription("redis-fences") {
+      private Jedis subscriber;
+      private Jedis lookup;
+      private volatile JedisPubSub pubSub;
+
+      @Override
+      protected void poll() {
+        try {
+          if (subscriber == null) {
+            subscriber = connect();
+            lookup = connect();
+          }
+          pubSub = new JedisPubSub() {
+            @Override
+            public void onPMessage(String pattern, String channel, String message) {
+              notifyFences(lookup, channel.substring(channel.indexOf(':') + 1));
+            }
+          };
+          // Blocks until punsubscribe or until the connection breaks.
+          subscriber.psubscribe(pubSub, KEYSPACE_PATTERN);
+        } catch (JedisException e) {
+          closeConnections();
+          throw e;
+        }
+      }
+
+      @Override
+      protected void onClose() {
+        JedisPubSub current = pubSub;
+        if (current != null && current.isSubscribed()) {
+          current.punsubscribe();
+        }
+        closeConnections();
+      }
+
+      private synchronized void closeConnections() {
+        if (subscriber != null) {
+          subscriber.close();
+          lookup.close();
+          subscriber = null;
+          lookup = null;
+        }
+      }
+    };
+    fenceSubscriber.start();
+  }
+
+  private void notifyFences(Jedis lookup, String key) {
+    for (Map.Entry<String, Map<String, Fence>> table : fences.entrySet()) {
+      if (table.getValue().isEmpty()) {
+        continue;
+      }
+      List<GeoCoordinate> positions = lookup.geopos(geoKey(table.getKey()), key);
+      if (positions == null || positions.isEmpty() || positions.get(0) == null) {
+        continue;
+      }
+      GeoCoordinate gc = positions.get(0);
+      for (Map.Entry<String, Fence> fence : table.getValue().entrySet()) {
+        if (GeoUtils.isCoordinateInsidePolygon(gc.getLongitude(), gc.getLatitude(), fence.getValue().region)) {
+          fence.getValue().listener.onEnter(fence.getKey(), key);
+        }
+      }
+    }
+  }
+
+  private synchronized void stopFenceSubscriber() {
+    if (fenceSubscriber == null) {
+      return;
+    }
+    fenceSubscriber.close();
+    fenceSubscriber = null;
+    restoreKeyspaceEvents();
+  }
+
+  /**
+   * Adds the keyspace events of the hash commands to notify-keyspace-events. The first
+   * client to subscribe saves the setting and the last one to stop restores it.
+   */
+  private void enableKeyspaceEvents() {
+    synchronized (RedisGeoClient.class) {
+      if (fenceClients == 0) {
+        List<String> config = ((Jedis) jedis).configGet("notify-keyspace-events");
+        savedNotifyEvents = config.size() > 1 ? config.get(1) : "";
+        StringBuilder events = new StringBuilder(savedNotifyEvents);
+        for (char event : NOTIFY_EVENTS.toCharArray()) {
+          if (events.indexOf(String.valueOf(event)) < 0) {
+            events.append(event);
+          }
+        }
+        ((Jedis) jedis).configSet("notify-keyspace-events", events.toString());
+      }
+      fenceClients++;
+    }
+  }
+
+  private void restoreKeyspaceEvents() {
+    synchronized (RedisGeoClient.class) {
+      if (--fenceClients == 0) {
+        try {
+          ((Jedis) jedis).configSet("notify-keyspace-events", savedNotifyEvents);
+        } catch (JedisException e) {
+          System.err.println("Could not restore notify-keyspace-events: " + e.getMessage());
+        }
+      }
+    }
+  }
+
   @Override
   public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
     return Status.ERROR;
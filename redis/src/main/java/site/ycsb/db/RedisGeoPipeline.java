@@ -0,0 +1,444 @@
+package site.ycsb.db;
+
+import java.io.Closeable;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import redis.clients.jedis.GeoCoordinate;
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.GeoUnit;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.geo.GeoRadiusParam;
+import site.ycsb.Status;
+import site.ycsb.StringByteIterator;
+import site.ycsb.geodata.GeoCount;
+import site.ycsb.geodata.GeoPoint;
+
+/**
+ * Runs the asynchronous operations of a {@link RedisGeoClient} on a connection of its own.
+ * A dispatcher thread takes all operations queued since its last round trip and sends
+ * them as one pipeline, so the operations a client thread keeps in flight share the
+ * round trips. An operation takes two pipelined rounds: its geo commands, then the hash
+ * reads or writes that depend on their replies. A batch that runs into the socket
+ * timeout fails with Status.TIMEOUT and the next one is sent on a new connection, as the
+ * late replies would otherwise be read as the replies of the next batch.
+ */
+final class RedisGeoPipeline implements Closeable {
+
+  /**
+   * One queued operation. A failed reply fails only the operation it belongs to.
+   */
+  abstract static class Operation {
+    private final CompletableFuture<Status> future = new CompletableFuture<>();
+    private Status failed;
+
+    /** Queues the geo commands of the operation. */
+    abstract void send(Pipeline pipeline);
+
+    /** Queues the commands that depend on the replies of the first round. */
+    void sendFollowUp(Pipeline pipeline) {
+    }
+
+    /** Fills in the result once all replies arrived. */
+    abstract Status complete();
+  }
+
+  /**
+   * A GEORADIUS query of an operation and the members it keeps.
+   */
+  static final class Query {
+    private final String key;
+    private final double lgn;
+    private final double lat;
+    private final double radius;
+    private final GeoRadiusParam param;
+    private final Predicate<GeoRadiusResponse> filter;
+    private Response<List<GeoRadiusResponse>> reply;
+
+    Query(String key, double lgn, double lat, double radius, GeoRadiusParam param,
+        Predicate<GeoRadiusResponse> filter) {
+      this.key = key;
+      this.lgn = lgn;
+      this.lat = lat;
+      this.radius = radius;
+      this.param = param;
+      this.filter = filter;
+    }
+
+    private void send(Pipeline pipeline) {
+      if (param == null) {
+        reply = pipeline.georadius(key, lgn, lat, radius, GeoUnit.KM);
+      } else {
+        reply = pipeline.georadius(key, lgn, lat, radius, GeoUnit.KM, param);
+      }
+    }
+  }
+
+  /**
+   * The pipelined read of the hash of a point, like RedisGeoClient#readHash.
+   */
+  private static final class HashRead {
+    private final GeoPoint point;
+    private final List<String> names;
+    private final Response<Map<String, String>> all;
+    private final Response<List<String>> values;
+
+    private HashRead(Pipeline pipeline, GeoPoint point, Set<String> fields) {
+      this.point = point;
+      if (fields == null) {
+        names = null;
+        all = pipeline.hgetAll(point.getId());
+        values = null;
+      } else {
+        names = new ArrayList<>(fields);
+        names.add(0, RedisGeoClient.TIME_OF_RECORD_COLUMN);
+        all = null;
+        values = pipeline.hmget(point.getId(), names.toArray(new String[0]));
+      }
+    }
+
+    private GeoPoint apply() {
+      if (names == null) {
+        for (Map.Entry<String, String> value : all.get().entrySet()) {
+          if (RedisGeoClient.TIME_OF_RECORD_COLUMN.equals(value.getKey())) {
+            point.setTimeOfRecord(GeoUtils.stringtoDate(value.getValue()));
+          } else {
+            point.getFields().put(value.getKey(), new StringByteIterator(value.getValue()));
+          }
+        }
+        return point;
+      }
+
+      List<String> read = values.get();
+      point.setTimeOfRecord(GeoUtils.stringtoDate(read.get(0)));
+      for (int i = 1; i < names.size(); i++) {
+        if (read.get(i) != null) {
+          point.getFields().put(names.get(i), new StringByteIterator(read.get(i)));
+        }
+      }
+      return point;
+    }
+  }
+
+  /**
+   * Finds points with one or more GEORADIUS queries, then reads the hashes of the
+   * members the queries keep. A member found by several queries is kept once.
+   */
+  static final class ScanOperation extends Operation {
+    private final List<Query> queries;
+    private final Set<String> fields;
+    private final ArrayList<GeoPoint> result;
+    private final List<HashRead> reads = new ArrayList<>();
+
+    ScanOperation(List<Query> queries, Set<String> fields, ArrayList<GeoPoint> result) {
+      this.queries = queries;
+      this.fields = fields;
+      this.result = result;
+    }
+
+    @Override
+    void send(Pipeline pipeline) {
+      for (Query query : queries) {
+        query.send(pipeline);
+      }
+    }
+
+    @Override
+    void sendFollowUp(Pipeline pipeline) {
+      Set<String> seen = new HashSet<>();
+      for (Query query : queries) {
+        for (GeoRadiusResponse member : query.reply.get()) {
+          String id = member.getMemberByString();
+          if (!query.filter.test(member) || !seen.add(id)) {
+            continue;
+          }
+          GeoCoordinate gc = member.getCoordinate();
+
+          GeoPoint gp = new GeoPoint();
+
+          gp.setId(id);
+          gp.setLongitude(gc.getLongitude());
+          gp.setLatitude(gc.getLatitude());
+          reads.add(new HashRead(pipeline, gp, fields));
+        }
+      }
+    }
+
+    @Override
+    Status complete() {
+      for (HashRead read : reads) {
+        result.add(read.apply());
+      }
+      return Status.OK;
+    }
+  }
+
+  /**
+   * Counts the members a GEORADIUS query keeps, without reading any hash.
+   */
+  static final class CountOperation extends Operation {
+    private final Query query;
+    private final GeoCount result;
+
+    CountOperation(Query query, GeoCount result) {
+      this.query = query;
+      this.result = result;
+    }
+
+    @Override
+    void send(Pipeline pipeline) {
+      query.send(pipeline);
+    }
+
+    @Override
+    Status complete() {
+      long count = 0;
+      for (GeoRadiusResponse member : query.reply.get()) {
+        if (query.filter.test(member)) {
+          count++;
+        }
+      }
+      result.setCount(count);
+      return Status.OK;
+    }
+  }
+
+  /**
+   * Reads the position of a point, then its hash.
+   */
+  static final class ReadOperation extends Operation {
+    private final String key;
+    private final String member;
+    private final GeoPoint result;
+    private Response<List<GeoCoordinate>> positions;
+    private HashRead read;
+
+    ReadOperation(String key, String member, GeoPoint result) {
+      this.key = key;
+      this.member = member;
+      this.result = result;
+    }
+
+    @Override
+    void send(Pipeline pipeline) {
+      positions = pipeline.geopos(key, member);
+    }
+
+    @Override
+    void sendFollowUp(Pipeline pipeline) {
+      List<GeoCoordinate> found = positions.get();
+      if (found == null || found.isEmpty() || found.get(0) == null) {
+        return;
+      }
+      GeoCoordinate gc = found.get(0);
+
+      result.setId(member);
+      result.setLongitude(gc.getLongitude());
+      result.setLatitude(gc.getLatitude());
+      read = new HashRead(pipeline, result, null);
+    }
+
+    @Override
+    Status complete() {
+      if (read == null) {
+        return Status.NOT_FOUND;
+      }
+      read.apply();
+      return Status.OK;
+    }
+  }
+
+  /**
+   * Adds a point to the geo set, then creates its hash if the point is new.
+   */
+  static final class InsertOperation extends Operation {
+    private final String key;
+    private final String member;
+    private final double lgn;
+    private final double lat;
+    private final String timeOfRecord;
+    private final Map<String, String> fields;
+    private Response<Long> added;
+    private Response<Long> created;
+
+    InsertOperation(String key, String member, double lgn, double lat, String timeOfRecord,
+        Map<String, String> fields) {
+      this.key = key;
+      this.member = member;
+      this.lgn = lgn;
+      this.lat = lat;
+      this.timeOfRecord = timeOfRecord;
+      this.fields = fields;
+    }
+
+    @Override
+    void send(Pipeline pipeline) {
+      added = pipeline.geoadd(key, lgn, lat, member);
+    }
+
+    @Override
+    void sendFollowUp(Pipeline pipeline) {
+      Long qttRecords = added.get();
+      if (qttRecords == null || qttRecords < 1) {
+        return;
+      }
+      created = pipeline.hsetnx(member, RedisGeoClient.TIME_OF_RECORD_COLUMN, timeOfRecord);
+      if (!fields.isEmpty()) {
+        pipeline.hmset(member, fields);
+      }
+    }
+
+    @Override
+    Status complete() {
+      if (created == null || created.get() != 1) {
+        return Status.ERROR;
+      }
+      return Status.OK;
+    }
+  }
+
+  private final Supplier<Jedis> connector;
+  private Jedis connection;
+  private final BlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+  private final Thread dispatcher;
+  private volatile boolean closed;
+
+  /**
+   * @param connector opens a connection, the first one right away and then one after each
+   *                  timeout
+   */
+  RedisGeoPipeline(Supplier<Jedis> connector) {
+    this.connector = connector;
+    this.connection = connector.get();
+    dispatcher = new Thread(this::dispatch, "RedisGeoPipeline");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Queues an operation. Once the pipeline is closed, the operation fails right away; the
+   * check and the queueing are atomic with respect to close(), so no operation is queued
+   * after the dispatcher failed the last ones.
+   */
+  synchronized CompletableFuture<Status> submit(Operation operation) {
+    if (closed) {
+      return CompletableFuture.completedFuture(Status.SERVICE_UNAVAILABLE);
+    }
+    queue.add(operation);
+    return operation.future;
+  }
+
+  private void dispatch() {
+    List<Operation> batch = new ArrayList<>();
+    while (!closed) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        break;
+      }
+      queue.drainTo(batch);
+      run(batch);
+      batch.clear();
+    }
+
+    queue.drainTo(batch);
+    for (Operation operation : batch) {
+      operation.future.complete(Status.SERVICE_UNAVAILABLE);
+    }
+  }
+
+  /**
+   * Sends both rounds of a batch. Each round costs one round trip, whatever the number
+   * of operations in the batch.
+   */
+  private void run(List<Operation> batch) {
+    try {
+      if (connection == null) {
+        connection = connector.get();
+      }
+      Pipeline pipeline = connection.pipelined();
+      for (Operation operation : batch) {
+        operation.send(pipeline);
+      }
+      pipeline.sync();
+
+      for (Operation operation : batch) {
+        try {
+          operation.sendFollowUp(pipeline);
+        } catch (JedisException e) {
+          System.err.println("Error in processing pipelined operation: " + e.getMessage());
+          operation.failed = Status.ERROR;
+        }
+      }
+      pipeline.sync();
+
+      for (Operation operation : batch) {
+        Status status = operation.failed;
+        if (status == null) {
+          try {
+            status = operation.complete();
+          } catch (JedisException e) {
+            System.err.println("Error in processing pipelined operation: " + e.getMessage());
+            status = Status.ERROR;
+          }
+        }
+        operation.future.complete(status);
+      }
+
+    } catch (JedisException e) {
+      Status status = Status.ERROR;
+      if (e.getCause() instanceof SocketTimeoutException) {
+        status = Status.TIMEOUT;
+        disconnect();
+      } else {
+        System.err.println("Error in processing pipeline: " + e.getMessage());
+      }
+      for (Operation operation : batch) {
+        operation.future.complete(status);
+      }
+    }
+  }
+
+  /**
+   * Drops the connection, to open a new one for the next batch.
+   */
+  private void disconnect() {
+    try {
+      connection.close();
+    } catch (JedisException e) {
+      // The connection is dropped anyway.
+    }
+    connection = null;
+  }
+
+  /**
+   * Fails the operations still queued and closes the connection once the batch on the
+   * wire is done.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    dispatcher.interrupt();
+    try {
+      dispatcher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (connection != null) {
+      connection.close();
+    }
+  }
+}